@@ -2,6 +2,7 @@ package controllers.MacroRandomSearch;
 
 import framework.core.Controller;
 import framework.core.Game;
+import framework.graph.DistanceFields;
 import framework.graph.Graph;
 import java.awt.*;
 
@@ -18,6 +19,11 @@ public class MacroRSController extends Controller {
      */
     public static Graph m_graph;
 
+    /**
+     * Distances from every position of the map to the waypoints, following the graph.
+     */
+    public static DistanceFields m_distanceFields;
+
     /**
      * TSP solver.
      */
@@ -57,6 +63,7 @@ public class MacroRSController extends Controller {
     {
         m_resetRS = true;
         m_graph = new Graph(a_game);
+        m_distanceFields = new DistanceFields(m_graph, a_game);
         m_tspGraph = new TSPBranchBound(a_game, m_graph);
         m_rs = new RandomSearch();
         m_currentMacroAction = 10;
@@ -134,11 +141,9 @@ public class MacroRSController extends Controller {
         {
             //Find out how long have we executed this macro-action
             int first = RandomSearch.MACRO_ACTION_LENGTH - m_currentMacroAction - 1;
-            for(int i = first; i < RandomSearch.MACRO_ACTION_LENGTH; ++i)
-            {
-                //make the moves to advance the game state.
-                a_game.tick(m_lastMacroAction);
-            }
+
+            //make the moves to advance the game state.
+            a_game.tickN(m_lastMacroAction, RandomSearch.MACRO_ACTION_LENGTH - first);
         }
     }
 
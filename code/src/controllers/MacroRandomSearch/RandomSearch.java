@@ -1,10 +1,7 @@
 package controllers.MacroRandomSearch;
 
 import framework.core.*;
-import framework.graph.Node;
-import framework.graph.Path;
-import java.util.ArrayList;
-import java.util.HashMap;
+import framework.utils.Vector2d;
 import java.util.LinkedList;
 import java.util.Random;
 
@@ -48,15 +45,10 @@ public class RandomSearch
     public static Game m_currentGameState;
 
     /**
-     * Game state used to roll actions and evaluate  the current path.
+     * Game state used to roll actions and evaluate  the current path. It is reused for every rollout.
      */
     public static Game m_futureGameState;
 
-    /**
-     * Cache  for speeding up looks for nodes in the graph.
-     */
-    public static HashMap<Integer, Node> m_nodeLookup;
-
 
     /** NOW, SOME PARAMETERS **/
 
@@ -92,7 +84,7 @@ public class RandomSearch
     public RandomSearch()
     {
         m_rnd = new Random();
-        m_nodeLookup = new HashMap<Integer, Node>();
+        m_futureGameState = null;
         init();
     }
 
@@ -146,7 +138,11 @@ public class RandomSearch
      */
     public double createRandomPath(long a_timeDue)
     {
-        m_futureGameState = m_currentGameState.getCopy();
+        //Reset the rollout game in place, instead of creating a new copy for each path.
+        if(m_futureGameState == null)
+            m_futureGameState = m_currentGameState.getCopy();
+        else
+            m_currentGameState.copyInto(m_futureGameState);
         boolean end = (a_timeDue-System.currentTimeMillis())<10;
 
         //Create and evaluate the path
@@ -156,11 +152,8 @@ public class RandomSearch
             m_currentRandomPath[i] = m_rnd.nextInt(Controller.NUM_ACTIONS);
 
             //Rollout macro-action in the game
-            for(int j =0; !end && j < RandomSearch.MACRO_ACTION_LENGTH; ++j)
-            {
-                m_futureGameState.tick(m_currentRandomPath[i]);
-                end = (a_timeDue-System.currentTimeMillis())<10;
-            }
+            m_futureGameState.tickN(m_currentRandomPath[i], RandomSearch.MACRO_ACTION_LENGTH);
+            end = (a_timeDue-System.currentTimeMillis())<10;
         }
 
 
@@ -233,15 +226,16 @@ public class RandomSearch
             obj0 = m_futureGameState.getWaypoints().get(m_nextPickups[0]);
             obj0Collected = ((Waypoint)obj0).isCollected();
 
-            //This is the path to the object we ned to collect
-            Path pathToFirst = getPathToGameObject(m_futureGameState,obj0, m_nextPickups[0]);
+            //This is the distance to the object we ned to collect
+            Vector2d shipPos = m_futureGameState.getShip().s;
+            double distToFirst = MacroRSController.m_distanceFields.getWaypointDistance(m_nextPickups[0], shipPos.x, shipPos.y);
 
             //Let's give some points for the distance to it
             double distancePoints = 0;
             if(m_nextPickups.length == 1)
             {
                 //If it is the last waypoint, we just give scores for it.
-                distancePoints = scoreDist(pathToFirst.m_cost);
+                distancePoints = scoreDist(distToFirst);
             }else
             {
                 //There are more waypoints after this one. Get that one.
@@ -255,13 +249,13 @@ public class RandomSearch
                     distancePoints = scoreDist(dist) + SCORE_PER_WAYPOINT*10;
                     
                 }else
-                    distancePoints = scoreDist(pathToFirst.m_cost);
+                    distancePoints = scoreDist(distToFirst);
 
             }
 
             //Reward points for collecting waypoints.
             double waypointsPoints = 0;
-            if(match(m_futureGameState.getVisitOrder(), MacroRSController.m_tspGraph.getBestPath()))
+            if(m_futureGameState.isVisitOrderPrefixOf(MacroRSController.m_tspGraph.getBestPath()))
             {
                 if(obj0Collected)
                     waypointsPoints = SCORE_PER_WAYPOINT;
@@ -295,48 +289,4 @@ public class RandomSearch
         return distancePoints;
     }
 
-    /**
-     * Checks if the waypoint order followed so far matches the predifined route.
-     * @param a_followedOrder Order followed so far.
-     * @param a_pathDesired order of waypoints decided by the TSP solver.
-     * @return true if the order followed matches a_pathDesired
-     */
-    public static boolean match(ArrayList<Integer> a_followedOrder, int[] a_pathDesired)
-    {
-        int idx = 0;
-        for (Integer i : a_followedOrder)
-        {
-            if(i != a_pathDesired[idx])
-                return false;
-            idx++;
-        }
-        return true;
-    }
-
-    /**
-     * Gets the path from the current location of the ship to the object passed as parameter.
-     * @param a_game copy of the current game state.
-     * @param a_gObj object ot get the path to.
-     * @param a_objKey index of the object to look for.
-     * @return the path from the current ship position to  a_gObj.
-     */
-    private static Path getPathToGameObject(Game a_game, GameObject a_gObj, int a_objKey)
-    {
-        //The closest node to the ship's location.
-        Node shipNode = MacroRSController.m_graph.getClosestNodeTo(a_game.getShip().s.x, a_game.getShip().s.y);
-
-        //The closest node to the target's location (checking the cache).
-        Node objectNode = null;
-        if(RandomSearch.m_nodeLookup.containsKey(a_objKey))
-            objectNode = RandomSearch.m_nodeLookup.get(a_objKey);
-        else{
-            objectNode = MacroRSController.m_graph.getClosestNodeTo(a_gObj.s.x, a_gObj.s.y);
-            RandomSearch.m_nodeLookup.put(a_objKey, objectNode);
-        }
-
-        //Get the parh between the nodes.
-        return MacroRSController.m_graph.getPath(shipNode.id(), objectNode.id());
-    }
-
-
 }
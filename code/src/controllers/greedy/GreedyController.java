@@ -42,6 +42,11 @@ public class GreedyController extends Controller
      */
     private GameObject m_closestPickUp;
 
+    /**
+     * Line of sight from the positions of the ship to the waypoints and fuel tanks, shared by all the games in the map.
+     */
+    private VisibilityCache m_visibility;
+
     /**
      * Distance to fuel tank penalization: as collecting a fuel tank does not reset the timer, it might be dangerous going after a fuel tank
      * instead of a waypoint. Hence, we apply this value to the distance in order to go only after those that are really closer than a waypoint.
@@ -58,6 +63,9 @@ public class GreedyController extends Controller
         //Init the graph.
         m_graph = new Graph(a_gameCopy);
 
+        //Get the line of sight to the waypoints and fuel tanks, precomputed for the map.
+        m_visibility = a_gameCopy.getMap().getVisibility();
+
         //Init the structure that stores the nodes closest to all waypoints and fuel tanks.
         m_collectNodes = new HashMap<GameObject, Node>();
         for(Waypoint way: a_gameCopy.getWaypoints())
@@ -105,7 +113,7 @@ public class GreedyController extends Controller
         //System.out.println("DIST: " + distanceToColl);
 
         //We treat this differently if we can see the waypoint:
-        boolean isThereLineOfSight = a_gameCopy.getMap().LineOfSight(a_gameCopy.getShip().s, m_closestPickUp.s);
+        boolean isThereLineOfSight = m_visibility.isVisible(a_gameCopy.getShip().s, m_closestPickUp);
         if(isThereLineOfSight)
         {
             return manageStraightTravel(a_gameCopy);
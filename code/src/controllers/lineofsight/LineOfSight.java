@@ -25,6 +25,11 @@ public class LineOfSight extends Controller
      */
     private GameObject m_closestPickUp;
 
+    /**
+     * Line of sight from the positions of the ship to the waypoints and fuel tanks, shared by all the games in the map.
+     */
+    private VisibilityCache m_visibility;
+
     /**
      * Distance to fuel tank penalization: as collecting a fuel tank does not reset the timer, it might be dangerous going after a fuel tank
      * instead of a waypoint. Hence, we apply this value to the distance in order to go only after those that are really closer than a waypoint.
@@ -38,6 +43,7 @@ public class LineOfSight extends Controller
     public LineOfSight(Game a_gameCopy, long a_timeDue)
     {
         m_rnd = new Random();
+        m_visibility = a_gameCopy.getMap().getVisibility();
     }
 
     /**
@@ -52,7 +58,7 @@ public class LineOfSight extends Controller
         calculateClosestWaypoint(a_gameCopy);
 
         //We check if there is a line of sight between the ship and the waypoint:
-        boolean isThereLineOfSight = a_gameCopy.getMap().LineOfSight(a_gameCopy.getShip().s, m_closestPickUp.s);
+        boolean isThereLineOfSight = m_visibility.isVisible(a_gameCopy.getShip().s, m_closestPickUp);
         if(isThereLineOfSight)
         {
             int bestAction = manageStraightTravel(a_gameCopy);
@@ -44,7 +44,7 @@ public class ExecFromData extends Exec
         if(visual)
         {
             //View of the game, if applicable.
-            m_view = new PTSPView(m_game, m_game.getMapSize(), m_game.getMap(), m_game.getShip(), m_controller);
+            m_view = new PTSPView(m_game, m_game.getMap(), m_controller);
             frame = new JEasyFrame(m_view, "PTSP-Game: " + m_controllerName);
         }
 
@@ -78,7 +78,7 @@ public class ExecFromData extends Exec
             //And paint everything.
             if(visual)
             {
-                m_view.repaint();
+                m_view.refresh();
                 if(m_game.getTotalTime() == 1)
                     waitStep(m_warmUpTime);
             }
@@ -120,7 +120,7 @@ public class ExecFromData extends Exec
         if(visual)
         {
             //View of the game, if applicable.
-            m_view = new PTSPView(m_game, m_game.getMapSize(), m_game.getMap(), m_game.getShip(), m_controller);
+            m_view = new PTSPView(m_game, m_game.getMap(), m_controller);
             frame = new JEasyFrame(m_view, "PTSP-Game: " + m_controller.toString());
         }
 
@@ -138,7 +138,7 @@ public class ExecFromData extends Exec
             //And paint everything.
             if(visual)
             {
-                m_view.repaint();
+                m_view.refresh();
             }
         }
 
@@ -168,7 +168,7 @@ public class ExecFromData extends Exec
         controller.reset();
 
         //Create the game instance.
-        m_game = new Game(m_mapNames);
+        m_game = new Game(m_mapNames[m_currentMap]);
         m_game.go();
         m_game.getShip().setStarted(true);
 
@@ -176,7 +176,7 @@ public class ExecFromData extends Exec
         if(visual)
         {
             //View of the game, if applicable.
-            m_view = new PTSPView(m_game, m_game.getMapSize(), m_game.getMap(), m_game.getShip(), m_controller);
+            m_view = new PTSPView(m_game, m_game.getMap(), m_controller);
             frame = new JEasyFrame(m_view, "PTSP-Game: " + m_controller.toString());
         }
 
@@ -195,7 +195,7 @@ public class ExecFromData extends Exec
             //And paint everything.
             if(visual)
             {
-                m_view.repaint();
+                m_view.refresh();
             }
         }
 
@@ -235,7 +235,7 @@ public class ExecFromData extends Exec
         if(visual)
         {
             //View of the game, if applicable.
-            m_view = new PTSPView(a_game, a_game.getMapSize(), a_game.getMap(), a_game.getShip(), m_controller);
+            m_view = new PTSPView(a_game, a_game.getMap(), m_controller);
             frame = new JEasyFrame(m_view, "PTSP-Game: " + m_controller.toString());
         }
 
@@ -254,7 +254,7 @@ public class ExecFromData extends Exec
             //And paint everything.
             if(visual)
             {
-                m_view.repaint();
+                m_view.refresh();
             }
         }
 
@@ -353,7 +353,7 @@ public class ExecFromData extends Exec
             //System.out.println("Waypoints: " + gamePlayed.getWaypointsVisited() + ", time: " + gamePlayed.getTotalTime());
         }
 
-        gamePlayed.advanceMap(); //Call advance map to go to the next map in m_mapNames
+        advanceMap(); //Call advance map to go to the next map in m_mapNames
 
         for(int i = 0; i < timesPerMap; ++i)
         {
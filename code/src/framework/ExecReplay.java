@@ -43,7 +43,7 @@ public class ExecReplay extends Exec
             if(visual)
             {
                 //View of the game, if applicable.
-                m_view = new PTSPView(m_game, m_game.getMapSize(), m_game.getMap(), m_game.getShip(), m_controller);
+                m_view = new PTSPView(m_game, m_game.getMap(), m_controller);
                 frame = new JEasyFrame(m_view, "PTSP-Game Replay: " + m_actionFilename);
             }
 
@@ -55,7 +55,7 @@ public class ExecReplay extends Exec
 
                 if(visual)
                 {
-                    m_view.repaint();
+                    m_view.refresh();
                     if(m_game.getTotalTime() == 1)
                         waitStep(m_warmUpTime);
                 }
@@ -39,7 +39,7 @@ public class ExecSync extends Exec
         JEasyFrame frame;
 
         //View of the game, if applicable.
-        m_view = new PTSPView(m_game, m_game.getMapSize(), m_game.getMap(), m_game.getShip(), m_controller);
+        m_view = new PTSPView(m_game, m_game.getMap(), m_controller);
         frame = new JEasyFrame(m_view, "PTSP-Game: " + m_controllerName);
 
         //If we are going to play the game with the cursor keys, add the listener for that.
@@ -66,7 +66,7 @@ public class ExecSync extends Exec
             waitStep(remaining);
 
             //And paint everything.
-            m_view.repaint();
+            m_view.refresh();
         }
 
         if(m_verbose)
@@ -98,7 +98,7 @@ public class ExecSync extends Exec
         if(visual)
         {
             //View of the game, if applicable.
-            m_view = new PTSPView(m_game, m_game.getMapSize(), m_game.getMap(), m_game.getShip(), m_controller);
+            m_view = new PTSPView(m_game, m_game.getMap(), m_controller);
             frame = new JEasyFrame(m_view, "PTSP-Game: " + m_controllerName);
         }
 
@@ -136,7 +136,7 @@ public class ExecSync extends Exec
             //And paint everything.
             if(m_visibility)
             {
-                m_view.repaint();
+                m_view.refresh();
                 if(m_game.getTotalTime() == 1)
                     waitStep(m_warmUpTime);
             }
@@ -166,6 +166,7 @@ public class ExecSync extends Exec
         int totalDisqualifications=0;
         int totalNumGamesPlayed=0;
         boolean moreMaps = true;
+        m_currentMap = 0;
 
         for(int m = 0; moreMaps && m < m_mapNames.length; ++m)
         {
@@ -236,7 +237,9 @@ public class ExecSync extends Exec
                     m_game.saveRoute();
             }
 
-            moreMaps = m_game.advanceMap();
+            //The games of this map are over: it is no longer needed.
+            Map.unload(mapName);
+            moreMaps = advanceMap();
 
             avgTotalWaypoints += (avgWaypoints / numGamesPlayed);
             avgTotalTimeSpent += (avgTimeSpent / numGamesPlayed);
@@ -0,0 +1,178 @@
+package framework.core;
+
+/**
+ * This class keeps the list of actions executed by the ship during a game. Actions are stored in chunks of fixed size:
+ * once a chunk is full it is never modified again, so copies of the log share all the full chunks with the original
+ * and only duplicate the last, partially filled, chunk. Copying a log therefore takes the same time at the beginning
+ * and at the end of a game.
+ * PTSP-Competition
+ */
+public class ActionLog
+{
+    /**
+     * Number of actions per chunk.
+     */
+    private static final int CHUNK_SIZE = 128;
+
+    /**
+     * Last full chunk of the log. Full chunks are shared between copies of the log.
+     */
+    private Chunk m_chunks;
+
+    /**
+     * Actions executed after the last full chunk. This array belongs only to this log.
+     */
+    private int[] m_tail;
+
+    /**
+     * Number of actions in m_tail.
+     */
+    private int m_tailSize;
+
+    /**
+     * Total number of actions in the log.
+     */
+    private int m_size;
+
+    /**
+     * Creates an empty action log.
+     */
+    public ActionLog()
+    {
+        m_tail = new int[CHUNK_SIZE];
+    }
+
+    /**
+     * Adds an action at the end of the log.
+     * @param a_action action to add.
+     */
+    public void add(int a_action)
+    {
+        m_tail[m_tailSize++] = a_action;
+        m_size++;
+
+        if(m_tailSize == CHUNK_SIZE)
+        {
+            //The tail is full: it becomes a shared chunk and a new tail is started.
+            m_chunks = new Chunk(m_tail, m_chunks);
+            m_tail = new int[CHUNK_SIZE];
+            m_tailSize = 0;
+        }
+    }
+
+    /**
+     * Gets the action executed at a given position of the log.
+     * @param a_index index of the action, from 0 to size()-1.
+     * @return the action at that position.
+     */
+    public int get(int a_index)
+    {
+        if(a_index < 0 || a_index >= m_size)
+            throw new IndexOutOfBoundsException("Index: " + a_index + ", Size: " + m_size);
+
+        int tailStart = m_size - m_tailSize;
+        if(a_index >= tailStart)
+            return m_tail[a_index - tailStart];
+
+        //Walk back the chunks until the one that contains the action.
+        Chunk chunk = m_chunks;
+        for(int start = tailStart - CHUNK_SIZE; a_index < start; start -= CHUNK_SIZE)
+            chunk = chunk.m_previous;
+        return chunk.m_actions[a_index % CHUNK_SIZE];
+    }
+
+    /**
+     * Gets the number of actions in the log.
+     * @return the number of actions in the log.
+     */
+    public int size() {return m_size;}
+
+    /**
+     * Makes this log equal to another one. Full chunks are shared, so this takes constant time.
+     * @param a_other the log to copy from.
+     */
+    public void copyFrom(ActionLog a_other)
+    {
+        m_chunks = a_other.m_chunks;
+        System.arraycopy(a_other.m_tail, 0, m_tail, 0, a_other.m_tailSize);
+        m_tailSize = a_other.m_tailSize;
+        m_size = a_other.m_size;
+    }
+
+    /**
+     * Removes the last actions of the log, keeping only the first ones.
+     * @param a_size number of actions to keep, from 0 to size().
+     */
+    public void truncate(int a_size)
+    {
+        if(a_size < 0 || a_size > m_size)
+            throw new IndexOutOfBoundsException("Size: " + a_size + ", current size: " + m_size);
+
+        int tailStart = m_size - m_tailSize;
+        while(a_size < tailStart)
+        {
+            //The kept actions end before the tail: the last shared chunk becomes the tail again.
+            System.arraycopy(m_chunks.m_actions, 0, m_tail, 0, CHUNK_SIZE);
+            m_chunks = m_chunks.m_previous;
+            tailStart -= CHUNK_SIZE;
+        }
+        m_tailSize = a_size - tailStart;
+        m_size = a_size;
+    }
+
+    /**
+     * Gets a copy of this log.
+     * @return a copy of this log.
+     */
+    public ActionLog getCopy()
+    {
+        ActionLog copied = new ActionLog();
+        copied.copyFrom(this);
+        return copied;
+    }
+
+    /**
+     * Returns all the actions of the log, in order.
+     * @return an array with all the actions of the log.
+     */
+    public int[] toArray()
+    {
+        int[] actions = new int[m_size];
+        int end = m_size - m_tailSize;
+        System.arraycopy(m_tail, 0, actions, end, m_tailSize);
+
+        for(Chunk chunk = m_chunks; chunk != null; chunk = chunk.m_previous)
+        {
+            end -= CHUNK_SIZE;
+            System.arraycopy(chunk.m_actions, 0, actions, end, CHUNK_SIZE);
+        }
+        return actions;
+    }
+
+    /**
+     * A full, immutable chunk of actions, linked to the chunk that precedes it.
+     */
+    private static final class Chunk
+    {
+        /**
+         * Actions of this chunk.
+         */
+        final int[] m_actions;
+
+        /**
+         * Previous chunk in the log (null for the first one).
+         */
+        final Chunk m_previous;
+
+        /**
+         * Creates a chunk.
+         * @param a_actions actions of the chunk.
+         * @param a_previous previous chunk in the log.
+         */
+        Chunk(int[] a_actions, Chunk a_previous)
+        {
+            m_actions = a_actions;
+            m_previous = a_previous;
+        }
+    }
+}
@@ -0,0 +1,1021 @@
+package framework.core;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * This class simulates many ships at once, all of them in the same map, for controllers that evaluate many sequences
+ * of actions from the same state. Each ship (or lane) is an independent game: its position, velocity, heading, fuel,
+ * damage, counters and collected waypoints and fuel tanks are stored in parallel arrays of primitives, indexed by lane,
+ * instead of in one Game object per sequence.
+ * All the lanes advance together with step(). Each step follows exactly the same rules, and the same floating point
+ * operations, as Game.tick() and Ship.update(), so a lane ends in the same state as a copy of the game that executes
+ * the same actions. The action logs of the ships are not kept.
+ * Lanes are started from a game with load() (or from the root state, with reset()), and can be copied to other lanes.
+ * A simulator is not thread-safe, but several simulators can share the same map.
+ * PTSP-Competition
+ */
+public class BatchSimulator
+{
+    /**
+     * Flag of a lane: the ship has started moving.
+     */
+    private static final int SHIP_STARTED = 1;
+
+    /**
+     * Flag of a lane: the game has started (the step counters are running).
+     */
+    private static final int GAME_STARTED = 2;
+
+    /**
+     * Flag of a lane: the game has ended.
+     */
+    private static final int ENDED = 4;
+
+    /**
+     * Flag of a lane: the ship collided in the last step.
+     */
+    private static final int COLLISION_LAST_STEP = 8;
+
+    /**
+     * Flag of a lane: the ship is on a lava surface.
+     */
+    private static final int ON_LAVA = 16;
+
+    /**
+     * Flag of a lane: the ship is moved in the current step (internal).
+     */
+    private static final int MOVING = 32;
+
+    /**
+     * Flag of a lane: the ship is thrusting in the current step (internal).
+     */
+    private static final int THRUSTING = 64;
+
+    /**
+     * Size of the cells of m_pickupCells, as a power of two (cells are 8x8 pixels).
+     */
+    private static final int PICKUP_CELL_SHIFT = 3;
+
+    /**
+     * Acceleration applied to the ship when thrusting, as in Ship.update().
+     */
+    private static final double ACCELERATION = PTSPConstants.T * 0.05 / 2;
+
+    /**
+     * Cosine of the rotation of each turning value (-1, 0, 1), at index turning+1.
+     */
+    private static final double[] TURN_COS = new double[3];
+
+    /**
+     * Sine of the rotation of each turning value (-1, 0, 1), at index turning+1.
+     */
+    private static final double[] TURN_SIN = new double[3];
+
+    static
+    {
+        //Same computation as Vector2d.rotate(m_turning * steerStep).
+        for(int turning = -1; turning <= 1; ++turning)
+        {
+            TURN_COS[turning + 1] = Math.cos(turning * Ship.steerStep);
+            TURN_SIN[turning + 1] = Math.sin(turning * Ship.steerStep);
+        }
+    }
+
+    /**
+     * Map where all the lanes are simulated.
+     */
+    private final Map m_map;
+
+    /**
+     * Number of lanes simulated.
+     */
+    private final int m_numShips;
+
+    /**
+     * Index of the root lane, where reset() copies from. It is stored after the simulated lanes.
+     */
+    private final int m_root;
+
+    /**
+     * Number of waypoints of the games.
+     */
+    private final int m_numWaypoints;
+
+    /**
+     * Number of fuel tanks of the games.
+     */
+    private final int m_numFuelTanks;
+
+    /**
+     * Number of longs per lane used for the collected waypoints.
+     */
+    private final int m_waypointWords;
+
+    /**
+     * Number of longs per lane used for the collected fuel tanks.
+     */
+    private final int m_fuelTankWords;
+
+    /**
+     * Position, in x, of the waypoints.
+     */
+    private final double[] m_waypointX;
+
+    /**
+     * Position, in y, of the waypoints.
+     */
+    private final double[] m_waypointY;
+
+    /**
+     * Radius of the waypoints.
+     */
+    private final int[] m_waypointRadius;
+
+    /**
+     * Largest radius of the waypoints.
+     */
+    private final int m_maxWaypointRadius;
+
+    /**
+     * Position, in x, of the fuel tanks.
+     */
+    private final double[] m_fuelTankX;
+
+    /**
+     * Position, in y, of the fuel tanks.
+     */
+    private final double[] m_fuelTankY;
+
+    /**
+     * Radius of the fuel tanks.
+     */
+    private final int[] m_fuelTankRadius;
+
+    /**
+     * Largest radius of the fuel tanks.
+     */
+    private final int m_maxFuelTankRadius;
+
+    /**
+     * Radius of the ship, used to collect waypoints and fuel tanks.
+     */
+    private final int m_shipRadius;
+
+    /**
+     * Steps given to reach the next waypoint.
+     */
+    private final int m_stepsPerWaypoint;
+
+    /**
+     * Points of the collision sphere of the ship, relative to its center (x coordinates).
+     */
+    private final double[] m_sphereX;
+
+    /**
+     * Points of the collision sphere of the ship, relative to its center (y coordinates).
+     */
+    private final double[] m_sphereY;
+
+    /**
+     * For each cell of 8x8 pixels of the map, if a ship in the cell may be close enough to a waypoint or a fuel tank
+     * to collect it. Ships in the other cells do not need to look for items to collect.
+     */
+    private final boolean[] m_pickupCells;
+
+    /**
+     * Number of columns of m_pickupCells.
+     */
+    private final int m_pickupCols;
+
+    /**
+     * Number of rows of m_pickupCells.
+     */
+    private final int m_pickupRows;
+
+    /**
+     * Scratch array for the waypoints and fuel tanks found close to a ship.
+     */
+    private final int[] m_candidates;
+
+    /**
+     * Position of the ships (x coordinate).
+     */
+    private final double[] m_x;
+
+    /**
+     * Position of the ships (y coordinate).
+     */
+    private final double[] m_y;
+
+    /**
+     * Velocity of the ships (x coordinate).
+     */
+    private final double[] m_vx;
+
+    /**
+     * Velocity of the ships (y coordinate).
+     */
+    private final double[] m_vy;
+
+    /**
+     * Direction the ships are facing (x coordinate).
+     */
+    private final double[] m_dx;
+
+    /**
+     * Direction the ships are facing (y coordinate).
+     */
+    private final double[] m_dy;
+
+    /**
+     * Position of the ships before checking for collisions (x coordinate).
+     */
+    private final double[] m_potentialX;
+
+    /**
+     * Position of the ships before checking for collisions (y coordinate).
+     */
+    private final double[] m_potentialY;
+
+    /**
+     * Velocity of the ships before checking for collisions (x coordinate).
+     */
+    private final double[] m_potentialVx;
+
+    /**
+     * Velocity of the ships before checking for collisions (y coordinate).
+     */
+    private final double[] m_potentialVy;
+
+    /**
+     * Remaining fuel of the ships.
+     */
+    private final int[] m_fuel;
+
+    /**
+     * Damage of the ships.
+     */
+    private final int[] m_damage;
+
+    /**
+     * Invulnerability time of the ships.
+     */
+    private final int[] m_invulnerable;
+
+    /**
+     * Type of the last collision of the ships.
+     */
+    private final int[] m_lastCollisionType;
+
+    /**
+     * Steps left to collect the next waypoint.
+     */
+    private final int[] m_stepsLeft;
+
+    /**
+     * Time spent in each game.
+     */
+    private final int[] m_totalTime;
+
+    /**
+     * Waypoints left to collect.
+     */
+    private final int[] m_waypointsLeft;
+
+    /**
+     * Fuel tanks left to collect.
+     */
+    private final int[] m_fuelTanksLeft;
+
+    /**
+     * Flags of each lane (SHIP_STARTED, GAME_STARTED, ENDED, COLLISION_LAST_STEP, ON_LAVA...).
+     */
+    private final int[] m_flags;
+
+    /**
+     * Events of the last step of each lane, as a combination of Game.EVENT_* flags.
+     */
+    private final int[] m_events;
+
+    /**
+     * Collected waypoints, as bitmasks of m_waypointWords longs per lane.
+     */
+    private final long[] m_waypointsCollected;
+
+    /**
+     * Collected fuel tanks, as bitmasks of m_fuelTankWords longs per lane.
+     */
+    private final long[] m_fuelTanksCollected;
+
+    /**
+     * Order of visit of the waypoints, m_numWaypoints ints per lane.
+     */
+    private final int[] m_visitOrder;
+
+    /**
+     * Number of waypoints visited in each lane.
+     */
+    private final int[] m_numVisited;
+
+    /**
+     * Creates a simulator for a number of ships, with all the lanes in the state of the game given.
+     * @param a_game game to start the lanes from. It is also the root state used by reset().
+     * @param a_numShips number of lanes to simulate.
+     */
+    public BatchSimulator(Game a_game, int a_numShips)
+    {
+        m_map = a_game.getMap();
+        m_numShips = a_numShips;
+        m_root = a_numShips;
+        int numLanes = a_numShips + 1;
+
+        //Waypoints and fuel tanks of the game.
+        LinkedList<Waypoint> waypoints = a_game.getWaypoints();
+        m_numWaypoints = waypoints.size();
+        m_waypointX = new double[m_numWaypoints];
+        m_waypointY = new double[m_numWaypoints];
+        m_waypointRadius = new int[m_numWaypoints];
+        int maxRadius = 0, i = 0;
+        for(Waypoint way : waypoints)
+        {
+            m_waypointX[i] = way.s.x;
+            m_waypointY[i] = way.s.y;
+            m_waypointRadius[i] = way.radius;
+            maxRadius = Math.max(maxRadius, way.radius);
+            ++i;
+        }
+        m_maxWaypointRadius = maxRadius;
+
+        LinkedList<FuelTank> fuelTanks = a_game.getFuelTanks();
+        m_numFuelTanks = fuelTanks.size();
+        m_fuelTankX = new double[m_numFuelTanks];
+        m_fuelTankY = new double[m_numFuelTanks];
+        m_fuelTankRadius = new int[m_numFuelTanks];
+        maxRadius = 0;
+        i = 0;
+        for(FuelTank ft : fuelTanks)
+        {
+            m_fuelTankX[i] = ft.s.x;
+            m_fuelTankY[i] = ft.s.y;
+            m_fuelTankRadius[i] = ft.radius;
+            maxRadius = Math.max(maxRadius, ft.radius);
+            ++i;
+        }
+        m_maxFuelTankRadius = maxRadius;
+
+        m_shipRadius = a_game.getShip().radius;
+        m_stepsPerWaypoint = PTSPConstants.getStepsPerWaypoints(a_game.getNumWaypoints());
+        m_candidates = new int[Math.max(m_numWaypoints, m_numFuelTanks)];
+
+        m_pickupCols = (m_map.getMapWidth() >> PICKUP_CELL_SHIFT) + 1;
+        m_pickupRows = (m_map.getMapHeight() >> PICKUP_CELL_SHIFT) + 1;
+        m_pickupCells = new boolean[m_pickupCols * m_pickupRows];
+        for(i = 0; i < m_numWaypoints; ++i)
+            markPickupCells(m_waypointX[i], m_waypointY[i], m_shipRadius + m_waypointRadius[i]);
+        for(i = 0; i < m_numFuelTanks; ++i)
+            markPickupCells(m_fuelTankX[i], m_fuelTankY[i], m_shipRadius + m_fuelTankRadius[i]);
+
+        m_sphereX = new double[Map.COLL_SPHERE_RELATIVE.length];
+        m_sphereY = new double[Map.COLL_SPHERE_RELATIVE.length];
+        for(i = 0; i < m_sphereX.length; ++i)
+        {
+            m_sphereX[i] = Map.COLL_SPHERE_RELATIVE[i].x;
+            m_sphereY[i] = Map.COLL_SPHERE_RELATIVE[i].y;
+        }
+
+        //State of the lanes.
+        m_x = new double[numLanes];
+        m_y = new double[numLanes];
+        m_vx = new double[numLanes];
+        m_vy = new double[numLanes];
+        m_dx = new double[numLanes];
+        m_dy = new double[numLanes];
+        m_potentialX = new double[numLanes];
+        m_potentialY = new double[numLanes];
+        m_potentialVx = new double[numLanes];
+        m_potentialVy = new double[numLanes];
+        m_fuel = new int[numLanes];
+        m_damage = new int[numLanes];
+        m_invulnerable = new int[numLanes];
+        m_lastCollisionType = new int[numLanes];
+        m_stepsLeft = new int[numLanes];
+        m_totalTime = new int[numLanes];
+        m_waypointsLeft = new int[numLanes];
+        m_fuelTanksLeft = new int[numLanes];
+        m_flags = new int[numLanes];
+        m_events = new int[numLanes];
+        m_waypointWords = (m_numWaypoints + 63) >> 6;
+        m_fuelTankWords = (m_numFuelTanks + 63) >> 6;
+        m_waypointsCollected = new long[numLanes * m_waypointWords];
+        m_fuelTanksCollected = new long[numLanes * m_fuelTankWords];
+        m_visitOrder = new int[numLanes * m_numWaypoints];
+        m_numVisited = new int[numLanes];
+
+        load(a_game, m_root);
+        reset();
+    }
+
+    /**
+     * Sets the root state, used by reset(), to the state of a game.
+     * @param a_game game to copy the state from. It must be played in the same map, with the same waypoints and fuel tanks.
+     */
+    public void setRoot(Game a_game)
+    {
+        load(a_game, m_root);
+    }
+
+    /**
+     * Sets all the lanes to the root state.
+     */
+    public void reset()
+    {
+        for(int lane = 0; lane < m_numShips; ++lane)
+            copyLane(m_root, lane);
+    }
+
+    /**
+     * Sets the state of a lane to the one of a game.
+     * @param a_game game to copy the state from. It must be played in the same map, with the same waypoints and fuel tanks.
+     * @param a_lane lane to set.
+     */
+    public void load(Game a_game, int a_lane)
+    {
+        if(a_game.getMap() != m_map || a_game.getWaypoints().size() != m_numWaypoints ||
+           a_game.getFuelTanks().size() != m_numFuelTanks)
+            throw new IllegalArgumentException("The game is not played in the map of this simulator.");
+
+        Ship ship = a_game.getShip();
+        m_x[a_lane] = ship.s.x;
+        m_y[a_lane] = ship.s.y;
+        m_vx[a_lane] = ship.v.x;
+        m_vy[a_lane] = ship.v.y;
+        m_dx[a_lane] = ship.d.x;
+        m_dy[a_lane] = ship.d.y;
+        m_fuel[a_lane] = ship.getRemainingFuel();
+        m_damage[a_lane] = ship.getDamage();
+        m_invulnerable[a_lane] = ship.getInvulnerableTime();
+        m_lastCollisionType[a_lane] = ship.getLastCollisionType();
+        m_stepsLeft[a_lane] = a_game.getStepsLeft();
+        m_totalTime[a_lane] = a_game.getTotalTime();
+        m_waypointsLeft[a_lane] = a_game.getWaypointsLeft();
+        m_fuelTanksLeft[a_lane] = a_game.getFuelTanksLeft();
+        m_flags[a_lane] = (ship.hasStarted() ? SHIP_STARTED : 0) | (a_game.hasStarted() ? GAME_STARTED : 0) |
+                          (a_game.isEnded() ? ENDED : 0) | (ship.getCollLastStep() ? COLLISION_LAST_STEP : 0) |
+                          (ship.isOnLava() ? ON_LAVA : 0);
+        m_events[a_lane] = a_game.getLastTickEvents();
+
+        for(int i = 0; i < m_numWaypoints; ++i)
+            setBit(m_waypointsCollected, a_lane * m_waypointWords, i, a_game.isWaypointCollected(i));
+        for(int i = 0; i < m_numFuelTanks; ++i)
+            setBit(m_fuelTanksCollected, a_lane * m_fuelTankWords, i, a_game.isFuelTankCollected(i));
+
+        ArrayList<Integer> visitOrder = a_game.getVisitOrder();
+        m_numVisited[a_lane] = visitOrder.size();
+        for(int i = 0; i < visitOrder.size(); ++i)
+            m_visitOrder[a_lane * m_numWaypoints + i] = visitOrder.get(i);
+    }
+
+    /**
+     * Copies the state of a lane to another one.
+     * @param a_from lane to copy from.
+     * @param a_to lane to copy to.
+     */
+    public void copyLane(int a_from, int a_to)
+    {
+        m_x[a_to] = m_x[a_from];
+        m_y[a_to] = m_y[a_from];
+        m_vx[a_to] = m_vx[a_from];
+        m_vy[a_to] = m_vy[a_from];
+        m_dx[a_to] = m_dx[a_from];
+        m_dy[a_to] = m_dy[a_from];
+        m_fuel[a_to] = m_fuel[a_from];
+        m_damage[a_to] = m_damage[a_from];
+        m_invulnerable[a_to] = m_invulnerable[a_from];
+        m_lastCollisionType[a_to] = m_lastCollisionType[a_from];
+        m_stepsLeft[a_to] = m_stepsLeft[a_from];
+        m_totalTime[a_to] = m_totalTime[a_from];
+        m_waypointsLeft[a_to] = m_waypointsLeft[a_from];
+        m_fuelTanksLeft[a_to] = m_fuelTanksLeft[a_from];
+        m_flags[a_to] = m_flags[a_from];
+        m_events[a_to] = m_events[a_from];
+        System.arraycopy(m_waypointsCollected, a_from * m_waypointWords, m_waypointsCollected, a_to * m_waypointWords, m_waypointWords);
+        System.arraycopy(m_fuelTanksCollected, a_from * m_fuelTankWords, m_fuelTanksCollected, a_to * m_fuelTankWords, m_fuelTankWords);
+        m_numVisited[a_to] = m_numVisited[a_from];
+        System.arraycopy(m_visitOrder, a_from * m_numWaypoints, m_visitOrder, a_to * m_numWaypoints, m_numVisited[a_from]);
+    }
+
+    /**
+     * Executes one step in every lane that has not ended, as Game.tick() does.
+     * @param a_actions action to execute in each lane (a_actions[lane]).
+     */
+    public void step(int[] a_actions)
+    {
+        //First, the movement of all the ships, without collisions. This loop only does arithmetic on the arrays.
+        for(int lane = 0; lane < m_numShips; ++lane)
+        {
+            int flags = m_flags[lane] & ~(MOVING | THRUSTING);
+            if((flags & ENDED) == 0)
+            {
+                int action = a_actions[lane];
+                if((flags & SHIP_STARTED) == 0 && action != Controller.ACTION_NO_FRONT)
+                    flags |= SHIP_STARTED | GAME_STARTED;
+
+                if((flags & SHIP_STARTED) != 0)
+                {
+                    flags |= MOVING;
+
+                    int turn = Controller.getTurning(action) + 1;
+                    double dx = m_dx[lane], dy = m_dy[lane];
+                    m_dx[lane] = dx * TURN_COS[turn] - dy * TURN_SIN[turn];
+                    m_dy[lane] = dx * TURN_SIN[turn] + dy * TURN_COS[turn];
+
+                    double vx = m_vx[lane], vy = m_vy[lane];
+                    if(Controller.getThrust(action) && m_fuel[lane] > 0)
+                    {
+                        flags |= THRUSTING;
+                        m_fuel[lane]--;
+                        vx += ACCELERATION * m_dx[lane];
+                        vy += ACCELERATION * m_dy[lane];
+                    }
+
+                    vx *= Ship.loss;
+                    vy *= Ship.loss;
+                    m_potentialVx[lane] = vx;
+                    m_potentialVy[lane] = vy;
+                    m_potentialX[lane] = m_x[lane] + vx;
+                    m_potentialY[lane] = m_y[lane] + vy;
+                }
+            }
+            m_flags[lane] = flags;
+        }
+
+        //Then, collisions, pickups and counters, lane by lane.
+        for(int lane = 0; lane < m_numShips; ++lane)
+        {
+            int flags = m_flags[lane];
+            if((flags & ENDED) != 0)
+                continue;
+
+            int waypointsLeft = m_waypointsLeft[lane];
+            int fuelTanksLeft = m_fuelTanksLeft[lane];
+
+            if((flags & MOVING) != 0)
+            {
+                collide(lane);
+                checkPickups(lane);
+                flags = m_flags[lane];
+            }
+
+            if((flags & GAME_STARTED) != 0)
+            {
+                m_stepsLeft[lane]--;
+                m_totalTime[lane]++;
+            }
+
+            if(m_waypointsLeft[lane] == 0 || m_stepsLeft[lane] <= 0 || m_damage[lane] >= PTSPConstants.MAX_DAMAGE)
+                flags |= ENDED;
+            m_flags[lane] = flags;
+
+            int events = 0;
+            if((flags & ENDED) != 0)
+                events |= Game.EVENT_GAME_ENDED;
+            if((flags & COLLISION_LAST_STEP) != 0)
+                events |= Game.EVENT_COLLISION;
+            if(m_waypointsLeft[lane] < waypointsLeft)
+                events |= Game.EVENT_WAYPOINT;
+            if(m_fuelTanksLeft[lane] < fuelTanksLeft)
+                events |= Game.EVENT_FUEL_TANK;
+            m_events[lane] = events;
+        }
+    }
+
+    /**
+     * Executes the same action several times in each lane, stopping the lanes whose game ends, as Game.tickN() does.
+     * @param a_actions action to execute in each lane (a_actions[lane]).
+     * @param a_numTicks number of times to execute the actions.
+     */
+    public void stepN(int[] a_actions, int a_numTicks)
+    {
+        for(int i = 0; i < a_numTicks; ++i)
+            step(a_actions);
+    }
+
+    /**
+     * Checks the collisions of the ship of a lane with the map, in its potential position, and updates its state as
+     * the second half of Ship.update() does.
+     * @param a_lane lane to update.
+     */
+    private void collide(int a_lane)
+    {
+        int flags = m_flags[a_lane] & ~COLLISION_LAST_STEP;
+
+        //The collision sphere is placed before checking the boundaries of the map, as in Ship.update().
+        double sphereX = m_potentialX[a_lane];
+        double sphereY = m_potentialY[a_lane];
+
+        double potentialX = sphereX, potentialY = sphereY;
+        if(potentialX > m_map.getMapWidth()-1)
+            potentialX = m_map.getMapWidth()-1;
+        else if(potentialX < 0)
+            potentialX = 0;
+        else if(potentialY > m_map.getMapHeight()-1)
+            potentialY = m_map.getMapHeight()-1;
+        else if(potentialY < 0)
+            potentialY = 0;
+
+        double potentialVx = m_potentialVx[a_lane], potentialVy = m_potentialVy[a_lane];
+        int coll = 0;
+        int last = m_sphereX.length - 1;
+        if(m_map.isClearOfObstacles((m_sphereX[0] + sphereX) - m_sphereX[0], (m_sphereY[0] + sphereY) - m_sphereY[0]))
+        {
+            flags = setLava(flags, m_sphereX[last] + sphereX, m_sphereY[last] + sphereY);
+        }
+        else
+        {
+            for(int i = 0; i <= last; ++i)
+            {
+                double x = m_sphereX[i] + sphereX;
+                double y = m_sphereY[i] + sphereY;
+                int xRound = (int)Math.round(x);
+                int yRound = (int)Math.round(y);
+
+                int collision;
+                if(m_map.isOutsideBounds(xRound, yRound))
+                {
+                    collision = 1;
+                }
+                else
+                {
+                    int code = m_map.getCode(xRound, yRound);
+                    flags = ((code & Map.CODE_LAVA) != 0) ? (flags | ON_LAVA) : (flags & ~ON_LAVA);
+                    collision = code & Map.CODE_COLLISION_MASK;
+                }
+
+                if(collision != 0)
+                {
+                    double toCollX = x - potentialX;
+                    double toCollY = y - potentialY;
+                    double toCollMag = Math.sqrt(toCollX * toCollX + toCollY * toCollY);
+                    toCollX /= toCollMag;
+                    toCollY /= toCollMag;
+
+                    double speedMag = Math.sqrt(potentialVx * potentialVx + potentialVy * potentialVy);
+                    double dotProduct = (potentialVx / speedMag) * toCollX + (potentialVy / speedMag) * toCollY;
+                    if(dotProduct > 0.5)
+                    {
+                        m_lastCollisionType[a_lane] = m_map.getCollisionType(xRound, yRound);
+                        coll = collision;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if(coll != 0)
+        {
+            flags |= COLLISION_LAST_STEP;
+            if(coll == 1)
+                m_vx[a_lane] *= (-1);
+            else
+                m_vy[a_lane] *= (-1);
+
+            int collisionType = m_lastCollisionType[a_lane];
+            if(m_invulnerable[a_lane] == 0)
+            {
+                if(collisionType == PTSPConstants.NORMAL_COLLISION_TYPE)
+                {
+                    m_invulnerable[a_lane] = PTSPConstants.INVULNERABLE;
+                    m_damage[a_lane] += PTSPConstants.DAMAGE_NORMAL_COLLISION;
+                }
+                else if(collisionType == PTSPConstants.DAMAGE_COLLISION_TYPE)
+                {
+                    m_invulnerable[a_lane] = PTSPConstants.INVULNERABLE;
+                    m_damage[a_lane] += PTSPConstants.DAMAGE_DAMAGE_COLLISION;
+                }
+            }
+
+            if(collisionType == PTSPConstants.NORMAL_COLLISION_TYPE)
+                reduceSpeed(a_lane, PTSPConstants.COLLISION_SPEED_RED);
+            else if(collisionType == PTSPConstants.DAMAGE_COLLISION_TYPE)
+                reduceSpeed(a_lane, PTSPConstants.COLLISION_DAMAGE_SPEED_RED);
+            else if(collisionType == PTSPConstants.ELASTIC_COLLISION_TYPE)
+                reduceSpeed(a_lane, PTSPConstants.COLLISION_ELASTIC_SPEED_RED);
+        }
+
+        if((flags & ON_LAVA) != 0)
+            m_damage[a_lane] += PTSPConstants.DAMAGE_LAVA;
+
+        if(m_invulnerable[a_lane] > 0)
+            m_invulnerable[a_lane]--;
+
+        if(coll == 0)
+        {
+            m_x[a_lane] = potentialX;
+            m_y[a_lane] = potentialY;
+            m_vx[a_lane] = potentialVx;
+            m_vy[a_lane] = potentialVy;
+        }
+        m_flags[a_lane] = flags;
+    }
+
+    /**
+     * Multiplies the velocity of the ship of a lane by a factor.
+     * @param a_lane lane of the ship.
+     * @param a_factor factor to multiply the velocity by.
+     */
+    private void reduceSpeed(int a_lane, double a_factor)
+    {
+        m_vx[a_lane] *= a_factor;
+        m_vy[a_lane] *= a_factor;
+    }
+
+    /**
+     * Sets the ON_LAVA flag of a lane from the cell of a point known to be inside the map.
+     * @param a_flags flags of the lane.
+     * @param a_x x coordinate of the point.
+     * @param a_y y coordinate of the point.
+     * @return the flags of the lane, updated.
+     */
+    private int setLava(int a_flags, double a_x, double a_y)
+    {
+        int code = m_map.getCode((int)Math.round(a_x), (int)Math.round(a_y));
+        return ((code & Map.CODE_LAVA) != 0) ? (a_flags | ON_LAVA) : (a_flags & ~ON_LAVA);
+    }
+
+    /**
+     * Marks the cells of m_pickupCells from where an item can be collected.
+     * @param a_x x coordinate of the item.
+     * @param a_y y coordinate of the item.
+     * @param a_range distance at which the item is collected.
+     */
+    private void markPickupCells(double a_x, double a_y, double a_range)
+    {
+        int colFrom = Math.max(0, ((int) Math.floor(a_x - a_range)) >> PICKUP_CELL_SHIFT);
+        int colTo = Math.min(m_pickupCols - 1, ((int) Math.floor(a_x + a_range)) >> PICKUP_CELL_SHIFT);
+        int rowFrom = Math.max(0, ((int) Math.floor(a_y - a_range)) >> PICKUP_CELL_SHIFT);
+        int rowTo = Math.min(m_pickupRows - 1, ((int) Math.floor(a_y + a_range)) >> PICKUP_CELL_SHIFT);
+        for(int row = rowFrom; row <= rowTo; ++row)
+            for(int col = colFrom; col <= colTo; ++col)
+                m_pickupCells[row * m_pickupCols + col] = true;
+    }
+
+    /**
+     * Checks if the ship of a lane collects any waypoint or fuel tank in its position, as Game.checkPickups() does.
+     * @param a_lane lane to check.
+     */
+    private void checkPickups(int a_lane)
+    {
+        double x = m_x[a_lane], y = m_y[a_lane];
+
+        //Most of the time the ship is far from all the items. Positions out of the map are always checked.
+        int col = ((int) Math.floor(x)) >> PICKUP_CELL_SHIFT;
+        int row = ((int) Math.floor(y)) >> PICKUP_CELL_SHIFT;
+        if(col >= 0 && col < m_pickupCols && row >= 0 && row < m_pickupRows && !m_pickupCells[row * m_pickupCols + col])
+            return;
+
+        int waypointOffset = a_lane * m_waypointWords;
+        int numCandidates = findCandidates(m_map.getWaypointGrid(), m_numWaypoints, x, y, m_shipRadius + m_maxWaypointRadius);
+        for(int k = 0; k < numCandidates; ++k)
+        {
+            int i = m_candidates[k];
+            if(!isBitSet(m_waypointsCollected, waypointOffset, i) &&
+               isCollected(m_waypointX[i], m_waypointY[i], m_waypointRadius[i], x, y))
+            {
+                setBit(m_waypointsCollected, waypointOffset, i, true);
+                m_stepsLeft[a_lane] = m_stepsPerWaypoint;
+                m_waypointsLeft[a_lane]--;
+                m_visitOrder[a_lane * m_numWaypoints + m_numVisited[a_lane]++] = i;
+                m_fuel[a_lane] = Math.min(m_fuel[a_lane] + PTSPConstants.FUEL_WAYPOINT_REWARD, PTSPConstants.INITIAL_FUEL);
+            }
+        }
+
+        int fuelTankOffset = a_lane * m_fuelTankWords;
+        numCandidates = findCandidates(m_map.getFuelTankGrid(), m_numFuelTanks, x, y, m_shipRadius + m_maxFuelTankRadius);
+        for(int k = 0; k < numCandidates; ++k)
+        {
+            int i = m_candidates[k];
+            if(!isBitSet(m_fuelTanksCollected, fuelTankOffset, i) &&
+               isCollected(m_fuelTankX[i], m_fuelTankY[i], m_fuelTankRadius[i], x, y))
+            {
+                setBit(m_fuelTanksCollected, fuelTankOffset, i, true);
+                m_fuel[a_lane] = Math.min(m_fuel[a_lane] + PTSPConstants.FUEL_TANK_BOOST, PTSPConstants.INITIAL_FUEL);
+                m_fuelTanksLeft[a_lane]--;
+            }
+        }
+    }
+
+    /**
+     * Checks if an item is collected by a ship, as Waypoint.checkCollected() and FuelTank.checkCollected() do.
+     * @param a_itemX x coordinate of the item.
+     * @param a_itemY y coordinate of the item.
+     * @param a_itemRadius radius of the item.
+     * @param a_x x coordinate of the ship.
+     * @param a_y y coordinate of the ship.
+     * @return true if the item is collected.
+     */
+    private boolean isCollected(double a_itemX, double a_itemY, int a_itemRadius, double a_x, double a_y)
+    {
+        double xd = a_itemX - a_x;
+        double yd = a_itemY - a_y;
+        double d = Math.sqrt(xd*xd+yd*yd);
+        return d < (m_shipRadius + a_itemRadius);
+    }
+
+    /**
+     * Finds the items that may be collected from a position and writes their indexes in m_candidates.
+     * @param a_grid grid of the map for this type of item.
+     * @param a_numItems number of items of this type.
+     * @param a_x x coordinate of the ship.
+     * @param a_y y coordinate of the ship.
+     * @param a_range largest distance at which an item can be collected.
+     * @return the number of candidates found.
+     */
+    private int findCandidates(CollectibleGrid a_grid, int a_numItems, double a_x, double a_y, double a_range)
+    {
+        if(a_grid.size() != a_numItems)
+        {
+            for(int i = 0; i < a_numItems; ++i)
+                m_candidates[i] = i;
+            return a_numItems;
+        }
+        return a_grid.query(a_x, a_y, a_range, m_candidates);
+    }
+
+    /**
+     * Checks a bit of the bitmask of a lane.
+     * @param a_mask bitmasks of all the lanes.
+     * @param a_offset index in a_mask of the first long of the lane.
+     * @param a_index index of the bit.
+     * @return true if the bit is set.
+     */
+    private static boolean isBitSet(long[] a_mask, int a_offset, int a_index)
+    {
+        return (a_mask[a_offset + (a_index >> 6)] & (1L << a_index)) != 0;
+    }
+
+    /**
+     * Sets or clears a bit of the bitmask of a lane.
+     * @param a_mask bitmasks of all the lanes.
+     * @param a_offset index in a_mask of the first long of the lane.
+     * @param a_index index of the bit.
+     * @param a_value true to set the bit, false to clear it.
+     */
+    private static void setBit(long[] a_mask, int a_offset, int a_index, boolean a_value)
+    {
+        if(a_value)
+            a_mask[a_offset + (a_index >> 6)] |= (1L << a_index);
+        else
+            a_mask[a_offset + (a_index >> 6)] &= ~(1L << a_index);
+    }
+
+    /*** Getters ***/
+
+    /**
+     * Gets the number of lanes simulated.
+     * @return the number of lanes.
+     */
+    public int getNumShips() {return m_numShips;}
+
+    /**
+     * Gets the position of the ship of a lane (x coordinate).
+     * @param a_lane lane of the ship.
+     * @return the x coordinate of the position.
+     */
+    public double getX(int a_lane) {return m_x[a_lane];}
+
+    /**
+     * Gets the position of the ship of a lane (y coordinate).
+     * @param a_lane lane of the ship.
+     * @return the y coordinate of the position.
+     */
+    public double getY(int a_lane) {return m_y[a_lane];}
+
+    /**
+     * Gets the velocity of the ship of a lane (x coordinate).
+     * @param a_lane lane of the ship.
+     * @return the x coordinate of the velocity.
+     */
+    public double getVx(int a_lane) {return m_vx[a_lane];}
+
+    /**
+     * Gets the velocity of the ship of a lane (y coordinate).
+     * @param a_lane lane of the ship.
+     * @return the y coordinate of the velocity.
+     */
+    public double getVy(int a_lane) {return m_vy[a_lane];}
+
+    /**
+     * Gets the direction the ship of a lane is facing (x coordinate).
+     * @param a_lane lane of the ship.
+     * @return the x coordinate of the direction.
+     */
+    public double getDx(int a_lane) {return m_dx[a_lane];}
+
+    /**
+     * Gets the direction the ship of a lane is facing (y coordinate).
+     * @param a_lane lane of the ship.
+     * @return the y coordinate of the direction.
+     */
+    public double getDy(int a_lane) {return m_dy[a_lane];}
+
+    /**
+     * Gets the remaining fuel of the ship of a lane.
+     * @param a_lane lane of the ship.
+     * @return the remaining fuel.
+     */
+    public int getRemainingFuel(int a_lane) {return m_fuel[a_lane];}
+
+    /**
+     * Gets the damage of the ship of a lane.
+     * @param a_lane lane of the ship.
+     * @return the damage of the ship.
+     */
+    public int getDamage(int a_lane) {return m_damage[a_lane];}
+
+    /**
+     * Gets the steps left to collect the next waypoint in a lane.
+     * @param a_lane lane of the game.
+     * @return the steps left.
+     */
+    public int getStepsLeft(int a_lane) {return m_stepsLeft[a_lane];}
+
+    /**
+     * Gets the time spent in the game of a lane.
+     * @param a_lane lane of the game.
+     * @return the total time.
+     */
+    public int getTotalTime(int a_lane) {return m_totalTime[a_lane];}
+
+    /**
+     * Gets the number of waypoints left to collect in a lane.
+     * @param a_lane lane of the game.
+     * @return the waypoints left.
+     */
+    public int getWaypointsLeft(int a_lane) {return m_waypointsLeft[a_lane];}
+
+    /**
+     * Gets the number of fuel tanks left to collect in a lane.
+     * @param a_lane lane of the game.
+     * @return the fuel tanks left.
+     */
+    public int getFuelTanksLeft(int a_lane) {return m_fuelTanksLeft[a_lane];}
+
+    /**
+     * Indicates if the game of a lane has ended.
+     * @param a_lane lane of the game.
+     * @return true if the game has ended.
+     */
+    public boolean isEnded(int a_lane) {return (m_flags[a_lane] & ENDED) != 0;}
+
+    /**
+     * Indicates if the ship of a lane collided in the last step.
+     * @param a_lane lane of the ship.
+     * @return true if there was a collision.
+     */
+    public boolean getCollLastStep(int a_lane) {return (m_flags[a_lane] & COLLISION_LAST_STEP) != 0;}
+
+    /**
+     * Gets the events of the last step of a lane.
+     * @param a_lane lane of the game.
+     * @return the events of the last step, as a combination of Game.EVENT_* flags.
+     */
+    public int getLastStepEvents(int a_lane) {return m_events[a_lane];}
+
+    /**
+     * Indicates if a waypoint has been collected in a lane.
+     * @param a_lane lane of the game.
+     * @param a_index index of the waypoint.
+     * @return true if the waypoint has been collected.
+     */
+    public boolean isWaypointCollected(int a_lane, int a_index)
+    {
+        return isBitSet(m_waypointsCollected, a_lane * m_waypointWords, a_index);
+    }
+
+    /**
+     * Indicates if a fuel tank has been collected in a lane.
+     * @param a_lane lane of the game.
+     * @param a_index index of the fuel tank.
+     * @return true if the fuel tank has been collected.
+     */
+    public boolean isFuelTankCollected(int a_lane, int a_index)
+    {
+        return isBitSet(m_fuelTanksCollected, a_lane * m_fuelTankWords, a_index);
+    }
+
+    /**
+     * Gets the number of waypoints visited in a lane.
+     * @param a_lane lane of the game.
+     * @return the number of waypoints visited.
+     */
+    public int getNumVisited(int a_lane) {return m_numVisited[a_lane];}
+
+    /**
+     * Gets a waypoint of the order of visit of a lane.
+     * @param a_lane lane of the game.
+     * @param a_position position in the order of visit, from 0 to getNumVisited(a_lane)-1.
+     * @return the index of the waypoint visited in that position.
+     */
+    public int getVisited(int a_lane, int a_position) {return m_visitOrder[a_lane * m_numWaypoints + a_position];}
+}
@@ -0,0 +1,150 @@
+package framework.core;
+
+import framework.utils.Vector2d;
+
+import java.util.LinkedList;
+
+/**
+ * This class is a uniform grid of square cells over the map, that indexes the positions of waypoints or fuel tanks.
+ * It is used to find the items that may be collected by the ship without checking every item of the map.
+ * The items of each cell are stored contiguously in one array (cell by cell), so a query does not create new objects.
+ * The grid is built once per map and it is not modified afterwards.
+ * PTSP-Competition
+ */
+final class CollectibleGrid
+{
+    /**
+     * Size of each cell, as a power of two (cells are 32x32 pixels).
+     */
+    private static final int CELL_SHIFT = 5;
+
+    /**
+     * Number of columns of the grid.
+     */
+    private final int m_cols;
+
+    /**
+     * Number of rows of the grid.
+     */
+    private final int m_rows;
+
+    /**
+     * For each cell, index in m_items of its first item. The items of cell c are in [m_cellStart[c], m_cellStart[c+1]).
+     */
+    private final int[] m_cellStart;
+
+    /**
+     * Indexes of the items, grouped by cell and in increasing order inside each cell.
+     */
+    private final int[] m_items;
+
+    /**
+     * Creates the grid for a list of positions.
+     * @param a_positions positions of the items. The index of each item is its position in the list.
+     * @param a_width width of the map.
+     * @param a_height height of the map.
+     */
+    CollectibleGrid(LinkedList<Vector2d> a_positions, int a_width, int a_height)
+    {
+        m_cols = (a_width >> CELL_SHIFT) + 1;
+        m_rows = (a_height >> CELL_SHIFT) + 1;
+        m_cellStart = new int[m_cols * m_rows + 1];
+        m_items = new int[a_positions.size()];
+
+        int[] cells = new int[a_positions.size()];
+        int i = 0;
+        for(Vector2d pos : a_positions)
+        {
+            cells[i] = cell(col(pos.x), row(pos.y));
+            m_cellStart[cells[i] + 1]++;
+            ++i;
+        }
+
+        for(int c = 0; c < m_cols * m_rows; ++c)
+            m_cellStart[c + 1] += m_cellStart[c];
+
+        //Items are placed in increasing order, so each cell keeps them sorted.
+        int[] next = new int[m_cols * m_rows];
+        System.arraycopy(m_cellStart, 0, next, 0, next.length);
+        for(i = 0; i < cells.length; ++i)
+            m_items[next[cells[i]]++] = i;
+    }
+
+    /**
+     * Gets the number of items in the grid.
+     * @return the number of items in the grid.
+     */
+    int size() {return m_items.length;}
+
+    /**
+     * Finds the items that may be closer than a given distance to a position.
+     * @param a_x x coordinate of the position.
+     * @param a_y y coordinate of the position.
+     * @param a_range distance to check.
+     * @param a_out array to write the indexes of the items found, in increasing order. It must fit all the items.
+     * @return the number of items found.
+     */
+    int query(double a_x, double a_y, double a_range, int[] a_out)
+    {
+        int colFrom = col(a_x - a_range), colTo = col(a_x + a_range);
+        int rowFrom = row(a_y - a_range), rowTo = row(a_y + a_range);
+
+        int count = 0;
+        for(int row = rowFrom; row <= rowTo; ++row)
+        {
+            for(int col = colFrom; col <= colTo; ++col)
+            {
+                int c = cell(col, row);
+                for(int k = m_cellStart[c]; k < m_cellStart[c + 1]; ++k)
+                    a_out[count++] = m_items[k];
+            }
+        }
+
+        //Items of several cells are mixed: sort them so they are checked in the same order as in the game.
+        if(colFrom != colTo || rowFrom != rowTo)
+        {
+            for(int i = 1; i < count; ++i)
+            {
+                int item = a_out[i];
+                int j = i - 1;
+                while(j >= 0 && a_out[j] > item)
+                {
+                    a_out[j + 1] = a_out[j];
+                    --j;
+                }
+                a_out[j + 1] = item;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the column of a x coordinate, clamped to the grid.
+     * @param a_x x coordinate.
+     * @return the column of the grid.
+     */
+    private int col(double a_x)
+    {
+        int col = ((int) Math.floor(a_x)) >> CELL_SHIFT;
+        return col < 0 ? 0 : (col >= m_cols ? m_cols - 1 : col);
+    }
+
+    /**
+     * Gets the row of a y coordinate, clamped to the grid.
+     * @param a_y y coordinate.
+     * @return the row of the grid.
+     */
+    private int row(double a_y)
+    {
+        int row = ((int) Math.floor(a_y)) >> CELL_SHIFT;
+        return row < 0 ? 0 : (row >= m_rows ? m_rows - 1 : row);
+    }
+
+    /**
+     * Gets the index of a cell.
+     * @param a_col column of the cell.
+     * @param a_row row of the cell.
+     * @return the index of the cell.
+     */
+    private int cell(int a_col, int a_row) {return a_row * m_cols + a_col;}
+}
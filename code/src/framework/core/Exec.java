@@ -24,6 +24,11 @@ public class Exec
      */
     public static String[] m_mapNames = null;
 
+    /**
+     * Index, in m_mapNames, of the map being played.
+     */
+    public static int m_currentMap = 0;
+
     /**
      * Name of the file that contains the action of a game that we wan to see the replay of.
      */
@@ -176,11 +181,24 @@ public class Exec
     protected static boolean prepareGame()
     {
         //Create the game instance.
-        m_game = new Game(m_mapNames);
+        m_game = new Game(m_mapNames[m_currentMap]);
         //and the controller
         return instanceController();
     }
 
+    /**
+     * Advances to the next map in m_mapNames.
+     * @return true if there is a map yet to be played. False if the last map was the last of the maps in m_mapNames.
+     */
+    public static boolean advanceMap()
+    {
+        m_currentMap++;
+
+        if(m_currentMap < m_mapNames.length)
+            return true;
+        return false;
+    }
+
     /**
      * Waits until the next step.
      * @param duration Amount of time to wait for.
@@ -237,12 +255,12 @@ public class Exec
     }
 
     /**
-     * Reads the forces from a file and returns them in an array.
+     * Reads the forces from a file (as saved by Game.saveRoute()) and returns them in an array.
      * @param a_filename Name of the file where the forces are.
      * @return the array of forces to apply.
      * @throws Exception from file handling.
      */
-    protected static int[] readForces(String a_filename) throws Exception {
+    public static int[] readForces(String a_filename) throws Exception {
         BufferedReader in = new BufferedReader(new FileReader(a_filename));
         String line = in.readLine().trim();
         int n = Integer.parseInt(line);
@@ -0,0 +1,862 @@
+package framework.core;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * This class simulates the ship of a game with fixed point arithmetic: positions and velocities are integers, in units
+ * of 1/2^FRAC_BITS pixels, and the direction of the ship is one of the Ship.NUM_HEADINGS headings of the heading table.
+ * It follows the same rules as Game.tick() and Ship.update(), but all the operations are done with integers (the few
+ * tables it uses are built with StrictMath), so it gives exactly the same results in any JVM, and its states can be
+ * compared and hashed exactly (see stateHash()).
+ * The results are not the same as the ones of Game, that uses doubles: the velocity is rounded every step, and the
+ * direction does not drift as the rotated one of Ship does. FixedPointValidator (in framework.utils) measures how far
+ * both simulations diverge. The action log of the ship is not kept.
+ * A simulator is not thread-safe, but several simulators can share the same map.
+ * PTSP-Competition
+ */
+public class FixedPointSimulator
+{
+    /**
+     * Number of bits of the fractional part of positions and velocities.
+     */
+    public static final int FRAC_BITS = 24;
+
+    /**
+     * One pixel, in fixed point.
+     */
+    public static final long ONE = 1L << FRAC_BITS;
+
+    /**
+     * Half a pixel, in fixed point.
+     */
+    private static final long HALF = ONE >> 1;
+
+    /**
+     * Number of bits dropped from positions and velocities to check the angle of a collision, so the products fit in
+     * a long.
+     */
+    private static final int DOT_SHIFT = 14;
+
+    /**
+     * Friction of the ship (Ship.loss), in fixed point.
+     */
+    private static final long LOSS = toFixed(Ship.loss);
+
+    /**
+     * Speed reduction of each type of collision, in fixed point, indexed by type of collision.
+     */
+    private static final long[] SPEED_RED = new long[PTSPConstants.ELASTIC_COLLISION_TYPE + 1];
+
+    /**
+     * Acceleration of the ship when thrusting with each heading (x coordinate), in fixed point.
+     */
+    private static final long[] ACCELERATION_X = new long[Ship.NUM_HEADINGS];
+
+    /**
+     * Acceleration of the ship when thrusting with each heading (y coordinate), in fixed point.
+     */
+    private static final long[] ACCELERATION_Y = new long[Ship.NUM_HEADINGS];
+
+    static
+    {
+        SPEED_RED[PTSPConstants.NO_COLLISION_TYPE] = ONE;
+        SPEED_RED[PTSPConstants.NORMAL_COLLISION_TYPE] = toFixed(PTSPConstants.COLLISION_SPEED_RED);
+        SPEED_RED[PTSPConstants.DAMAGE_COLLISION_TYPE] = toFixed(PTSPConstants.COLLISION_DAMAGE_SPEED_RED);
+        SPEED_RED[PTSPConstants.ELASTIC_COLLISION_TYPE] = toFixed(PTSPConstants.COLLISION_ELASTIC_SPEED_RED);
+
+        double acceleration = PTSPConstants.T * 0.05 / 2;
+        for(int i = 0; i < Ship.NUM_HEADINGS; ++i)
+        {
+            ACCELERATION_X[i] = toFixed(acceleration * StrictMath.cos(i * Ship.steerStep));
+            ACCELERATION_Y[i] = toFixed(acceleration * StrictMath.sin(i * Ship.steerStep));
+        }
+    }
+
+    /**
+     * Map where the ship is simulated.
+     */
+    private final Map m_map;
+
+    /**
+     * Number of waypoints of the game.
+     */
+    private final int m_numWaypoints;
+
+    /**
+     * Number of fuel tanks of the game.
+     */
+    private final int m_numFuelTanks;
+
+    /**
+     * Position of the waypoints (x coordinate), in fixed point.
+     */
+    private final long[] m_waypointX;
+
+    /**
+     * Position of the waypoints (y coordinate), in fixed point.
+     */
+    private final long[] m_waypointY;
+
+    /**
+     * Distance from the ship at which each waypoint is collected, in fixed point.
+     */
+    private final long[] m_waypointReach;
+
+    /**
+     * Position of the fuel tanks (x coordinate), in fixed point.
+     */
+    private final long[] m_fuelTankX;
+
+    /**
+     * Position of the fuel tanks (y coordinate), in fixed point.
+     */
+    private final long[] m_fuelTankY;
+
+    /**
+     * Distance from the ship at which each fuel tank is collected, in fixed point.
+     */
+    private final long[] m_fuelTankReach;
+
+    /**
+     * Steps given to reach the next waypoint after collecting one.
+     */
+    private final int m_stepsPerWaypoint;
+
+    /**
+     * Points of the collision sphere of the ship relative to its center (x coordinate), in fixed point.
+     */
+    private final long[] m_sphereX;
+
+    /**
+     * Points of the collision sphere of the ship relative to its center (y coordinate), in fixed point.
+     */
+    private final long[] m_sphereY;
+
+    /**
+     * Position of the ship (x coordinate), in fixed point.
+     */
+    private long m_x;
+
+    /**
+     * Position of the ship (y coordinate), in fixed point.
+     */
+    private long m_y;
+
+    /**
+     * Velocity of the ship (x coordinate), in fixed point.
+     */
+    private long m_vx;
+
+    /**
+     * Velocity of the ship (y coordinate), in fixed point.
+     */
+    private long m_vy;
+
+    /**
+     * Index of the heading of the ship.
+     */
+    private int m_heading;
+
+    /**
+     * Indicates if the ship has started moving.
+     */
+    private boolean m_shipStarted;
+
+    /**
+     * Indicates if the game has started.
+     */
+    private boolean m_started;
+
+    /**
+     * Indicates if the game has ended.
+     */
+    private boolean m_ended;
+
+    /**
+     * Indicates if there was a collision in the last step.
+     */
+    private boolean m_collisionLastStep;
+
+    /**
+     * Indicates if the ship is over a lava surface.
+     */
+    private boolean m_onLava;
+
+    /**
+     * Remaining fuel of the ship.
+     */
+    private int m_fuel;
+
+    /**
+     * Damage of the ship.
+     */
+    private int m_damage;
+
+    /**
+     * Invulnerability time after collision.
+     */
+    private int m_invulnerable;
+
+    /**
+     * Type of the last collision.
+     */
+    private int m_lastCollisionType;
+
+    /**
+     * Steps left to reach the next waypoint.
+     */
+    private int m_stepsLeft;
+
+    /**
+     * Total time spent travelling through the map.
+     */
+    private int m_totalTime;
+
+    /**
+     * Waypoints left to the end.
+     */
+    private int m_waypointsLeft;
+
+    /**
+     * Fuel tanks left to the end.
+     */
+    private int m_fuelTanksLeft;
+
+    /**
+     * Events (Game.EVENT_* flags) that happened in the last tick.
+     */
+    private int m_lastTickEvents;
+
+    /**
+     * Collected flags of the waypoints: waypoint i is collected if bit i%64 of m_waypointsCollected[i/64] is set.
+     */
+    private final long[] m_waypointsCollected;
+
+    /**
+     * Collected flags of the fuel tanks: fuel tank i is collected if bit i%64 of m_fuelTanksCollected[i/64] is set.
+     */
+    private final long[] m_fuelTanksCollected;
+
+    /**
+     * Order of waypoints visited so far (indexes of the waypoints). Only the first m_numVisited entries are used.
+     */
+    private final int[] m_visitOrder;
+
+    /**
+     * Number of waypoints visited so far, in m_visitOrder.
+     */
+    private int m_numVisited;
+
+    /**
+     * Creates a simulator in the state of a game.
+     * @param a_game game to start from.
+     */
+    public FixedPointSimulator(Game a_game)
+    {
+        m_map = a_game.getMap();
+        int shipRadius = a_game.getShip().radius;
+
+        LinkedList<Waypoint> waypoints = a_game.getWaypoints();
+        m_numWaypoints = waypoints.size();
+        m_waypointX = new long[m_numWaypoints];
+        m_waypointY = new long[m_numWaypoints];
+        m_waypointReach = new long[m_numWaypoints];
+        int i = 0;
+        for(Waypoint way : waypoints)
+        {
+            m_waypointX[i] = toFixed(way.s.x);
+            m_waypointY[i] = toFixed(way.s.y);
+            m_waypointReach[i] = (shipRadius + way.radius) * ONE;
+            ++i;
+        }
+
+        LinkedList<FuelTank> fuelTanks = a_game.getFuelTanks();
+        m_numFuelTanks = fuelTanks.size();
+        m_fuelTankX = new long[m_numFuelTanks];
+        m_fuelTankY = new long[m_numFuelTanks];
+        m_fuelTankReach = new long[m_numFuelTanks];
+        i = 0;
+        for(FuelTank ft : fuelTanks)
+        {
+            m_fuelTankX[i] = toFixed(ft.s.x);
+            m_fuelTankY[i] = toFixed(ft.s.y);
+            m_fuelTankReach[i] = (shipRadius + ft.radius) * ONE;
+            ++i;
+        }
+
+        m_stepsPerWaypoint = PTSPConstants.getStepsPerWaypoints(a_game.getNumWaypoints());
+
+        //Same sphere as Ship.createCollSphere(), with each point computed directly from its angle.
+        int numPoints = Map.COLL_SPHERE_RELATIVE.length;
+        m_sphereX = new long[numPoints];
+        m_sphereY = new long[numPoints];
+        for(i = 0; i < numPoints; ++i)
+        {
+            double angle = i * 2.0 * Math.PI / numPoints;
+            m_sphereX[i] = toFixed(1.5 * shipRadius * StrictMath.cos(angle));
+            m_sphereY[i] = toFixed(1.5 * shipRadius * StrictMath.sin(angle));
+        }
+
+        m_waypointsCollected = new long[(m_numWaypoints + 63) >> 6];
+        m_fuelTanksCollected = new long[(m_numFuelTanks + 63) >> 6];
+        m_visitOrder = new int[m_numWaypoints];
+
+        load(a_game);
+    }
+
+    /**
+     * Sets the state of the simulator to the one of a game. The position and velocity are rounded to fixed point, and
+     * the direction to the closest heading.
+     * @param a_game game to copy the state from. It must be played in the same map, with the same waypoints and fuel tanks.
+     */
+    public void load(Game a_game)
+    {
+        if(a_game.getMap() != m_map || a_game.getWaypoints().size() != m_numWaypoints ||
+           a_game.getFuelTanks().size() != m_numFuelTanks)
+            throw new IllegalArgumentException("The game is not played in the map of this simulator.");
+
+        Ship ship = a_game.getShip();
+        m_x = toFixed(ship.s.x);
+        m_y = toFixed(ship.s.y);
+        m_vx = toFixed(ship.v.x);
+        m_vy = toFixed(ship.v.y);
+        m_heading = ship.getHeadingIndex();
+        m_shipStarted = ship.hasStarted();
+        m_started = a_game.hasStarted();
+        m_ended = a_game.isEnded();
+        m_collisionLastStep = ship.getCollLastStep();
+        m_onLava = ship.isOnLava();
+        m_fuel = ship.getRemainingFuel();
+        m_damage = ship.getDamage();
+        m_invulnerable = ship.getInvulnerableTime();
+        m_lastCollisionType = ship.getLastCollisionType();
+        m_stepsLeft = a_game.getStepsLeft();
+        m_totalTime = a_game.getTotalTime();
+        m_waypointsLeft = a_game.getWaypointsLeft();
+        m_fuelTanksLeft = a_game.getFuelTanksLeft();
+        m_lastTickEvents = a_game.getLastTickEvents();
+
+        for(int i = 0; i < m_numWaypoints; ++i)
+            setBit(m_waypointsCollected, i, a_game.isWaypointCollected(i));
+        for(int i = 0; i < m_numFuelTanks; ++i)
+            setBit(m_fuelTanksCollected, i, a_game.isFuelTankCollected(i));
+
+        ArrayList<Integer> visitOrder = a_game.getVisitOrder();
+        m_numVisited = visitOrder.size();
+        for(int i = 0; i < m_numVisited; ++i)
+            m_visitOrder[i] = visitOrder.get(i);
+    }
+
+    /**
+     * Copies the state of this simulator into another one, created for the same game.
+     * @param a_target simulator to copy the state to.
+     */
+    public void copyInto(FixedPointSimulator a_target)
+    {
+        if(a_target.m_map != m_map || a_target.m_numWaypoints != m_numWaypoints || a_target.m_numFuelTanks != m_numFuelTanks)
+            throw new IllegalArgumentException("The simulator is not for the map of this simulator.");
+
+        a_target.m_x = m_x;
+        a_target.m_y = m_y;
+        a_target.m_vx = m_vx;
+        a_target.m_vy = m_vy;
+        a_target.m_heading = m_heading;
+        a_target.m_shipStarted = m_shipStarted;
+        a_target.m_started = m_started;
+        a_target.m_ended = m_ended;
+        a_target.m_collisionLastStep = m_collisionLastStep;
+        a_target.m_onLava = m_onLava;
+        a_target.m_fuel = m_fuel;
+        a_target.m_damage = m_damage;
+        a_target.m_invulnerable = m_invulnerable;
+        a_target.m_lastCollisionType = m_lastCollisionType;
+        a_target.m_stepsLeft = m_stepsLeft;
+        a_target.m_totalTime = m_totalTime;
+        a_target.m_waypointsLeft = m_waypointsLeft;
+        a_target.m_fuelTanksLeft = m_fuelTanksLeft;
+        a_target.m_lastTickEvents = m_lastTickEvents;
+        System.arraycopy(m_waypointsCollected, 0, a_target.m_waypointsCollected, 0, m_waypointsCollected.length);
+        System.arraycopy(m_fuelTanksCollected, 0, a_target.m_fuelTanksCollected, 0, m_fuelTanksCollected.length);
+        System.arraycopy(m_visitOrder, 0, a_target.m_visitOrder, 0, m_numVisited);
+        a_target.m_numVisited = m_numVisited;
+    }
+
+    /**
+     * Executes one tick of the game, as Game.tick() does.
+     * @param a_shipMove Move to execute.
+     */
+    public void tick(int a_shipMove)
+    {
+        if(m_ended)
+            return;
+
+        int waypointsLeft = m_waypointsLeft;
+        int fuelTanksLeft = m_fuelTanksLeft;
+
+        if(!m_shipStarted && a_shipMove != Controller.ACTION_NO_FRONT)
+            m_shipStarted = m_started = true;
+
+        if(m_shipStarted)
+        {
+            move(a_shipMove);
+            checkPickups();
+        }
+
+        if(m_started)
+        {
+            m_stepsLeft--;
+            m_totalTime++;
+        }
+
+        if(m_waypointsLeft == 0 || m_stepsLeft <= 0 || m_damage >= PTSPConstants.MAX_DAMAGE)
+            m_ended = true;
+
+        int events = 0;
+        if(m_ended)
+            events |= Game.EVENT_GAME_ENDED;
+        if(m_collisionLastStep)
+            events |= Game.EVENT_COLLISION;
+        if(m_waypointsLeft < waypointsLeft)
+            events |= Game.EVENT_WAYPOINT;
+        if(m_fuelTanksLeft < fuelTanksLeft)
+            events |= Game.EVENT_FUEL_TANK;
+        m_lastTickEvents = events;
+    }
+
+    /**
+     * Executes the same move several times, stopping if the game ends, as Game.tickN() does.
+     * @param a_shipMove Move to execute.
+     * @param a_numTicks Number of times to execute the move.
+     * @return the number of ticks executed.
+     */
+    public int tickN(int a_shipMove, int a_numTicks)
+    {
+        int ticks = 0;
+        while(ticks < a_numTicks && !m_ended)
+        {
+            tick(a_shipMove);
+            ticks++;
+        }
+        return ticks;
+    }
+
+    /**
+     * Executes a sequence of moves, stopping if the game ends, as Game.tick(int[], int, int) does.
+     * @param a_shipMoves Array with the moves to execute.
+     * @param a_from Index in a_shipMoves of the first move to execute.
+     * @param a_length Number of moves to execute.
+     * @return the number of ticks executed.
+     */
+    public int tick(int[] a_shipMoves, int a_from, int a_length)
+    {
+        int ticks = 0;
+        while(ticks < a_length && !m_ended)
+        {
+            tick(a_shipMoves[a_from + ticks]);
+            ticks++;
+        }
+        return ticks;
+    }
+
+    /**
+     * Moves the ship and manages its collisions, as Ship.update() does once the ship has started.
+     * @param a_shipMove Move to execute.
+     */
+    private void move(int a_shipMove)
+    {
+        m_heading += Controller.getTurning(a_shipMove);
+        if(m_heading < 0) m_heading += Ship.NUM_HEADINGS;
+        else if(m_heading >= Ship.NUM_HEADINGS) m_heading -= Ship.NUM_HEADINGS;
+
+        long vx = m_vx, vy = m_vy;
+        if(Controller.getThrust(a_shipMove) && m_fuel > 0)
+        {
+            m_fuel--;
+            vx += ACCELERATION_X[m_heading];
+            vy += ACCELERATION_Y[m_heading];
+        }
+        vx = mul(vx, LOSS);
+        vy = mul(vy, LOSS);
+
+        //The collision sphere is placed before checking the boundaries of the map, as in Ship.update().
+        long sphereX = m_x + vx;
+        long sphereY = m_y + vy;
+        long potentialX = sphereX, potentialY = sphereY;
+        long maxX = (m_map.getMapWidth() - 1) * ONE;
+        long maxY = (m_map.getMapHeight() - 1) * ONE;
+        if(potentialX > maxX)
+            potentialX = maxX;
+        else if(potentialX < 0)
+            potentialX = 0;
+        else if(potentialY > maxY)
+            potentialY = maxY;
+        else if(potentialY < 0)
+            potentialY = 0;
+
+        m_collisionLastStep = false;
+        int coll = collide(sphereX, sphereY, potentialX, potentialY, vx, vy);
+        if(coll != 0)
+        {
+            m_collisionLastStep = true;
+            if(coll == 1)
+                m_vx = -m_vx;
+            else
+                m_vy = -m_vy;
+
+            if(m_invulnerable == 0)
+            {
+                if(m_lastCollisionType == PTSPConstants.NORMAL_COLLISION_TYPE)
+                {
+                    m_invulnerable = PTSPConstants.INVULNERABLE;
+                    m_damage += PTSPConstants.DAMAGE_NORMAL_COLLISION;
+                }
+                else if(m_lastCollisionType == PTSPConstants.DAMAGE_COLLISION_TYPE)
+                {
+                    m_invulnerable = PTSPConstants.INVULNERABLE;
+                    m_damage += PTSPConstants.DAMAGE_DAMAGE_COLLISION;
+                }
+            }
+
+            if(m_lastCollisionType > PTSPConstants.NO_COLLISION_TYPE && m_lastCollisionType < SPEED_RED.length)
+            {
+                m_vx = mul(m_vx, SPEED_RED[m_lastCollisionType]);
+                m_vy = mul(m_vy, SPEED_RED[m_lastCollisionType]);
+            }
+        }
+
+        if(m_onLava)
+            m_damage += PTSPConstants.DAMAGE_LAVA;
+
+        if(m_invulnerable > 0)
+            m_invulnerable--;
+
+        if(coll == 0)
+        {
+            m_x = potentialX;
+            m_y = potentialY;
+            m_vx = vx;
+            m_vy = vy;
+        }
+    }
+
+    /**
+     * Checks the collisions of the ship with the map, as Ship.checkCollisions() does. Updates m_onLava and, if there
+     * is a collision, m_lastCollisionType.
+     * @param a_sphereX center of the collision sphere (x coordinate).
+     * @param a_sphereY center of the collision sphere (y coordinate).
+     * @param a_potentialX position of the ship, inside the map (x coordinate).
+     * @param a_potentialY position of the ship, inside the map (y coordinate).
+     * @param a_vx velocity of the ship (x coordinate).
+     * @param a_vy velocity of the ship (y coordinate).
+     * @return type of collisions (0: no collision, 1: collision up/down, 2: collision left/right)
+     */
+    private int collide(long a_sphereX, long a_sphereY, long a_potentialX, long a_potentialY, long a_vx, long a_vy)
+    {
+        int last = m_sphereX.length - 1;
+        if(m_map.isPixelClear(round(a_sphereX), round(a_sphereY)))
+        {
+            m_onLava = (m_map.getCode(round(m_sphereX[last] + a_sphereX), round(m_sphereY[last] + a_sphereY)) & Map.CODE_LAVA) != 0;
+            return 0;
+        }
+
+        long vx = a_vx >> DOT_SHIFT, vy = a_vy >> DOT_SHIFT;
+        long speedSq = vx * vx + vy * vy;
+        for(int i = 0; i <= last; ++i)
+        {
+            long x = m_sphereX[i] + a_sphereX;
+            long y = m_sphereY[i] + a_sphereY;
+            int xRound = round(x);
+            int yRound = round(y);
+
+            int collision = 1;
+            if(!m_map.isOutsideBounds(xRound, yRound))
+            {
+                int code = m_map.getCode(xRound, yRound);
+                m_onLava = (code & Map.CODE_LAVA) != 0;
+                collision = code & Map.CODE_COLLISION_MASK;
+            }
+
+            if(collision != 0)
+            {
+                //The angle between the velocity and the point is under 60 degrees: dot > 0.5 * |toColl| * |v|.
+                long toCollX = (x - a_potentialX) >> DOT_SHIFT;
+                long toCollY = (y - a_potentialY) >> DOT_SHIFT;
+                long dot = toCollX * vx + toCollY * vy;
+                if(dot > 0 && 4 * dot * dot > (toCollX * toCollX + toCollY * toCollY) * speedSq)
+                {
+                    m_lastCollisionType = m_map.getCollisionType(xRound, yRound);
+                    return collision;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Checks if the ship collects any waypoint or fuel tank in its position, as Game.checkPickups() does.
+     */
+    private void checkPickups()
+    {
+        for(int i = 0; i < m_numWaypoints; ++i)
+        {
+            if(!isBitSet(m_waypointsCollected, i) && isCollected(m_waypointX[i], m_waypointY[i], m_waypointReach[i]))
+            {
+                setBit(m_waypointsCollected, i, true);
+                m_stepsLeft = m_stepsPerWaypoint;
+                m_waypointsLeft--;
+                m_visitOrder[m_numVisited++] = i;
+                m_fuel = Math.min(m_fuel + PTSPConstants.FUEL_WAYPOINT_REWARD, PTSPConstants.INITIAL_FUEL);
+            }
+        }
+
+        for(int i = 0; i < m_numFuelTanks; ++i)
+        {
+            if(!isBitSet(m_fuelTanksCollected, i) && isCollected(m_fuelTankX[i], m_fuelTankY[i], m_fuelTankReach[i]))
+            {
+                setBit(m_fuelTanksCollected, i, true);
+                m_fuel = Math.min(m_fuel + PTSPConstants.FUEL_TANK_BOOST, PTSPConstants.INITIAL_FUEL);
+                m_fuelTanksLeft--;
+            }
+        }
+    }
+
+    /**
+     * Checks if an item is collected by the ship: its distance to the ship is smaller than its reach.
+     * @param a_itemX x coordinate of the item.
+     * @param a_itemY y coordinate of the item.
+     * @param a_reach distance at which the item is collected.
+     * @return true if the item is collected.
+     */
+    private boolean isCollected(long a_itemX, long a_itemY, long a_reach)
+    {
+        long dx = a_itemX - m_x;
+        long dy = a_itemY - m_y;
+        if(dx >= a_reach || dx <= -a_reach || dy >= a_reach || dy <= -a_reach)
+            return false;
+        return dx * dx + dy * dy < a_reach * a_reach;
+    }
+
+    /**
+     * Gets a hash of the state of the game. Two simulators in the same state (same position, velocity, heading,
+     * counters and items collected) always have the same hash.
+     * @return the hash of the state.
+     */
+    public long stateHash()
+    {
+        long hash = mixHash(0, m_x);
+        hash = mixHash(hash, m_y);
+        hash = mixHash(hash, m_vx);
+        hash = mixHash(hash, m_vy);
+        hash = mixHash(hash, ((long) m_heading << 32) | (m_invulnerable & 0xFFFFFFFFL));
+        hash = mixHash(hash, ((long) m_fuel << 32) | (m_damage & 0xFFFFFFFFL));
+        hash = mixHash(hash, ((long) m_stepsLeft << 32) | (m_totalTime & 0xFFFFFFFFL));
+        hash = mixHash(hash, (m_shipStarted ? 1 : 0) | (m_started ? 2 : 0) | (m_ended ? 4 : 0) |
+                             (m_collisionLastStep ? 8 : 0) | (m_onLava ? 16 : 0) | ((long) m_lastCollisionType << 8));
+        for(long word : m_waypointsCollected)
+            hash = mixHash(hash, word);
+        for(long word : m_fuelTanksCollected)
+            hash = mixHash(hash, word);
+        return hash;
+    }
+
+    /**
+     * Mixes a value into a hash (with the finalizer of SplitMix64).
+     * @param a_hash hash so far.
+     * @param a_value value to mix.
+     * @return the new hash.
+     */
+    private static long mixHash(long a_hash, long a_value)
+    {
+        long z = (a_hash ^ a_value) + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Converts a value to fixed point, rounding it to the closest one.
+     * @param a_value value to convert.
+     * @return the value in fixed point.
+     */
+    private static long toFixed(double a_value)
+    {
+        return Math.round(a_value * ONE);
+    }
+
+    /**
+     * Multiplies a fixed point value by a factor, rounding towards 0 so speeds always decay.
+     * @param a_value value to multiply.
+     * @param a_factor factor, in fixed point.
+     * @return the product, in fixed point.
+     */
+    private static long mul(long a_value, long a_factor)
+    {
+        long product = a_value * a_factor;
+        return (product >= 0) ? (product >> FRAC_BITS) : -((-product) >> FRAC_BITS);
+    }
+
+    /**
+     * Rounds a fixed point coordinate to its pixel, as Math.round() does with doubles.
+     * @param a_value coordinate in fixed point.
+     * @return the pixel of the coordinate.
+     */
+    private static int round(long a_value)
+    {
+        return (int) ((a_value + HALF) >> FRAC_BITS);
+    }
+
+    /**
+     * Checks a bit of a bitmask.
+     * @param a_mask bitmask.
+     * @param a_index index of the bit.
+     * @return true if the bit is set.
+     */
+    private static boolean isBitSet(long[] a_mask, int a_index)
+    {
+        return (a_mask[a_index >> 6] & (1L << a_index)) != 0;
+    }
+
+    /**
+     * Sets or clears a bit of a bitmask.
+     * @param a_mask bitmask.
+     * @param a_index index of the bit.
+     * @param a_value true to set the bit, false to clear it.
+     */
+    private static void setBit(long[] a_mask, int a_index, boolean a_value)
+    {
+        if(a_value)
+            a_mask[a_index >> 6] |= (1L << a_index);
+        else
+            a_mask[a_index >> 6] &= ~(1L << a_index);
+    }
+
+    /**
+     * Gets the position of the ship (x coordinate), in pixels.
+     * @return the x coordinate of the ship.
+     */
+    public double getX() {return (double) m_x / ONE;}
+
+    /**
+     * Gets the position of the ship (y coordinate), in pixels.
+     * @return the y coordinate of the ship.
+     */
+    public double getY() {return (double) m_y / ONE;}
+
+    /**
+     * Gets the velocity of the ship (x coordinate), in pixels per step.
+     * @return the x coordinate of the velocity.
+     */
+    public double getVx() {return (double) m_vx / ONE;}
+
+    /**
+     * Gets the velocity of the ship (y coordinate), in pixels per step.
+     * @return the y coordinate of the velocity.
+     */
+    public double getVy() {return (double) m_vy / ONE;}
+
+    /**
+     * Gets the position of the ship (x coordinate), in fixed point.
+     * @return the x coordinate of the ship, in units of 1/ONE pixels.
+     */
+    public long getFixedX() {return m_x;}
+
+    /**
+     * Gets the position of the ship (y coordinate), in fixed point.
+     * @return the y coordinate of the ship, in units of 1/ONE pixels.
+     */
+    public long getFixedY() {return m_y;}
+
+    /**
+     * Gets the index of the heading of the ship (see Ship.getHeadingDirection()).
+     * @return the index of the heading, from 0 to Ship.NUM_HEADINGS-1.
+     */
+    public int getHeadingIndex() {return m_heading;}
+
+    /**
+     * Gets the remaining fuel of the ship.
+     * @return the remaining fuel.
+     */
+    public int getRemainingFuel() {return m_fuel;}
+
+    /**
+     * Gets the damage of the ship.
+     * @return the damage.
+     */
+    public int getDamage() {return m_damage;}
+
+    /**
+     * Indicates if the ship is over a lava surface.
+     * @return true if the ship is on lava.
+     */
+    public boolean isOnLava() {return m_onLava;}
+
+    /**
+     * Indicates if there was a collision in the last step.
+     * @return true if the ship collided in the last step.
+     */
+    public boolean getCollLastStep() {return m_collisionLastStep;}
+
+    /**
+     * Gets the steps left to reach the next waypoint.
+     * @return the steps left.
+     */
+    public int getStepsLeft() {return m_stepsLeft;}
+
+    /**
+     * Gets the total time spent travelling through the map.
+     * @return the total time.
+     */
+    public int getTotalTime() {return m_totalTime;}
+
+    /**
+     * Gets the number of waypoints left to collect.
+     * @return the waypoints left.
+     */
+    public int getWaypointsLeft() {return m_waypointsLeft;}
+
+    /**
+     * Gets the number of fuel tanks left to collect.
+     * @return the fuel tanks left.
+     */
+    public int getFuelTanksLeft() {return m_fuelTanksLeft;}
+
+    /**
+     * Indicates if the game has ended.
+     * @return true if the game has ended.
+     */
+    public boolean isEnded() {return m_ended;}
+
+    /**
+     * Gets the events that happened in the last tick.
+     * @return the events of the last tick, as a combination of Game.EVENT_* flags.
+     */
+    public int getLastTickEvents() {return m_lastTickEvents;}
+
+    /**
+     * Indicates if a waypoint has been collected.
+     * @param a_index index of the waypoint.
+     * @return true if the waypoint has been collected.
+     */
+    public boolean isWaypointCollected(int a_index) {return isBitSet(m_waypointsCollected, a_index);}
+
+    /**
+     * Indicates if a fuel tank has been collected.
+     * @param a_index index of the fuel tank.
+     * @return true if the fuel tank has been collected.
+     */
+    public boolean isFuelTankCollected(int a_index) {return isBitSet(m_fuelTanksCollected, a_index);}
+
+    /**
+     * Gets the number of waypoints visited.
+     * @return the number of waypoints visited.
+     */
+    public int getNumVisited() {return m_numVisited;}
+
+    /**
+     * Gets a waypoint of the order of visits.
+     * @param a_position position in the order of visits, from 0 to getNumVisited()-1.
+     * @return the index of the waypoint visited in that position.
+     */
+    public int getVisited(int a_position) {return m_visitOrder[a_position];}
+}
@@ -2,7 +2,6 @@ package framework.core;
 
 import framework.utils.Vector2d;
 
-import java.awt.*;
 
 /**
  * This class represents the FuelTank object, that can be collected by the ship during the game.
@@ -13,9 +12,9 @@ import java.awt.*;
 public class FuelTank extends GameObject
 {
     /**
-     * Indicates if this fuel tank has been collected in the game.
+     * Index of this fuel tank in the list of the game. Its collected flag is kept by the game.
      */
-    protected boolean collected;
+    protected int m_index;
 
 
     /**
@@ -23,11 +22,6 @@ public class FuelTank extends GameObject
      */
     public static int RADIUS = 4;
 
-    /**
-     * Color for the fuel tank
-     */
-    public static Color fuelTankColor = new Color(34,177,76);
-
     /**
      * Private constructor, used by getCopy();
      */
@@ -44,7 +38,6 @@ public class FuelTank extends GameObject
     {
         m_game = game;
         this.s = s;
-        this.collected = false;
         this.radius = RADIUS;
     }
 
@@ -62,30 +55,6 @@ public class FuelTank extends GameObject
         //Not in use, nothing to do here.
     }
 
-    /**
-     *  Draws the fuel tank.
-     *  @param g Graphics object.
-     */
-    public void draw(Graphics2D g)
-    {
-        if(!collected)
-        {
-            g.setColor(fuelTankColor);
-
-            int drawRadius = Ship.SHIP_RADIUS * radius;
-            g.fillOval((int) (s.x - drawRadius*0.5),(int) (s.y - drawRadius*0.5),drawRadius,drawRadius+2);
-
-            g.setColor(Color.black);
-            g.drawOval((int) (s.x - drawRadius*0.5),(int) (s.y - drawRadius*0.5),drawRadius,drawRadius+2);
-            g.drawLine((int) (s.x - drawRadius*0.5), (int) s.y, (int) (s.x + drawRadius*0.5), (int) s.y) ;
-
-            g.setColor(Color.yellow);
-            g.fillOval((int) (s.x - radius),(int) (s.y - radius),radius,radius);
-        }
-    }
-
-    //
-
     /**
      * Check if this fuel tank is collected, given the position of the ship.
      * @param a_pos Position of the ship, or to be checked.
@@ -107,9 +76,9 @@ public class FuelTank extends GameObject
      */
     public void setCollected(boolean coll)
     {
-        if(!collected)
+        if(!isCollected())
         {
-            collected = coll;
+            m_game.setFuelTankCollected(m_index, coll);
             m_game.fuelTankCollected();
         }
     }
@@ -118,7 +87,7 @@ public class FuelTank extends GameObject
      * Indicates if this fuel tank is already collected or not.
      * @return if this fuel tank has been already collected.
      */
-    public boolean isCollected() {return this.collected;}
+    public boolean isCollected() {return m_game.isFuelTankCollected(m_index);}
 
 
     /**
@@ -137,7 +106,7 @@ public class FuelTank extends GameObject
         copied.d = this.d.copy();
         copied.m_game = a_game;
         copied.radius = this.radius;
-        copied.collected = this.collected;
+        copied.m_index = this.m_index;
 
         return copied;
     }
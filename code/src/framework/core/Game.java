@@ -2,7 +2,6 @@ package framework.core;
 
 import framework.utils.Vector2d;
 
-import java.awt.*;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 import java.text.DateFormat;
@@ -20,24 +19,49 @@ import java.util.*;
 public class Game
 {
     /**
-     * Objects of the game.
+     * Ratio between the quantization of the velocity and the quantization of the position in stateHash().
      */
-    private LinkedList<GameObject> m_gameObjects;
+    public static final double VELOCITY_QUANTIZATION = 0.1;
+
+    /**
+     * Salt of the Zobrist keys of the waypoints.
+     */
+    private static final long WAYPOINT_KEY_SALT = 0x5A3C9E1B7F4D2A61L;
+
+    /**
+     * Salt of the Zobrist keys of the fuel tanks.
+     */
+    private static final long FUEL_TANK_KEY_SALT = 0x1D8B6F2C4E9A7305L;
+
+    /**
+     * Event flag of getLastTickEvents(): the game is over.
+     */
+    public static final int EVENT_GAME_ENDED = 1;
 
     /**
-     * Map of the game.
+     * Event flag of getLastTickEvents(): the ship collided with an obstacle.
      */
-    public static Map[] m_maps;
+    public static final int EVENT_COLLISION = 2;
 
     /**
-     * Number of current map.
+     * Event flag of getLastTickEvents(): a waypoint was collected.
      */
-    private static int m_currentMap;
+    public static final int EVENT_WAYPOINT = 4;
 
     /**
-     * Dimensions of the map.
+     * Event flag of getLastTickEvents(): a fuel tank was collected.
      */
-    private Dimension m_size;
+    public static final int EVENT_FUEL_TANK = 8;
+
+    /**
+     * Objects of the game.
+     */
+    private LinkedList<GameObject> m_gameObjects;
+
+    /**
+     * Map of the game, shared by all the copies of the game.
+     */
+    private Map m_map;
 
     /**
      * Ship of the game.
@@ -74,6 +98,11 @@ public class Game
      */
     private LinkedList<Waypoint> m_waypoints;
 
+    /**
+     * Waypoints in the map, indexed as in m_waypoints (for fast access). Only the first m_numWaypoints are used.
+     */
+    private Waypoint[] m_waypointArray;
+
     /**
      * Number of waypoints to collect/visit.
      */
@@ -84,6 +113,11 @@ public class Game
      */
     private LinkedList<FuelTank> m_fuelTanks;
 
+    /**
+     * Fuel tanks in the map, indexed as in m_fuelTanks (for fast access). Only the first m_numFuelTanks are used.
+     */
+    private FuelTank[] m_fuelTankArray;
+
     /**
      * Number of fuel tanks to collect.
      */
@@ -95,20 +129,55 @@ public class Game
     private int m_fuelTanksLeft;
 
     /**
-     * Order of waypoints visited so far.
+     * Collected flags of the waypoints: waypoint i is collected if bit i%64 of m_waypointsCollected[i/64] is set.
+     */
+    private long[] m_waypointsCollected;
+
+    /**
+     * Collected flags of the fuel tanks: fuel tank i is collected if bit i%64 of m_fuelTanksCollected[i/64] is set.
+     */
+    private long[] m_fuelTanksCollected;
+
+    /**
+     * Order of waypoints visited so far (indexes of the waypoints). Only the first m_numVisited entries are used.
+     */
+    private int[] m_visitOrder;
+
+    /**
+     * Number of waypoints visited so far, in m_visitOrder.
+     */
+    private int m_numVisited;
+
+    /**
+     * Zobrist hash of the waypoints and fuel tanks collected: XOR of the keys of all the items collected.
+     */
+    private long m_collectedHash;
+
+
+    /**
+     * Largest radius of the waypoints of the game.
+     */
+    private int m_maxWaypointRadius;
+
+    /**
+     * Largest radius of the fuel tanks of the game.
      */
-    private ArrayList<Integer> m_visitOrder;
+    private int m_maxFuelTankRadius;
 
     /**
-     * Allows new waypoints to be added.
+     * Indexes of the waypoints or fuel tanks close to the ship, found by checkPickups().
      */
-    private boolean m_waypointsBlocked;
+    private int[] m_pickupCandidates;
 
+    /**
+     * Events (EVENT_* flags) that happened in the last tick.
+     */
+    private int m_lastTickEvents;
 
     /**
-     * Allows new fuel tanks to be added.
+     * Undo journal of the game, only used when journaling is enabled (null otherwise).
      */
-    private boolean m_fuelTanksBlocked;
+    private GameJournal m_journal;
 
     /**
      * Default constructor. Only used for getCopy().
@@ -117,8 +186,13 @@ public class Game
     {
         m_gameObjects = new LinkedList<GameObject>();
         m_waypoints = new LinkedList<Waypoint>();
+        m_waypointArray = new Waypoint[0];
         m_fuelTanks = new LinkedList<FuelTank>();
-        m_visitOrder = new ArrayList<Integer>();
+        m_fuelTankArray = new FuelTank[0];
+        m_waypointsCollected = new long[0];
+        m_fuelTanksCollected = new long[0];
+        m_visitOrder = new int[0];
+        m_pickupCandidates = new int[0];
     }
 
     /**
@@ -127,48 +201,7 @@ public class Game
      */
     public Game(String a_mapFilename)
     {
-        //Total time
-        m_totalTime = 0;
-
-        //Waypoints can be added.
-        m_waypointsBlocked = false;
-        m_fuelTanksBlocked = false;
-
-        //It'll be started when the ship makes a move.
-        m_started = m_gameEnded = false;
-
-        //Game objects container
-        m_gameObjects = new LinkedList<GameObject>();
-
-        //List of waypoints of the map.
-        m_waypoints = new LinkedList<Waypoint>();
-
-        //List of fuel tanks of the map.
-        m_fuelTanks = new LinkedList<FuelTank>();
-
-        //Order of visits.
-        m_visitOrder = new ArrayList<Integer>();
-
-       //Create and read the map.
-        m_currentMap = 0;
-        m_maps = new Map[1];
-        m_maps[m_currentMap] = new Map(this, a_mapFilename);
-
-        //Initialize some variables
-        m_size = new Dimension(getMap().getMapChar().length, getMap().getMapChar()[0].length);
-
-        //Number of waypoints to be collected.
-        m_waypointsLeft = m_numWaypoints;
-
-        //Number of fuel tanks left:
-        m_fuelTanksLeft = m_numFuelTanks;
-
-        //This is the number of steps allowed until reaching the next waypoint.
-        m_stepsLeft = PTSPConstants.getStepsPerWaypoints(m_numWaypoints);
-
-        //Create the ship of the game and add it to the game objects
-        m_ship = new Ship(this, getMap().getStartingPoint());
-        m_gameObjects.add(m_ship);
+        this(Map.load(a_mapFilename));
     }
 
     /**
@@ -176,16 +209,22 @@ public class Game
      * @param map Map contents (just obstacles and free spaces).
      * @param startingPoint Starting point of the ship.
      * @param wayPoints List of waypoint positions.
+     * @param fuelPoints List of fuel tank positions.
      */
     public Game(char[][] map, Vector2d startingPoint, LinkedList<Vector2d> wayPoints, LinkedList<Vector2d> fuelPoints)
+    {
+        this(new Map(map, startingPoint, wayPoints, fuelPoints));
+    }
+
+    /**
+     * Creates a new game in the given map. The map is not copied: it is shared with all the games played in it.
+     * @param a_map Map where the game will be played.
+     */
+    public Game(Map a_map)
     {
         //Total time
         m_totalTime = 0;
 
-        //Waypoints can be added.
-        m_waypointsBlocked = false;
-        m_fuelTanksBlocked = false;
-
         //It'll be started when the ship makes a move.
         m_started = m_gameEnded = false;
 
@@ -193,140 +232,225 @@ public class Game
         m_gameObjects = new LinkedList<GameObject>();
 
         //Order of visits.
-        m_visitOrder = new ArrayList<Integer>();
+        m_waypointsCollected = new long[0];
+        m_fuelTanksCollected = new long[0];
+        m_visitOrder = new int[0];
+        m_pickupCandidates = new int[0];
+
+        //The map, shared with the copies of this game.
+        m_map = a_map;
+
+        //Arrays of waypoints and fuel tanks, sized for all the items of the map.
+        m_waypointArray = new Waypoint[0];
+        m_fuelTankArray = new FuelTank[0];
+        reserveItems(m_map.getWaypointPositions().size(), m_map.getFuelTankPositions().size());
 
         //List of waypoints of the map.
         m_waypoints = new LinkedList<Waypoint>();
         m_numWaypoints = 0;
-
-        //Copy the waypoints.
-        for(int i = 0; i < wayPoints.size(); ++i)
+        for(Vector2d pos : m_map.getWaypointPositions())
         {
-            Waypoint newWaypoint = new Waypoint(this, wayPoints.get(i));
-            addWaypoint(newWaypoint);
+            addWaypoint(new Waypoint(this, pos));
         }
 
         //List of fuel tanks of the map.
         m_fuelTanks = new LinkedList<FuelTank>();
         m_numFuelTanks = 0;
-        //Copy the fuel tanks.
-        for(int i = 0; i < fuelPoints.size(); ++i)
+        for(Vector2d pos : m_map.getFuelTankPositions())
         {
-            FuelTank newFT = new FuelTank(this, fuelPoints.get(i));
-            addFuelTank(newFT);
+            addFuelTank(new FuelTank(this, pos));
         }
 
-        //Create and read the map.
-        m_currentMap = 0;
-        m_maps = new Map[1];
-        m_maps[m_currentMap] = new Map(this, map, startingPoint, wayPoints, fuelPoints);
-
-        //Initialize some variables
-        m_size = new Dimension(getMap().getMapChar().length, getMap().getMapChar()[0].length);
-
         //Number of waypoints to be collected.
         m_waypointsLeft = m_numWaypoints;
 
-        //number of fuel tanks available
+        //number of available fuel tanks
         m_fuelTanksLeft = m_numFuelTanks;
 
         //This is the number of steps allowed until reaching the next waypoint.
         m_stepsLeft = PTSPConstants.getStepsPerWaypoints(m_numWaypoints);
 
         //Create the ship of the game and add it to the game objects
-        m_ship = new Ship(this, getMap().getStartingPoint());
+        m_ship = new Ship(this, m_map.getStartingPoint());
         m_gameObjects.add(m_ship);
     }
 
     /**
-     * Public game constructor
-     * @param a_mapFilename Name of the file where the game will be played.
+     * Updates the game logic: all entities in the game and game state.
+     * @param a_shipMove Move to execute.
      */
-    public Game(String[] a_mapFilename)
+    public void tick(int a_shipMove)
     {
-        //Total time
-        m_totalTime = 0;
-
-        //Waypoints can be added.
-        m_waypointsBlocked = false;
-        m_fuelTanksBlocked = false;
-
-        //It'll be started when the ship makes a move.
-        m_started = m_gameEnded = false;
+        step(a_shipMove);
+    }
 
-        //Game objects container
-        m_gameObjects = new LinkedList<GameObject>();
+    /**
+     * Executes the same move several times, stopping if the game ends.
+     * @param a_shipMove Move to execute.
+     * @param a_numTicks Number of times to execute the move.
+     * @return the number of ticks executed.
+     */
+    public int tickN(int a_shipMove, int a_numTicks)
+    {
+        int ticks = 0;
+        while(ticks < a_numTicks && !m_gameEnded)
+        {
+            step(a_shipMove);
+            ticks++;
+        }
+        return ticks;
+    }
 
-        //Order of visits.
-        m_visitOrder = new ArrayList<Integer>();
+    /**
+     * Executes a sequence of moves, stopping if the game ends.
+     * @param a_shipMoves Array with the moves to execute.
+     * @param a_from Index in a_shipMoves of the first move to execute.
+     * @param a_length Number of moves to execute.
+     * @return the number of ticks executed.
+     */
+    public int tick(int[] a_shipMoves, int a_from, int a_length)
+    {
+        int ticks = 0;
+        while(ticks < a_length && !m_gameEnded)
+        {
+            step(a_shipMoves[a_from + ticks]);
+            ticks++;
+        }
+        return ticks;
+    }
 
-        //List of waypoints of the map.
-        m_waypoints = new LinkedList<Waypoint>();
+    /**
+     * Executes the same move until any of the given events happens, the game ends or a maximum number of ticks is reached.
+     * The events of the last tick executed can be checked with getLastTickEvents().
+     * @param a_shipMove Move to execute.
+     * @param a_maxTicks Maximum number of ticks to execute.
+     * @param a_eventMask Events that stop the execution, as a combination of EVENT_* flags.
+     * @return the number of ticks executed.
+     */
+    public int tickUntil(int a_shipMove, int a_maxTicks, int a_eventMask)
+    {
+        int ticks = 0;
+        while(ticks < a_maxTicks && !m_gameEnded)
+        {
+            step(a_shipMove);
+            ticks++;
+            if((m_lastTickEvents & a_eventMask) != 0)
+                break;
+        }
+        return ticks;
+    }
 
-        //List of fuel tanks of the map.
-        m_fuelTanks = new LinkedList<FuelTank>();
+    /**
+     * Executes the same move several times, stopping if the game ends, skipping ahead when nothing can happen. If the
+     * move does not thrust, the ship moves in a straight line while its speed decays, so the ticks in which it stays
+     * away from obstacles, lava, the edges of the map and the waypoints and fuel tanks not collected are advanced at once
+     * with Ship.coast(). The other ticks are executed one by one as in tickN().
+     * The ticks advanced at once are not bit-exact with tickN(): see Ship.coast(). Moves that thrust, and games with the
+     * undo journal enabled, are always executed one tick at a time.
+     * @param a_shipMove Move to execute.
+     * @param a_numTicks Number of times to execute the move.
+     * @return the number of ticks executed.
+     */
+    public int coast(int a_shipMove, int a_numTicks)
+    {
+        if(Controller.getThrust(a_shipMove) || m_journal != null)
+            return tickN(a_shipMove, a_numTicks);
 
-        //Create and read the map.
-        if(m_maps == null)
+        int ticks = 0;
+        while(ticks < a_numTicks && !m_gameEnded)
         {
-            //FIRST TIME:
-            m_currentMap = 0;
-            m_maps = new Map[a_mapFilename.length];
-            for(int i = 0; i < m_maps.length; ++i)
+            //The last tick of the game is always executed, so the end of the game is checked as usual.
+            int coastTicks = 0;
+            if(m_started && m_ship.hasStarted())
+                coastTicks = getCoastTicks(Math.min(a_numTicks - ticks, m_stepsLeft - 1));
+
+            if(coastTicks > 1)
             {
-                m_maps[i] = new Map(this, a_mapFilename[i]);
-                m_waypointsBlocked = true;   //only add for the first map.
-                m_fuelTanksBlocked = true;   //only add for the first map.
+                m_ship.coast(a_shipMove, coastTicks);
+                m_stepsLeft -= coastTicks;
+                m_totalTime += coastTicks;
+                m_lastTickEvents = 0;
+                ticks += coastTicks;
             }
-        }else if(m_currentMap < m_maps.length)
-        {
-            m_numWaypoints = 0;
-            LinkedList<Vector2d> positions = m_maps[m_currentMap].getWaypointPositions();
-            for(Vector2d pos : positions)
+            else
             {
-                addWaypoint(new Waypoint(this,pos));
+                step(a_shipMove);
+                ticks++;
             }
+        }
+        return ticks;
+    }
 
-            m_numFuelTanks = 0;
-            positions = m_maps[m_currentMap].getFuelTankPositions();
-            for(Vector2d pos : positions)
+    /**
+     * Gets how many ticks the ship can move, without thrusting, before it may touch an obstacle, lava, the edge of the
+     * map or a waypoint or fuel tank not collected yet.
+     * @param a_maxTicks maximum number of ticks to return.
+     * @return the number of ticks, from 0 to a_maxTicks.
+     */
+    private int getCoastTicks(int a_maxTicks)
+    {
+        if(a_maxTicks < 2)
+            return 0;
+
+        //Coasting is only worth it if the ship can move at least two ticks: stop checking as soon as it can not.
+        double speed = m_ship.v.mag();
+        double minFree = speed * Ship.loss * (1 + Ship.loss) + 1e-6;
+
+        Vector2d pos = m_ship.s;
+        double free = m_map.getLavaFreeDistance(pos.x, pos.y);
+        for(int i = 0; i < m_numWaypoints && free >= minFree; ++i)
+        {
+            if(!isBitSet(m_waypointsCollected, i))
             {
-                addFuelTank(new FuelTank(this, pos));
+                Waypoint way = m_waypointArray[i];
+                free = Math.min(free, pos.dist(way.s) - (m_ship.radius + way.radius));
             }
         }
+        for(int i = 0; i < m_numFuelTanks && free >= minFree; ++i)
+        {
+            if(!isBitSet(m_fuelTanksCollected, i))
+            {
+                FuelTank ft = m_fuelTankArray[i];
+                free = Math.min(free, pos.dist(ft.s) - (m_ship.radius + ft.radius));
+            }
+        }
+        if(free < minFree)
+            return 0;
 
-        //Initialize some variables
-        m_size = new Dimension(getMap().getMapChar().length, getMap().getMapChar()[0].length);
-
-        //Number of waypoints to be collected.
-        m_waypointsLeft = m_numWaypoints;
-
-        //number of available fuel tanks
-        m_fuelTanksLeft = m_numFuelTanks;
+        //Margin for the rounding of the closed form.
+        free -= 1e-6;
 
-        //This is the number of steps allowed until reaching the next waypoint.
-        m_stepsLeft = PTSPConstants.getStepsPerWaypoints(m_numWaypoints);
+        //After n ticks the ship has moved |v|*loss*(1-loss^n)/(1-loss), that never gets past maxMoved.
+        double maxMoved = speed * Ship.loss / (1 - Ship.loss);
+        if(maxMoved <= free)
+            return a_maxTicks;
 
-        //Create the ship of the game and add it to the game objects
-        m_ship = new Ship(this, getMap().getStartingPoint());
-        m_gameObjects.add(m_ship);
+        int ticks = (int) Math.floor(Math.log(1 - free / maxMoved) / Math.log(Ship.loss));
+        return Math.min(ticks, a_maxTicks);
     }
 
     /**
-     * Updates the game logic: all entities in the game and game state.
+     * Gets the events that happened in the last tick.
+     * @return the events of the last tick, as a combination of EVENT_* flags.
+     */
+    public int getLastTickEvents() {return m_lastTickEvents;}
+
+    /**
+     * Executes one tick of the game. Only the ship is updated, as waypoints and fuel tanks do not change on their own.
      * @param a_shipMove Move to execute.
      */
-    public void tick(int a_shipMove)
+    private void step(int a_shipMove)
     {
-        //Set the next move of the player
-        m_ship.setNextMove(a_shipMove);
+        //Record the state before the tick, so it can be undone.
+        if(m_journal != null)
+            journalTick();
 
-        //Update all entities of the game, including player's ship.
-        synchronized (Game.class) {
-            for (GameObject ob : m_gameObjects) {
-                ob.update();
-            }
-        }
+        int waypointsLeft = m_waypointsLeft;
+        int fuelTanksLeft = m_fuelTanksLeft;
+
+        //Set the next move of the player and update the ship.
+        m_ship.setNextMove(a_shipMove);
+        m_ship.update();
 
         //One step left to the end.
         if(m_started)
@@ -339,6 +463,141 @@ public class Game
         if(checkGameEnded())
             m_gameEnded = true;
 
+        int events = 0;
+        if(m_gameEnded)
+            events |= EVENT_GAME_ENDED;
+        if(m_ship.getCollLastStep())
+            events |= EVENT_COLLISION;
+        if(m_waypointsLeft < waypointsLeft)
+            events |= EVENT_WAYPOINT;
+        if(m_fuelTanksLeft < fuelTanksLeft)
+            events |= EVENT_FUEL_TANK;
+        m_lastTickEvents = events;
+    }
+
+    /**
+     * Enables or disables the undo journal. While journaling is enabled, every call to tick() records the state it
+     * modifies, so it can be rolled back with undo() and undoTo(). Enabling the journal starts it empty.
+     * @param a_journaling true to enable the journal, false to disable it and discard the ticks recorded.
+     */
+    public void setJournaling(boolean a_journaling)
+    {
+        if(a_journaling)
+        {
+            if(m_journal == null)
+                m_journal = new GameJournal();
+            else
+                m_journal.clear();
+        }
+        else m_journal = null;
+    }
+
+    /**
+     * Indicates if the undo journal is enabled.
+     * @return true if the undo journal is enabled.
+     */
+    public boolean isJournaling() {return m_journal != null;}
+
+    /**
+     * Gets a mark of the current state, that can be passed to undoTo() to come back to this state. The mark is the number
+     * of ticks recorded in the journal.
+     * @return the mark of the current state.
+     */
+    public int mark()
+    {
+        checkJournaling();
+        return m_journal.m_numTicks;
+    }
+
+    /**
+     * Undoes the last tick recorded in the journal.
+     */
+    public void undo()
+    {
+        checkJournaling();
+        if(m_journal.m_numTicks == 0)
+            throw new IllegalStateException("There are no ticks to undo.");
+        undoTick();
+    }
+
+    /**
+     * Undoes all the ticks executed after a mark was taken.
+     * @param a_mark mark returned by mark(), not greater than the current one.
+     */
+    public void undoTo(int a_mark)
+    {
+        checkJournaling();
+        if(a_mark < 0 || a_mark > m_journal.m_numTicks)
+            throw new IllegalArgumentException("Invalid mark: " + a_mark + ", ticks recorded: " + m_journal.m_numTicks);
+        while(m_journal.m_numTicks > a_mark)
+            undoTick();
+    }
+
+    /**
+     * Records a fuel tank collected during the current tick, if journaling is enabled.
+     * @param a_index index of the fuel tank collected.
+     */
+    void journalFuelTank(int a_index)
+    {
+        if(m_journal != null)
+            m_journal.addFuelTank(a_index);
+    }
+
+    /**
+     * Records in the journal the state of the game before a tick.
+     */
+    private void journalTick()
+    {
+        m_journal.ensureTickCapacity();
+        int tick = m_journal.m_numTicks;
+        m_ship.journalState(m_journal, tick);
+
+        int[] ints = m_journal.m_ints;
+        int iOff = tick * GameJournal.INTS_PER_TICK + GameJournal.SHIP_INTS;
+        ints[iOff] = m_stepsLeft;
+        ints[iOff+1] = m_totalTime;
+        ints[iOff+2] = m_waypointsLeft;
+        ints[iOff+3] = m_fuelTanksLeft;
+        ints[iOff+4] = m_numVisited;
+        ints[iOff+5] = m_journal.m_numFuelTanks;
+        ints[iOff+6] = (m_started ? 1 : 0) | (m_gameEnded ? 2 : 0);
+        m_journal.m_numTicks++;
+    }
+
+    /**
+     * Sets the state of the game to the one before the last tick recorded in the journal.
+     */
+    private void undoTick()
+    {
+        int tick = --m_journal.m_numTicks;
+        m_ship.undoState(m_journal, tick);
+
+        int[] ints = m_journal.m_ints;
+        int iOff = tick * GameJournal.INTS_PER_TICK + GameJournal.SHIP_INTS;
+        m_stepsLeft = ints[iOff];
+        m_totalTime = ints[iOff+1];
+        m_waypointsLeft = ints[iOff+2];
+        m_fuelTanksLeft = ints[iOff+3];
+        m_started = (ints[iOff+6] & 1) != 0;
+        m_gameEnded = (ints[iOff+6] & 2) != 0;
+
+        //Waypoints visited during the tick are at the end of the visit order.
+        int numVisited = ints[iOff+4];
+        while(m_numVisited > numVisited)
+            setWaypointCollected(m_visitOrder[--m_numVisited], false);
+
+        int numFuelTanks = ints[iOff+5];
+        while(m_journal.m_numFuelTanks > numFuelTanks)
+            setFuelTankCollected(m_journal.m_fuelTanks[--m_journal.m_numFuelTanks], false);
+    }
+
+    /**
+     * Checks that the undo journal is enabled.
+     */
+    private void checkJournaling()
+    {
+        if(m_journal == null)
+            throw new IllegalStateException("Journaling is not enabled in this game.");
     }
 
     /**
@@ -370,13 +629,208 @@ public class Game
         m_fuelTanksLeft--;
     }
 
+    /**
+     * Checks if the ship collects any waypoint or fuel tank in its current position. Only the items close to the ship,
+     * found with the grids of the map, are checked, in the same order as in the lists of waypoints and fuel tanks.
+     * @param a_ship the ship of the game.
+     */
+    void checkPickups(Ship a_ship)
+    {
+        //Check for visited waypoints.
+        int numCandidates = findPickupCandidates(m_map.getWaypointGrid(), m_numWaypoints,
+                a_ship.s, a_ship.radius + m_maxWaypointRadius);
+        for(int k = 0; k < numCandidates; ++k)
+        {
+            int i = m_pickupCandidates[k];
+            Waypoint way = m_waypointArray[i];
+            if(!isBitSet(m_waypointsCollected, i) && way.checkCollected(a_ship.s, a_ship.radius))
+            {
+                way.setCollected(true);
+                addCollected(i);
+                a_ship.addFuel(PTSPConstants.FUEL_WAYPOINT_REWARD);
+            }
+        }
+
+        //Check for fuel tanks collection
+        numCandidates = findPickupCandidates(m_map.getFuelTankGrid(), m_numFuelTanks,
+                a_ship.s, a_ship.radius + m_maxFuelTankRadius);
+        for(int k = 0; k < numCandidates; ++k)
+        {
+            int i = m_pickupCandidates[k];
+            FuelTank ft = m_fuelTankArray[i];
+            if(!isBitSet(m_fuelTanksCollected, i) && ft.checkCollected(a_ship.s, a_ship.radius))
+            {
+                ft.setCollected(true);
+                journalFuelTank(i);
+            }
+        }
+    }
+
+    /**
+     * Finds the items that may be collected from a position and writes their indexes in m_pickupCandidates.
+     * If the grid does not index the items of this game, all of them are candidates.
+     * @param a_grid grid of the map for this type of item.
+     * @param a_numItems number of items of this type in the game.
+     * @param a_pos position of the ship.
+     * @param a_range largest distance at which an item can be collected.
+     * @return the number of candidates found.
+     */
+    private int findPickupCandidates(CollectibleGrid a_grid, int a_numItems, Vector2d a_pos, double a_range)
+    {
+        if(a_grid.size() != a_numItems)
+        {
+            for(int i = 0; i < a_numItems; ++i)
+                m_pickupCandidates[i] = i;
+            return a_numItems;
+        }
+        return a_grid.query(a_pos.x, a_pos.y, a_range, m_pickupCandidates);
+    }
+
     /**
      * Adds a waypoint to the list of collected
      * @param a_index Index in the array list of waypoints of the waypoint collected.
      */
     public void addCollected(int a_index)
     {
-        m_visitOrder.add(a_index);
+        if(m_numVisited == m_visitOrder.length)
+            m_visitOrder = Arrays.copyOf(m_visitOrder, Math.max(m_numWaypoints, m_numVisited + 1));
+        m_visitOrder[m_numVisited++] = a_index;
+    }
+
+    /**
+     * Indicates if a waypoint has been collected.
+     * @param a_index Index in the list of waypoints of the waypoint.
+     * @return true if the waypoint has been collected.
+     */
+    public boolean isWaypointCollected(int a_index) {return isBitSet(m_waypointsCollected, a_index);}
+
+    /**
+     * Indicates if a fuel tank has been collected.
+     * @param a_index Index in the list of fuel tanks of the fuel tank.
+     * @return true if the fuel tank has been collected.
+     */
+    public boolean isFuelTankCollected(int a_index) {return isBitSet(m_fuelTanksCollected, a_index);}
+
+    /**
+     * Sets the collected flag of a waypoint. Used by Waypoint.setCollected().
+     * @param a_index Index in the list of waypoints of the waypoint.
+     * @param a_collected true if the waypoint is collected.
+     */
+    void setWaypointCollected(int a_index, boolean a_collected)
+    {
+        if(isBitSet(m_waypointsCollected, a_index) != a_collected)
+        {
+            setBit(m_waypointsCollected, a_index, a_collected);
+            m_collectedHash ^= zobristKey(WAYPOINT_KEY_SALT, a_index);
+        }
+    }
+
+    /**
+     * Sets the collected flag of a fuel tank. Used by FuelTank.setCollected().
+     * @param a_index Index in the list of fuel tanks of the fuel tank.
+     * @param a_collected true if the fuel tank is collected.
+     */
+    void setFuelTankCollected(int a_index, boolean a_collected)
+    {
+        if(isBitSet(m_fuelTanksCollected, a_index) != a_collected)
+        {
+            setBit(m_fuelTanksCollected, a_index, a_collected);
+            m_collectedHash ^= zobristKey(FUEL_TANK_KEY_SALT, a_index);
+        }
+    }
+
+    /**
+     * Gets a hash of the state of the game, so that states that are effectively the same have the same hash. It takes into
+     * account the position, velocity and heading of the ship, the waypoints and fuel tanks collected, the steps left
+     * and the invulnerability time of the ship. Position and velocity are quantized, so ships that are close enough
+     * in position and speed give the same hash.
+     * The part of the hash that depends on the items collected is updated incrementally during each tick, so this
+     * method takes constant time.
+     * @param a_quantization Size, in pixels, of the cells used to quantize the position. Velocity is quantized in
+     *                       steps of VELOCITY_QUANTIZATION times this size.
+     * @return the hash of the state.
+     */
+    public long stateHash(double a_quantization)
+    {
+        double velQuantization = a_quantization * VELOCITY_QUANTIZATION;
+
+        long hash = m_collectedHash;
+        hash = mixHash(hash, (long) Math.floor(m_ship.s.x / a_quantization));
+        hash = mixHash(hash, (long) Math.floor(m_ship.s.y / a_quantization));
+        hash = mixHash(hash, (long) Math.floor(m_ship.v.x / velQuantization));
+        hash = mixHash(hash, (long) Math.floor(m_ship.v.y / velQuantization));
+        hash = mixHash(hash, m_ship.getHeadingIndex());
+        hash = mixHash(hash, m_stepsLeft);
+        hash = mixHash(hash, m_ship.getInvulnerableTime());
+        return hash;
+    }
+
+    /**
+     * Gets the Zobrist key of an item of the game. Keys are computed from the index of the item, so they are the same in
+     * every game and do not need to be stored.
+     * @param a_salt salt for the type of item (WAYPOINT_KEY_SALT or FUEL_TANK_KEY_SALT).
+     * @param a_index index of the item.
+     * @return the key of the item.
+     */
+    private static long zobristKey(long a_salt, int a_index)
+    {
+        return mixHash(a_salt, a_index);
+    }
+
+    /**
+     * Mixes a value into a hash (using the finalizer of SplitMix64).
+     * @param a_hash hash so far.
+     * @param a_value value to mix in.
+     * @return the new hash.
+     */
+    private static long mixHash(long a_hash, long a_value)
+    {
+        long z = (a_hash ^ a_value) + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Checks if the waypoints visited so far are, in the same order, the first waypoints of a route.
+     * @param a_route Indexes of the waypoints of the route.
+     * @return true if the visit order is a prefix of a_route.
+     */
+    public boolean isVisitOrderPrefixOf(int[] a_route)
+    {
+        if(m_numVisited > a_route.length)
+            return false;
+        for(int i = 0; i < m_numVisited; ++i)
+        {
+            if(m_visitOrder[i] != a_route[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a bit is set in a mask.
+     * @param a_mask the mask, 64 bits per word.
+     * @param a_index index of the bit.
+     * @return true if the bit is set.
+     */
+    private static boolean isBitSet(long[] a_mask, int a_index)
+    {
+        return (a_mask[a_index >> 6] & (1L << a_index)) != 0;
+    }
+
+    /**
+     * Sets or clears a bit in a mask.
+     * @param a_mask the mask, 64 bits per word.
+     * @param a_index index of the bit.
+     * @param a_value true to set the bit, false to clear it.
+     */
+    private static void setBit(long[] a_mask, int a_index, boolean a_value)
+    {
+        if(a_value)
+            a_mask[a_index >> 6] |= (1L << a_index);
+        else
+            a_mask[a_index >> 6] &= ~(1L << a_index);
     }
 
     /**
@@ -387,9 +841,10 @@ public class Game
         String routeFile = getSaveFilename();
         try {
             PrintWriter out = new PrintWriter(new FileWriter(routeFile));
-            out.println(m_ship.getActionList().size());
-            for (int i = 0; i < m_ship.getActionList().size(); i++) {
-                out.println(m_ship.getActionList().get(i));
+            int[] actions = m_ship.getActionLog().toArray();
+            out.println(actions.length);
+            for (int i = 0; i < actions.length; i++) {
+                out.println(actions[i]);
             }
             out.close();
             System.out.println("Route saved to: " + routeFile);
@@ -408,9 +863,10 @@ public class Game
     {
         try {
             PrintWriter out = new PrintWriter(new FileWriter(filename));
-            out.println(m_ship.getActionList().size());
-            for (int i = 0; i < m_ship.getActionList().size(); i++) {
-                out.println(m_ship.getActionList().get(i));
+            int[] actions = m_ship.getActionLog().toArray();
+            out.println(actions.length);
+            for (int i = 0; i < actions.length; i++) {
+                out.println(actions[i]);
             }
             out.close();
             System.out.println("Route saved to: " + filename);
@@ -488,31 +944,21 @@ public class Game
      */
     public void go(){m_started = true;}
 
-    /**
-     * Advances to the next map in the array of loaded maps.
-     * @return true if there is a map yet to be played. False if the last map was the last of the maps created.
-     * */
-    public boolean advanceMap()
-    {
-        m_currentMap++;
-
-        if(m_currentMap < m_maps.length)
-            return true;
-        return false;
-    }
-
     /**
      * Adds a new waypoint to the list of waypoints.
      * @param a_way waypoint to add.
      */
     public void addWaypoint(Waypoint a_way)
     {
-        if(!m_waypointsBlocked)
-        {
-            m_waypoints.add(a_way);
-            m_gameObjects.add(a_way);
-            m_numWaypoints++;
-        }
+        m_waypoints.add(a_way);
+        m_gameObjects.add(a_way);
+        if(m_numWaypoints == m_waypointArray.length)
+            reserveItems(Math.max(4, 2 * m_numWaypoints), m_fuelTankArray.length);
+        a_way.m_index = m_numWaypoints;
+        m_waypointArray[m_numWaypoints++] = a_way;
+        if(m_waypointsCollected.length < (m_numWaypoints + 63) >> 6)
+            m_waypointsCollected = Arrays.copyOf(m_waypointsCollected, (m_numWaypoints + 63) >> 6);
+        m_maxWaypointRadius = Math.max(m_maxWaypointRadius, a_way.radius);
     }
 
     /**
@@ -521,15 +967,36 @@ public class Game
      */
     public void addFuelTank(FuelTank a_ft)
     {
-        if(!m_fuelTanksBlocked)
-        {
-            m_fuelTanks.add(a_ft);
-            m_gameObjects.add(a_ft);
-            m_numFuelTanks++;
-        }
+        m_fuelTanks.add(a_ft);
+        m_gameObjects.add(a_ft);
+        if(m_numFuelTanks == m_fuelTankArray.length)
+            reserveItems(m_waypointArray.length, Math.max(4, 2 * m_numFuelTanks));
+        a_ft.m_index = m_numFuelTanks;
+        m_fuelTankArray[m_numFuelTanks++] = a_ft;
+        if(m_fuelTanksCollected.length < (m_numFuelTanks + 63) >> 6)
+            m_fuelTanksCollected = Arrays.copyOf(m_fuelTanksCollected, (m_numFuelTanks + 63) >> 6);
+        m_maxFuelTankRadius = Math.max(m_maxFuelTankRadius, a_ft.radius);
     }
 
 
+    /**
+     * Makes room in the arrays of waypoints and fuel tanks, and in the visit order and pickup candidates, for a number
+     * of items, so they can be added without growing the arrays again.
+     * @param a_numWaypoints number of waypoints the game will have.
+     * @param a_numFuelTanks number of fuel tanks the game will have.
+     */
+    private void reserveItems(int a_numWaypoints, int a_numFuelTanks)
+    {
+        if(m_waypointArray.length < a_numWaypoints)
+            m_waypointArray = Arrays.copyOf(m_waypointArray, a_numWaypoints);
+        if(m_fuelTankArray.length < a_numFuelTanks)
+            m_fuelTankArray = Arrays.copyOf(m_fuelTankArray, a_numFuelTanks);
+        if(m_visitOrder.length < a_numWaypoints)
+            m_visitOrder = Arrays.copyOf(m_visitOrder, a_numWaypoints);
+        if(m_pickupCandidates.length < Math.max(a_numWaypoints, a_numFuelTanks))
+            m_pickupCandidates = new int[Math.max(a_numWaypoints, a_numFuelTanks)];
+    }
+
     /**
      * Aborts the game, because of a disqualification.
      */
@@ -556,18 +1023,7 @@ public class Game
      * Gets the map of the game.
      * @return map of the game.
      */
-    public Map getMap()
-    {
-        if(m_currentMap < m_maps.length)
-            return m_maps[m_currentMap];
-        else return null;
-    }
-
-    /**
-     * Gets the dimension of the map where the game is being played.
-     * @return dimensions of the map.
-     */
-    public Dimension getMapSize() {return m_size;}
+    public Map getMap() {return m_map;}
 
     /**
      * Gets the ship object of the game.
@@ -596,7 +1052,13 @@ public class Game
     /**
      * Returns the visit order of the game so far (indexes of the waypoints in m_waypoints)
      */
-    public ArrayList<Integer> getVisitOrder() {return m_visitOrder;}
+    public ArrayList<Integer> getVisitOrder()
+    {
+        ArrayList<Integer> visitOrder = new ArrayList<Integer>(m_numVisited);
+        for(int i = 0; i < m_numVisited; ++i)
+            visitOrder.add(m_visitOrder[i]);
+        return visitOrder;
+    }
 
 
     /**
@@ -642,12 +1104,6 @@ public class Game
      */
     public boolean isEnded() {return m_gameEnded;}
 
-    /**
-     * Sets the size of the game map.
-     * @param a_size the new size.
-     */
-    public void setSize(Dimension a_size) {m_size = a_size;}
-
     /**
      * Sets the ship instance of the game.
      * @param a_ship the ship object.
@@ -685,6 +1141,109 @@ public class Game
     public void setStarted(boolean a_started) {m_started = a_started;}
 
 
+    /**
+     * Copies the state of this game into another game that is being played in the same map, without creating new
+     * objects. This can be used to reset a pool of game instances instead of calling getCopy() for every simulation.
+     * The undo journal of the target game, if enabled, is cleared.
+     * @param a_target game to copy the state to. It must have been created as a copy of a game in this map.
+     */
+    public void copyInto(Game a_target)
+    {
+        if(a_target.m_map != m_map)
+            throw new IllegalArgumentException("Game state belongs to a different map.");
+        checkSameMap(a_target.m_numWaypoints, a_target.m_numFuelTanks);
+
+        if(a_target.m_journal != null)
+            a_target.m_journal.clear();
+
+        m_ship.copyInto(a_target.m_ship);
+        a_target.m_stepsLeft = m_stepsLeft;
+        a_target.m_totalTime = m_totalTime;
+        a_target.m_started = m_started;
+        a_target.m_gameEnded = m_gameEnded;
+        a_target.m_waypointsLeft = m_waypointsLeft;
+        a_target.m_fuelTanksLeft = m_fuelTanksLeft;
+
+        System.arraycopy(m_waypointsCollected, 0, a_target.m_waypointsCollected, 0, m_waypointsCollected.length);
+        System.arraycopy(m_fuelTanksCollected, 0, a_target.m_fuelTanksCollected, 0, m_fuelTanksCollected.length);
+        System.arraycopy(m_visitOrder, 0, a_target.m_visitOrder, 0, m_numVisited);
+        a_target.m_numVisited = m_numVisited;
+        a_target.m_collectedHash = m_collectedHash;
+    }
+
+    /**
+     * Creates a new snapshot with the current state of the game.
+     * @return the snapshot of the game.
+     */
+    public GameSnapshot getSnapshot()
+    {
+        GameSnapshot snapshot = new GameSnapshot();
+        snapshot(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Stores the current state of the game in a snapshot. The arrays of the snapshot are reused if they are big enough.
+     * @param a_snapshot snapshot to fill.
+     */
+    public void snapshot(GameSnapshot a_snapshot)
+    {
+        a_snapshot.ensureCapacity(m_numWaypoints, m_numFuelTanks);
+
+        m_ship.saveState(a_snapshot);
+        a_snapshot.m_stepsLeft = m_stepsLeft;
+        a_snapshot.m_totalTime = m_totalTime;
+        a_snapshot.m_started = m_started;
+        a_snapshot.m_gameEnded = m_gameEnded;
+        a_snapshot.m_waypointsLeft = m_waypointsLeft;
+        a_snapshot.m_fuelTanksLeft = m_fuelTanksLeft;
+
+        System.arraycopy(m_waypointsCollected, 0, a_snapshot.m_waypointsCollected, 0, m_waypointsCollected.length);
+        System.arraycopy(m_fuelTanksCollected, 0, a_snapshot.m_fuelTanksCollected, 0, m_fuelTanksCollected.length);
+        System.arraycopy(m_visitOrder, 0, a_snapshot.m_visitOrder, 0, m_numVisited);
+        a_snapshot.m_numVisited = m_numVisited;
+        a_snapshot.m_collectedHash = m_collectedHash;
+    }
+
+    /**
+     * Sets the state of this game to the one stored in a snapshot, taken from this game or from any game being played in
+     * the same map. The undo journal of this game, if enabled, is cleared.
+     * @param a_snapshot the snapshot to restore.
+     */
+    public void restore(GameSnapshot a_snapshot)
+    {
+        checkSameMap(a_snapshot.m_numWaypoints, a_snapshot.m_numFuelTanks);
+
+        if(m_journal != null)
+            m_journal.clear();
+
+        m_ship.restoreState(a_snapshot);
+        m_stepsLeft = a_snapshot.m_stepsLeft;
+        m_totalTime = a_snapshot.m_totalTime;
+        m_started = a_snapshot.m_started;
+        m_gameEnded = a_snapshot.m_gameEnded;
+        m_waypointsLeft = a_snapshot.m_waypointsLeft;
+        m_fuelTanksLeft = a_snapshot.m_fuelTanksLeft;
+
+        System.arraycopy(a_snapshot.m_waypointsCollected, 0, m_waypointsCollected, 0, m_waypointsCollected.length);
+        System.arraycopy(a_snapshot.m_fuelTanksCollected, 0, m_fuelTanksCollected, 0, m_fuelTanksCollected.length);
+        System.arraycopy(a_snapshot.m_visitOrder, 0, m_visitOrder, 0, a_snapshot.m_numVisited);
+        m_numVisited = a_snapshot.m_numVisited;
+        m_collectedHash = a_snapshot.m_collectedHash;
+    }
+
+    /**
+     * Checks that a state can be copied to or from this game, by comparing the number of waypoints and fuel tanks.
+     * @param a_numWaypoints number of waypoints of the other state.
+     * @param a_numFuelTanks number of fuel tanks of the other state.
+     */
+    private void checkSameMap(int a_numWaypoints, int a_numFuelTanks)
+    {
+        if(a_numWaypoints != m_numWaypoints || a_numFuelTanks != m_numFuelTanks)
+            throw new IllegalArgumentException("Game state belongs to a different map: " + a_numWaypoints + " waypoints and " +
+                    a_numFuelTanks + " fuel tanks, expected " + m_numWaypoints + " and " + m_numFuelTanks + ".");
+    }
+
     /**
      * Gets a copy of the game state.
      * @return a copy of the game.
@@ -693,7 +1252,7 @@ public class Game
     {
         Game copied = new Game();
 
-        copied.setSize(new Dimension(m_size.width, m_size.height));
+        copied.m_map = m_map;
         copied.setShip(m_ship.getCopy(copied));
         copied.setStepsLeft(m_stepsLeft);
         copied.setTotalTime(m_totalTime);
@@ -701,6 +1260,7 @@ public class Game
         copied.setWaypointsLeft(m_waypointsLeft);
         copied.setFuelTanksLeft(m_fuelTanksLeft);
         copied.addGameObject(copied.getShip());
+        copied.reserveItems(m_numWaypoints, m_numFuelTanks);
 
         //Copy waypoints
         for(Waypoint way : m_waypoints)
@@ -709,10 +1269,8 @@ public class Game
         }
         
         //Copy visit order
-        for(Integer i : m_visitOrder)
-        {
-            copied.addCollected(i);
-        }
+        System.arraycopy(m_visitOrder, 0, copied.m_visitOrder, 0, m_numVisited);
+        copied.m_numVisited = m_numVisited;
 
         //Copy fuel tanks
         for(FuelTank f : m_fuelTanks)
@@ -720,6 +1278,11 @@ public class Game
             copied.addFuelTank(f.getCopy(copied));
         }
 
+        //Copy the collected flags
+        System.arraycopy(m_waypointsCollected, 0, copied.m_waypointsCollected, 0, m_waypointsCollected.length);
+        System.arraycopy(m_fuelTanksCollected, 0, copied.m_fuelTanksCollected, 0, m_fuelTanksCollected.length);
+        copied.m_collectedHash = m_collectedHash;
+
 
         return copied;
     }
@@ -0,0 +1,107 @@
+package framework.core;
+
+/**
+ * This class keeps the undo journal of a game. For every tick executed while journaling is enabled, the journal stores
+ * the state of the ship and the game counters before the tick, in flat primitive arrays, together with the fuel tanks
+ * collected during the tick. Waypoints collected during a tick are found at the end of the visit order of the game.
+ * The arrays only grow, so once they are big enough the journal does not create new objects.
+ * PTSP-Competition
+ */
+final class GameJournal
+{
+    /**
+     * Number of doubles stored per tick: position, previous position, velocity and direction of the ship.
+     */
+    static final int DOUBLES_PER_TICK = 8;
+
+    /**
+     * Number of ints stored per tick by the ship.
+     */
+    static final int SHIP_INTS = 7;
+
+    /**
+     * Number of ints stored per tick by the game, after the ones of the ship.
+     */
+    static final int GAME_INTS = 7;
+
+    /**
+     * Number of ints stored per tick.
+     */
+    static final int INTS_PER_TICK = SHIP_INTS + GAME_INTS;
+
+    /**
+     * Double values of all the ticks recorded.
+     */
+    double[] m_doubles;
+
+    /**
+     * Int values of all the ticks recorded.
+     */
+    int[] m_ints;
+
+    /**
+     * Number of ticks recorded.
+     */
+    int m_numTicks;
+
+    /**
+     * Indexes of the fuel tanks collected in the ticks recorded, in order of collection.
+     */
+    int[] m_fuelTanks;
+
+    /**
+     * Number of entries in m_fuelTanks.
+     */
+    int m_numFuelTanks;
+
+    /**
+     * Creates an empty journal.
+     */
+    GameJournal()
+    {
+        m_doubles = new double[64 * DOUBLES_PER_TICK];
+        m_ints = new int[64 * INTS_PER_TICK];
+        m_fuelTanks = new int[8];
+    }
+
+    /**
+     * Makes room for one more tick, growing the arrays if needed.
+     */
+    void ensureTickCapacity()
+    {
+        if((m_numTicks + 1) * DOUBLES_PER_TICK > m_doubles.length)
+        {
+            double[] doubles = new double[m_doubles.length * 2];
+            System.arraycopy(m_doubles, 0, doubles, 0, m_numTicks * DOUBLES_PER_TICK);
+            m_doubles = doubles;
+
+            int[] ints = new int[m_ints.length * 2];
+            System.arraycopy(m_ints, 0, ints, 0, m_numTicks * INTS_PER_TICK);
+            m_ints = ints;
+        }
+    }
+
+    /**
+     * Records that a fuel tank has been collected in the current tick.
+     * @param a_index index of the fuel tank collected.
+     */
+    void addFuelTank(int a_index)
+    {
+        if(m_numFuelTanks == m_fuelTanks.length)
+        {
+            int[] fuelTanks = new int[m_fuelTanks.length * 2];
+            System.arraycopy(m_fuelTanks, 0, fuelTanks, 0, m_numFuelTanks);
+            m_fuelTanks = fuelTanks;
+        }
+        m_fuelTanks[m_numFuelTanks++] = a_index;
+    }
+
+    /**
+     * Removes all the ticks recorded.
+     */
+    void clear()
+    {
+        m_numTicks = 0;
+        m_numFuelTanks = 0;
+    }
+}
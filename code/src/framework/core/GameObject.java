@@ -2,7 +2,6 @@ package framework.core;
 
 import framework.utils.Vector2d;
 
-import java.awt.*;
 
 /**
  * This is a base class for all objects in the game.
@@ -73,12 +72,6 @@ public abstract class GameObject {
      */
     public abstract void update();
 
-    /**
-     * Function to be called to paint the object on the screen.
-     * @param g Graphics device.
-     */
-    public abstract void draw(Graphics2D g);
-
     /**
      * Function to reset the object.
      */
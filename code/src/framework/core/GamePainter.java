@@ -0,0 +1,158 @@
+package framework.core;
+
+import framework.utils.Vector2d;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+
+/**
+ * This class paints the objects of the game (ship, waypoints and fuel tanks) on the screen. It keeps all the drawing
+ * code and colors out of the game objects, so games can be run without loading any AWT class.
+ * PTSP-Competition
+ */
+public class GamePainter
+{
+    /**
+     * Color of the chassis of the ship.
+     */
+    private static final Color CHASSIS_COLOR = new Color(0,0,128); //Dark blue
+
+    /**
+     * Color of the chassis of the ship, when it is broken.
+     */
+    private static final Color CHASSIS_BROKEN_COLOR = Color.red;
+
+    /**
+     * Color of the thrust of the ship.
+     */
+    private static final Color THRUST_COLOR = Color.green;
+
+    /**
+     * Color for the fuel tank
+     */
+    private static final Color FUEL_TANK_COLOR = new Color(34,177,76);
+
+    /**
+     * Paints an object of the game.
+     * @param g Graphics object.
+     * @param a_object Ship, waypoint or fuel tank to paint.
+     */
+    public static void draw(Graphics2D g, GameObject a_object)
+    {
+        if(a_object instanceof Ship)
+            drawShip(g, (Ship) a_object);
+        else if(a_object instanceof Waypoint)
+            drawWaypoint(g, (Waypoint) a_object);
+        else if(a_object instanceof FuelTank)
+            drawFuelTank(g, (FuelTank) a_object);
+    }
+
+    /**
+     * Draws the ship on the screen.
+     * @param g Graphics object.
+     * @param a_ship Ship to draw.
+     */
+    public static void drawShip(Graphics2D g, Ship a_ship)
+    {
+        boolean paintIt = true;
+        boolean paintThrust = a_ship.isThrusting();
+        if(a_ship.getInvulnerableTime() > 0 && (a_ship.getInvulnerableTime()%2==0))
+            paintIt = false;
+
+        if(paintIt)
+        {
+            AffineTransform at = g.getTransform();
+            g.translate(a_ship.s.x, a_ship.s.y);
+
+            double rot = Math.atan2(a_ship.d.y, a_ship.d.x) + Controller.HALF_PI;
+            g.rotate(rot);
+            g.scale(a_ship.radius, a_ship.radius);
+            if(a_ship.getDamage() >= PTSPConstants.MAX_DAMAGE){
+                g.setColor(CHASSIS_BROKEN_COLOR);
+                paintThrust = false;
+            }
+            else
+                g.setColor(CHASSIS_COLOR);
+            g.fillPolygon(a_ship.xp, a_ship.yp, a_ship.xp.length);
+
+            if (paintThrust) {
+                g.setColor(THRUST_COLOR);
+                g.fillPolygon(a_ship.xpThrust, a_ship.ypThrust, a_ship.xpThrust.length);
+            }
+
+            g.setTransform(at);
+            //drawShipDebug(g, a_ship);
+        }
+    }
+
+    /**
+     * Prints the collision sphere and the center of the ship.
+     * @param g Graphics object.
+     * @param a_ship Ship to draw.
+     */
+    public static void drawShipDebug(Graphics2D g, Ship a_ship)
+    {
+        //Collision sphere
+        g.setColor(Color.yellow);
+        Vector2d[] collSphere = a_ship.getCollSphere();
+        for(int i = 0; i < collSphere.length; ++i)
+        {
+            Vector2d v = collSphere[i];
+            g.drawOval((int) Math.round(v.x),(int) Math.round(v.y), 2, 2);
+        }
+
+        //CENTER OF THE SHIP  (real position in map).
+        g.setColor(Color.red);
+        g.drawOval((int) (a_ship.s.x),(int) (a_ship.s.y), 2, 2);
+    }
+
+    /**
+     *  Draws a waypoint.
+     *  @param g Graphics object.
+     *  @param a_way Waypoint to draw.
+     */
+    public static void drawWaypoint(Graphics2D g, Waypoint a_way)
+    {
+        int radius = a_way.radius;
+        Vector2d s = a_way.s;
+        int drawRadius = Ship.SHIP_RADIUS * radius;
+        if(!a_way.isCollected())
+        {
+            g.setColor(Color.blue);
+            g.fillOval((int) (s.x - drawRadius*0.5),(int) (s.y - drawRadius*0.5),drawRadius,drawRadius);
+            g.setColor(Color.yellow);
+            g.fillOval((int) (s.x),(int) (s.y),radius,radius);
+            g.setColor(Color.black);
+            g.drawOval((int) (s.x - drawRadius*0.5),(int) (s.y - drawRadius*0.5),drawRadius,drawRadius);
+
+        }else{
+            g.setColor(Color.black);
+            g.drawOval((int) (s.x - drawRadius*0.5),(int) (s.y - drawRadius*0.5),drawRadius,drawRadius);
+        }
+    }
+
+    /**
+     *  Draws a fuel tank.
+     *  @param g Graphics object.
+     *  @param a_ft Fuel tank to draw.
+     */
+    public static void drawFuelTank(Graphics2D g, FuelTank a_ft)
+    {
+        if(!a_ft.isCollected())
+        {
+            int radius = a_ft.radius;
+            Vector2d s = a_ft.s;
+            g.setColor(FUEL_TANK_COLOR);
+
+            int drawRadius = Ship.SHIP_RADIUS * radius;
+            g.fillOval((int) (s.x - drawRadius*0.5),(int) (s.y - drawRadius*0.5),drawRadius,drawRadius+2);
+
+            g.setColor(Color.black);
+            g.drawOval((int) (s.x - drawRadius*0.5),(int) (s.y - drawRadius*0.5),drawRadius,drawRadius+2);
+            g.drawLine((int) (s.x - drawRadius*0.5), (int) s.y, (int) (s.x + drawRadius*0.5), (int) s.y) ;
+
+            g.setColor(Color.yellow);
+            g.fillOval((int) (s.x - radius),(int) (s.y - radius),radius,radius);
+        }
+    }
+}
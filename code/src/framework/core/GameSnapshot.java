@@ -0,0 +1,196 @@
+package framework.core;
+
+/**
+ * This class holds a compact, primitive copy of the mutable state of a game: ship kinematics, fuel, damage, timers,
+ * collected waypoints and fuel tanks, and the order of visits. It does not hold the map nor the positions of the
+ * waypoints and fuel tanks, as they do not change during a game.
+ * A snapshot can be filled with Game.snapshot() and restored with Game.restore() as many times as desired. Its arrays
+ * are only re-allocated when they need to grow, so a snapshot can be reused without creating new objects.
+ * PTSP-Competition
+ */
+public class GameSnapshot
+{
+    /**
+     * Position of the ship.
+     */
+    double m_x, m_y;
+
+    /**
+     * Position of the ship in the last step.
+     */
+    double m_px, m_py;
+
+    /**
+     * Velocity of the ship.
+     */
+    double m_vx, m_vy;
+
+    /**
+     * Direction of the ship.
+     */
+    double m_dx, m_dy;
+
+    /**
+     * Indicates if the ship has started moving.
+     */
+    boolean m_shipStarted;
+
+    /**
+     * Remaining fuel of the ship.
+     */
+    int m_remFuel;
+
+    /**
+     * Damage of the ship.
+     */
+    int m_damage;
+
+    /**
+     * Invulnerability time of the ship.
+     */
+    int m_invulnerable;
+
+    /**
+     * Type of the last collision.
+     */
+    int m_lastCollisionType;
+
+    /**
+     * Indicates if there was a collision in the last step.
+     */
+    boolean m_collisionLastStep;
+
+    /**
+     * Indicates if the ship is on a lava surface.
+     */
+    boolean m_onLava;
+
+    /**
+     * Indicates if the last action involved acceleration.
+     */
+    boolean m_thrusting;
+
+    /**
+     * Indicates if the last action involved rotation.
+     */
+    int m_turning;
+
+    /**
+     * Actions executed so far by the ship. The log shares its prefix with the one of the ship.
+     */
+    ActionLog m_actions;
+
+    /**
+     * Steps left for reaching a new waypoint.
+     */
+    int m_stepsLeft;
+
+    /**
+     * Total time spent travelling through the map.
+     */
+    int m_totalTime;
+
+    /**
+     * Indicates if the game has started.
+     */
+    boolean m_started;
+
+    /**
+     * Indicates if the game has ended.
+     */
+    boolean m_gameEnded;
+
+    /**
+     * Waypoints left to the end.
+     */
+    int m_waypointsLeft;
+
+    /**
+     * Fuel tanks left to the end.
+     */
+    int m_fuelTanksLeft;
+
+    /**
+     * Number of waypoints of the game.
+     */
+    int m_numWaypoints;
+
+    /**
+     * Number of fuel tanks of the game.
+     */
+    int m_numFuelTanks;
+
+    /**
+     * Collected flags of the waypoints, one bit per waypoint.
+     */
+    long[] m_waypointsCollected;
+
+    /**
+     * Collected flags of the fuel tanks, one bit per fuel tank.
+     */
+    long[] m_fuelTanksCollected;
+
+    /**
+     * Order of waypoints visited so far.
+     */
+    int[] m_visitOrder;
+
+    /**
+     * Number of waypoints in m_visitOrder.
+     */
+    int m_numVisited;
+
+    /**
+     * Zobrist hash of the waypoints and fuel tanks collected.
+     */
+    long m_collectedHash;
+
+    /**
+     * Creates an empty snapshot, to be filled by Game.snapshot().
+     */
+    public GameSnapshot()
+    {
+        m_actions = new ActionLog();
+        m_waypointsCollected = new long[0];
+        m_fuelTanksCollected = new long[0];
+        m_visitOrder = new int[0];
+    }
+
+    /**
+     * Makes sure the snapshot has enough room for the given sizes, growing its arrays if needed.
+     * @param a_numWaypoints number of waypoints of the game.
+     * @param a_numFuelTanks number of fuel tanks of the game.
+     */
+    void ensureCapacity(int a_numWaypoints, int a_numFuelTanks)
+    {
+        if(m_numWaypoints != a_numWaypoints)
+        {
+            m_waypointsCollected = new long[(a_numWaypoints + 63) >> 6];
+            m_visitOrder = new int[a_numWaypoints];
+            m_numWaypoints = a_numWaypoints;
+        }
+        if(m_numFuelTanks != a_numFuelTanks)
+        {
+            m_fuelTanksCollected = new long[(a_numFuelTanks + 63) >> 6];
+            m_numFuelTanks = a_numFuelTanks;
+        }
+    }
+
+    /**
+     * Gets the total time of the game when this snapshot was taken.
+     * @return the total time of the game.
+     */
+    public int getTotalTime() {return m_totalTime;}
+
+    /**
+     * Gets the number of waypoints visited when this snapshot was taken.
+     * @return the number of waypoints visited.
+     */
+    public int getWaypointsVisited() {return m_numVisited;}
+
+    /**
+     * Indicates if the game was over when this snapshot was taken.
+     * @return true if the game was over.
+     */
+    public boolean isEnded() {return m_gameEnded;}
+}
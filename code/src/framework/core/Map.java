@@ -2,17 +2,22 @@ package framework.core;
 
 import framework.utils.File2String;
 import framework.utils.Vector2d;
-import javax.swing.*;
+
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
 import java.util.LinkedList;
 
 /**
  * This class represents the map where the game is played. An interesting method of this class is LineOfSight, that can be used
  * to check the line of sight between two points in the map.
+ * A map is not modified once it is created, so the same instance is shared by a game and all its copies, and it can be
+ * used from several threads. Maps read from file should be obtained with Map.load(), that reads each file only once
+ * while the map is in use (see Map.unload()).
  * PTSP-Competition
  * Created by Diego Perez, University of Essex.
  * Date: 19/12/11
  */
-public class Map extends JComponent
+public class Map
 {
 
     /**
@@ -55,11 +60,86 @@ public class Map extends JComponent
      */
     public static final char LAVA = ':';
 
+    /**
+     * Mask of the code of a cell with the result of a collision of the ship in it: 0 if the cell is not an obstacle,
+     * 1 if the obstacle is an up/down wall and 2 if it is a left/right wall.
+     */
+    static final int CODE_COLLISION_MASK = 0x3;
+
+    /**
+     * Bit of the code of a cell set if the cell is a lava surface.
+     */
+    static final int CODE_LAVA = 0x4;
+
+    /**
+     * Bit of the code of a cell set if, taking the cell as an obstacle, it would belong to an up/down wall.
+     */
+    static final int CODE_UP_DOWN = 0x8;
+
+    /**
+     * Shift of the collision type (as defined in PTSPConstants) in the code of a cell.
+     */
+    static final int CODE_TYPE_SHIFT = 4;
+
+    /**
+     * Distance from the center of the ship to the cells its collision sphere may touch. It adds, to the radius of the
+     * sphere, the rounding of the center and of the points of the sphere to cells (up to half a diagonal each).
+     */
+    private static final double COLL_SPHERE_REACH = 1.5 * Ship.SHIP_RADIUS + Math.sqrt(2) + 1e-6;
+
+    /**
+     * Squared distance to the closest obstacle from which the collision sphere of a ship can not touch any obstacle.
+     */
+    private static final int CLEAR_DIST_SQ = (int) Math.floor(COLL_SPHERE_REACH * COLL_SPHERE_REACH) + 1;
+
+    /**
+     * Distance to the edges of the map from which the collision sphere of a ship can not leave the map.
+     */
+    private static final int CLEAR_EDGE_DIST = (int) Math.floor(COLL_SPHERE_REACH);
+
+    /**
+     * Number of cells of the collision grid along each side of a pixel.
+     */
+    public static final int COLL_GRID_SUBDIV = 4;
+
+    /**
+     * Side, in pixels, of the tiles in which the collision grid is built.
+     */
+    private static final int COLL_GRID_TILE = 32;
+
+    /**
+     * Side, in cells of the collision grid, of a tile.
+     */
+    private static final int COLL_GRID_TILE_CELLS = COLL_GRID_TILE * COLL_GRID_SUBDIV;
+
+    /**
+     * Margin added to the positions covered by a cell of the collision grid, for the rounding of the points of the
+     * collision sphere.
+     */
+    private static final double COLL_GRID_MARGIN = 1e-9;
+
     /**
      * Array with all the elements of the map.
      */
     private char m_mapChar[][];
 
+    /**
+     * Code of each cell of the map, row by row (the cell (x,y) is at y*m_width+x). The code is built from m_mapChar
+     * when the map is created, so the obstacles, lava and collisions are read without checking characters.
+     */
+    private byte[] m_codes;
+
+    /**
+     * Squared euclidean distance from each cell of the map to its closest obstacle, row by row as m_codes.
+     */
+    private int[] m_obstacleDistSq;
+
+    /**
+     * Squared euclidean distance from each cell of the map to its closest lava cell, row by row as m_codes, or null if
+     * there is no lava in the map.
+     */
+    private int[] m_lavaDistSq;
+
     /**
      * Height, in pixels, of the map.
      */
@@ -73,63 +153,122 @@ public class Map extends JComponent
     /**
      * Starting point of the ship in the map.
      */
-    private Vector2d m_startingPoint;
+    private final Vector2d m_startingPoint;
 
     /**
      * List of the positions of the waypoints.
      */
-    private LinkedList<Vector2d> m_waypointPos;
+    private final LinkedList<Vector2d> m_waypointPos;
 
     /**
      * List of the positions of the fuel tanks.
      */
-    private LinkedList<Vector2d> m_fuelTankPos;
+    private final LinkedList<Vector2d> m_fuelTankPos;
+
+    /**
+     * Filename where this map is read from.
+     */
+    private final String m_filename;
 
     /**
-     * Reference to the game.
+     * Grid that indexes the positions of the waypoints.
      */
-    private Game m_game;
+    private final CollectibleGrid m_waypointGrid;
 
     /**
-     * Filename where this map is read from.
+     * Grid that indexes the positions of the fuel tanks.
+     */
+    private final CollectibleGrid m_fuelTankGrid;
+
+    /**
+     * Collision grid of the map (configuration space of the ship), or null if it is not enabled. The centers of the ship
+     * are split in cells of 1/COLL_GRID_SUBDIV pixels, grouped in tiles of COLL_GRID_TILE pixels that are built the first
+     * time a center inside them is checked (null entries are not built yet). For each cell, bit i is set if point i of
+     * the collision sphere can not touch an obstacle or leave the map from any center of the cell.
+     * Tiles may be built by several threads at the same time: a tile seen while it is being filled has cells with no
+     * bits set, that only mean that all the points must be checked.
+     */
+    private volatile short[][] m_collGrid;
+
+    /**
+     * Number of tiles of the collision grid along the x axis.
+     */
+    private int m_collGridTilesX;
+
+    /**
+     * Line of sight of the map precomputed on a grid of cells, or null if it has not been requested yet.
+     */
+    private volatile VisibilityCache m_visibility;
+
+    /**
+     * Position of the points of the collision sphere of the ship, relative to its center. They are computed in the same
+     * way as in Ship.createCollSphere(), so the collision checks of the map give the same results as the ones of the ship.
+     */
+    static final Vector2d[] COLL_SPHERE_RELATIVE = createCollSphere();
+
+    /**
+     * Maps already read from file, by filename. They are soft references, so the maps that are not used by any game
+     * can be released by the garbage collector if memory is needed.
      */
-    private String m_filename;
+    private static final HashMap<String, SoftReference<Map>> LOADED_MAPS = new HashMap<String, SoftReference<Map>>();
 
     /**
-     * Private constructor, only used by getCopy()
+     * Gets the map stored in a file. Each file is read only once: the following calls return the same instance, until
+     * it is unloaded or released.
+     * @param a_filename filename to read the map from.
+     * @return the map read from the file.
      */
-    private Map()
+    public static synchronized Map load(String a_filename)
     {
-        m_waypointPos = new LinkedList<Vector2d>();
-        m_fuelTankPos = new LinkedList<Vector2d>();
+        SoftReference<Map> ref = LOADED_MAPS.get(a_filename);
+        Map map = (ref != null) ? ref.get() : null;
+        if(map == null)
+        {
+            map = new Map(a_filename);
+            LOADED_MAPS.put(a_filename, new SoftReference<Map>(map));
+        }
+        return map;
     }
 
     /**
-     * Map constructor
-     * @param a_game reference to the game.
+     * Forgets the map read from a file, so the next call to load() reads it again. The games that use it keep it, and
+     * it is released (with its graph, see NavGraph.get()) when they are no longer used.
+     * @param a_filename filename the map was read from.
+     */
+    public static synchronized void unload(String a_filename)
+    {
+        LOADED_MAPS.remove(a_filename);
+    }
+
+    /**
+     * Map constructor. Use Map.load() instead to share the map read among all the games played in it.
      * @param a_filename filename to read the map from.
      */
-    public Map(Game a_game, String a_filename)
+    public Map(String a_filename)
     {
-        this.m_game = a_game;
         m_filename = a_filename;
         m_startingPoint = new Vector2d();
         m_waypointPos = new LinkedList<Vector2d>();
         m_fuelTankPos = new LinkedList<Vector2d>();
         readMap();
+        buildCodes();
+        buildDistanceField();
+
+        m_waypointGrid = new CollectibleGrid(m_waypointPos, m_mapChar.length, m_mapChar[0].length);
+        m_fuelTankGrid = new CollectibleGrid(m_fuelTankPos, m_mapChar.length, m_mapChar[0].length);
     }
 
 
     /**
      * Map constructor, from data structures.
-     * @param a_game reference to the game.
      * @param map map contents.
      * @param startingPoint Starting point of the ship.
      * @param wayPoints Position of the waypoints in the map.
+     * @param fuelTanks Position of the fuel tanks in the map.
      */
-    public Map(Game a_game, char[][] map, Vector2d startingPoint, LinkedList<Vector2d> wayPoints, LinkedList<Vector2d> fuelTanks)
+    public Map(char[][] map, Vector2d startingPoint, LinkedList<Vector2d> wayPoints, LinkedList<Vector2d> fuelTanks)
     {
-        this.m_game = a_game;
+        m_filename = null;
         m_startingPoint = startingPoint.copy();
         m_waypointPos = new LinkedList<Vector2d>();
         m_fuelTankPos = new LinkedList<Vector2d>();
@@ -149,20 +288,25 @@ public class Map extends JComponent
 
         for(int i = 0; i < wayPoints.size(); ++i)
         {
-            Waypoint newWaypoint = new Waypoint(m_game, wayPoints.get(i));
-            m_mapChar[(int) newWaypoint.s.x][(int)newWaypoint.s.y] = Map.WAYPOINT;
-            m_waypointPos.add(wayPoints.get(i));
+            Vector2d pos = wayPoints.get(i);
+            m_mapChar[(int) pos.x][(int) pos.y] = Map.WAYPOINT;
+            m_waypointPos.add(pos.copy());
         }
 
         for(int i = 0; i < fuelTanks.size(); ++i)
         {
-            FuelTank newFT = new FuelTank(m_game, fuelTanks.get(i));
-            m_mapChar[(int) newFT.s.x][(int)newFT.s.y] = Map.WAYPOINT;
-            m_fuelTankPos.add(fuelTanks.get(i));
+            Vector2d pos = fuelTanks.get(i);
+            m_mapChar[(int) pos.x][(int) pos.y] = Map.WAYPOINT;
+            m_fuelTankPos.add(pos.copy());
         }
 
 
         m_mapChar[(int) m_startingPoint.x][(int)m_startingPoint.y] = Map.START;
+        buildCodes();
+        buildDistanceField();
+
+        m_waypointGrid = new CollectibleGrid(m_waypointPos, m_mapChar.length, m_mapChar[0].length);
+        m_fuelTankGrid = new CollectibleGrid(m_fuelTankPos, m_mapChar.length, m_mapChar[0].length);
 
     }
 
@@ -238,24 +382,167 @@ public class Map extends JComponent
         }
         else if(data == WAYPOINT)
         {
-            Vector2d newCol = new Vector2d(x,y);
-            Waypoint way = new Waypoint(m_game, newCol);
-            if(m_game == null)
-                m_game = new Game();
-            m_game.addWaypoint(way);
             m_waypointPos.add(new Vector2d(x,y));
         }
         else if(data == FUEL_TANK)
         {
-            Vector2d newCol = new Vector2d(x,y);
-            FuelTank ft = new FuelTank(m_game, newCol);
-            if(m_game == null)
-                m_game = new Game();
-            m_game.addFuelTank(ft);
             m_fuelTankPos.add(new Vector2d(x,y));
         }
     }
 
+    /**
+     * Builds the code of every cell of the map, from the characters of the map.
+     */
+    private void buildCodes()
+    {
+        m_codes = new byte[m_width * m_height];
+        for(int y = 0; y < m_height; ++y)
+        {
+            for(int x = 0; x < m_width; ++x)
+            {
+                char data = m_mapChar[x][y];
+                int code = collisionType(data) << CODE_TYPE_SHIFT;
+                if(isLava(data))
+                    code |= CODE_LAVA;
+
+                boolean upDown = computeCollisionUpDown(x, y);
+                if(upDown)
+                    code |= CODE_UP_DOWN;
+                if(isObstacle(data))
+                    code |= upDown ? 1 : 2;
+
+                m_codes[y * m_width + x] = (byte) code;
+            }
+        }
+    }
+
+    /**
+     * Builds the squared distance from every cell to its closest obstacle and, if there is lava in the map, to its
+     * closest lava cell.
+     */
+    private void buildDistanceField()
+    {
+        m_obstacleDistSq = buildDistanceField(CODE_COLLISION_MASK);
+
+        m_lavaDistSq = null;
+        for(int i = 0; i < m_codes.length; ++i)
+        {
+            if((m_codes[i] & CODE_LAVA) != 0)
+            {
+                m_lavaDistSq = buildDistanceField(CODE_LAVA);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Builds the squared distance from every cell to the closest cell whose code has any of the given bits, with an
+     * exact euclidean distance transform (first along the columns, then along the rows).
+     * @param a_codeMask bits of the code of the cells to measure the distance to.
+     * @return the squared distances, row by row as m_codes.
+     */
+    private int[] buildDistanceField(int a_codeMask)
+    {
+        //Bigger than any squared distance in the map, and small enough to add squared distances to it.
+        int infinity = Integer.MAX_VALUE / 4;
+        int[] distSq = new int[m_width * m_height];
+        for(int i = 0; i < distSq.length; ++i)
+            distSq[i] = ((m_codes[i] & a_codeMask) != 0) ? 0 : infinity;
+
+        int maxLength = Math.max(m_width, m_height);
+        int[] f = new int[maxLength];
+        int[] d = new int[maxLength];
+        int[] v = new int[maxLength];
+        double[] z = new double[maxLength + 1];
+
+        for(int x = 0; x < m_width; ++x)
+        {
+            for(int y = 0; y < m_height; ++y)
+                f[y] = distSq[y * m_width + x];
+            distanceTransform(f, m_height, d, v, z);
+            for(int y = 0; y < m_height; ++y)
+                distSq[y * m_width + x] = d[y];
+        }
+
+        for(int y = 0; y < m_height; ++y)
+        {
+            System.arraycopy(distSq, y * m_width, f, 0, m_width);
+            distanceTransform(f, m_width, d, v, z);
+            System.arraycopy(d, 0, distSq, y * m_width, m_width);
+        }
+        return distSq;
+    }
+
+    /**
+     * One dimensional squared distance transform (lower envelope of parabolas, Felzenszwalb and Huttenlocher).
+     * @param a_f values of the function to transform.
+     * @param a_n number of values.
+     * @param a_d array to write the transformed values.
+     * @param a_v working array for the positions of the parabolas of the envelope.
+     * @param a_z working array for the boundaries between the parabolas of the envelope.
+     */
+    private static void distanceTransform(int[] a_f, int a_n, int[] a_d, int[] a_v, double[] a_z)
+    {
+        int k = 0;
+        a_v[0] = 0;
+        a_z[0] = Double.NEGATIVE_INFINITY;
+        a_z[1] = Double.POSITIVE_INFINITY;
+        for(int q = 1; q < a_n; ++q)
+        {
+            double s = intersection(a_f, q, a_v[k]);
+            while(s <= a_z[k])
+            {
+                --k;
+                s = intersection(a_f, q, a_v[k]);
+            }
+            ++k;
+            a_v[k] = q;
+            a_z[k] = s;
+            a_z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+
+        k = 0;
+        for(int q = 0; q < a_n; ++q)
+        {
+            while(a_z[k + 1] < q)
+                ++k;
+            int dist = q - a_v[k];
+            a_d[q] = dist * dist + a_f[a_v[k]];
+        }
+    }
+
+    /**
+     * Position where the parabolas rooted at two positions intersect.
+     * @param a_f values of the function to transform.
+     * @param a_q position of the first parabola.
+     * @param a_p position of the second parabola.
+     * @return the position where both parabolas intersect.
+     */
+    private static double intersection(int[] a_f, int a_q, int a_p)
+    {
+        return ((a_f[a_q] + (double) a_q * a_q) - (a_f[a_p] + (double) a_p * a_p)) / (2.0 * (a_q - a_p));
+    }
+
+    /**
+     * Creates the collision sphere of the ship, relative to its center.
+     * @return the points of the collision sphere.
+     */
+    private static Vector2d[] createCollSphere()
+    {
+        int numPoints = 16;
+        double angle = 2.0 * Math.PI / numPoints;
+        Vector2d[] collSphereRelative = new Vector2d[numPoints];
+
+        collSphereRelative[0] = new Vector2d(1,0);
+        collSphereRelative[0].mul(1.5*Ship.SHIP_RADIUS);
+        for(int i = 1; i < collSphereRelative.length; ++i)
+        {
+            collSphereRelative[i] = collSphereRelative[i-1].copy();
+            collSphereRelative[i].rotate(angle);
+        }
+        return collSphereRelative;
+    }
+
     /**
      * Checks if the given point is outside the bounds of the map.
      * @param a_x x ccoordinate
@@ -264,7 +551,57 @@ public class Map extends JComponent
      */
     public boolean isOutsideBounds(int a_x, int a_y)
     {
-        return (a_x < 0 || a_x >= m_mapChar.length || a_y < 0 || a_y >= m_mapChar[a_x].length);
+        return (a_x < 0 || a_x >= m_width || a_y < 0 || a_y >= m_height);
+    }
+
+    /**
+     * Gets the code of a cell of the map. The position must be inside the map.
+     * @param a_x x coordinate
+     * @param a_y y coordinate.
+     * @return the code of the cell, combining CODE_COLLISION_MASK, CODE_LAVA, CODE_UP_DOWN and CODE_TYPE_SHIFT.
+     */
+    int getCode(int a_x, int a_y)
+    {
+        return m_codes[a_y * m_width + a_x];
+    }
+
+    /**
+     * Gets the squared distance, in cells, from a position to the closest obstacle of the map.
+     * @param a_x x coordinate
+     * @param a_y y coordinate.
+     * @return the squared distance to the closest obstacle (0 if there is an obstacle in the position).
+     */
+    public int getObstacleDistanceSq(int a_x, int a_y)
+    {
+        return m_obstacleDistSq[a_y * m_width + a_x];
+    }
+
+    /**
+     * Checks if a ship centered in a given position is far enough from the obstacles and the edges of the map that
+     * none of the points of its collision sphere can be in collision. If this returns false there may be collision or
+     * not, and the points of the sphere must be checked.
+     * @param a_x x coordinate of the center of the ship.
+     * @param a_y y coordinate of the center of the ship.
+     * @return true if there is no collision for sure in this position.
+     */
+    boolean isClearOfObstacles(double a_x, double a_y)
+    {
+        return isPixelClear((int)Math.round(a_x), (int)Math.round(a_y));
+    }
+
+    /**
+     * Checks if a ship centered in any position that is rounded to a given pixel is far enough from the obstacles and
+     * the edges of the map that none of the points of its collision sphere can be in collision.
+     * @param a_x x coordinate of the pixel.
+     * @param a_y y coordinate of the pixel.
+     * @return true if there is no collision for sure around this pixel.
+     */
+    boolean isPixelClear(int a_x, int a_y)
+    {
+        if(a_x < CLEAR_EDGE_DIST || a_x >= m_width - CLEAR_EDGE_DIST ||
+           a_y < CLEAR_EDGE_DIST || a_y >= m_height - CLEAR_EDGE_DIST)
+            return false;
+        return m_obstacleDistSq[a_y * m_width + a_x] >= CLEAR_DIST_SQ;
     }
 
     /**
@@ -275,8 +612,7 @@ public class Map extends JComponent
      */
     public boolean isObstacle(int a_x, int a_y)
     {
-        char inMap = m_mapChar[a_x][a_y];
-        return isObstacle(inMap);
+        return (m_codes[a_y * m_width + a_x] & CODE_COLLISION_MASK) != 0;
     }
 
     /**
@@ -287,8 +623,7 @@ public class Map extends JComponent
      */
     public boolean isLava(int a_x, int a_y)
     {
-        char inMap = m_mapChar[a_x][a_y];
-        return isLava(inMap);
+        return (m_codes[a_y * m_width + a_x] & CODE_LAVA) != 0;
     }
 
 
@@ -326,11 +661,10 @@ public class Map extends JComponent
     {
         if (a_x < 0) a_x = 0;
         if (a_y < 0) a_y = 0;
-        if (a_x >= m_mapChar.length) a_x = m_mapChar.length-1;
-        if (a_y >= m_mapChar[a_x].length) a_y = m_mapChar[a_x].length-1;
+        if (a_x >= m_width) a_x = m_width-1;
+        if (a_y >= m_height) a_y = m_height-1;
 
-        char inMap = m_mapChar[a_x][a_y];
-        return collisionType(inMap);
+        return m_codes[a_y * m_width + a_x] >> CODE_TYPE_SHIFT;
     }
 
     /**
@@ -357,6 +691,17 @@ public class Map extends JComponent
      * @return true if the collision is against a vertical wall
      */
     public boolean isCollisionUpDown(int a_x, int a_y)
+    {
+        return (m_codes[a_y * m_width + a_x] & CODE_UP_DOWN) != 0;
+    }
+
+    /**
+     * Computes if the collision at a_x, a_y belongs to a vertical or an horizontal wall, from the characters of the map.
+     * @param a_x x coordinate of the collision point
+     * @param a_y y coordinate of the collision point
+     * @return true if the collision is against a vertical wall
+     */
+    private boolean computeCollisionUpDown(int a_x, int a_y)
     {
         int consUpDown = 1, consRightLeft = 1; //we suppose there is collision in (a_x, a_y)
         if(a_y+1 < m_mapChar[a_x].length)
@@ -444,124 +789,428 @@ public class Map extends JComponent
         dir.mul(increment);
         double acum = increment;
 
+        //Positions are still visited one increment at a time, but the ones known to be clear are not checked: when a
+        //position is far from the obstacles, the following ones closer than that distance are skipped.
+        int skip = 0;
         Vector2d pos = new Vector2d(a_orgX, a_orgY);
         while(acum < distance)
         {
             pos.add(dir);
 
-            if( m_game.getShip().checkCollisionInPosition(pos))
-                return acum;
+            if(skip > 0)
+            {
+                skip--;
+            }
+            else
+            {
+                double freeDistance = getFreeDistance(pos.x, pos.y);
+                if(freeDistance > 0)
+                {
+                    if(increment > 0)
+                        skip = (int) Math.ceil(freeDistance / increment) - 1;
+                }
+                else if(checkCollisionInPosition(pos))
+                    return acum;
+            }
             acum += increment;
         }
 
         return -1;
     }
 
+    /**
+     * Casts rays from a position in several directions, evenly spread around it, and finds the distance to the closest
+     * obstacle in each one of them, as distanceToCollision() does. The first ray points to the right (angle 0) and the
+     * following ones are rotated clockwise in the screen (increasing angle).
+     * @param a_origin Position to cast the rays from.
+     * @param a_numRays Number of rays to cast.
+     * @param a_maxDistance Max distance to check in each ray.
+     * @param a_out Array to write, for each ray, the distance to the closest obstacle, or -1 if there is no obstacle closer
+     *              than a_maxDistance. It must have at least a_numRays elements.
+     */
+    public void castRays(Vector2d a_origin, int a_numRays, double a_maxDistance, double[] a_out)
+    {
+        castRays(a_origin, 0, a_numRays, a_maxDistance, a_out);
+    }
 
-    /*** Getters and setters ***/
-
-    public LinkedList<Vector2d> getWaypointPositions()
+    /**
+     * Casts rays from a position in several directions, evenly spread around it, and finds the distance to the closest
+     * obstacle in each one of them, as distanceToCollision() does.
+     * @param a_origin Position to cast the rays from.
+     * @param a_startAngle Angle, in radians, of the first ray (for instance, the heading of the ship). The following ones
+     *                     are rotated clockwise in the screen (increasing angle).
+     * @param a_numRays Number of rays to cast.
+     * @param a_maxDistance Max distance to check in each ray.
+     * @param a_out Array to write, for each ray, the distance to the closest obstacle, or -1 if there is no obstacle closer
+     *              than a_maxDistance. It must have at least a_numRays elements.
+     */
+    public void castRays(Vector2d a_origin, double a_startAngle, int a_numRays, double a_maxDistance, double[] a_out)
     {
-        return m_waypointPos;
+        double angleStep = 2.0 * Math.PI / a_numRays;
+        for(int i = 0; i < a_numRays; ++i)
+        {
+            double angle = a_startAngle + i * angleStep;
+            double destX = a_origin.x + Math.cos(angle) * a_maxDistance;
+            double destY = a_origin.y + Math.sin(angle) * a_maxDistance;
+            a_out[i] = checkObsFreeDistance((int) a_origin.x, (int) a_origin.y, (int) destX, (int) destY, Ship.SHIP_RADIUS);
+        }
     }
 
+    /**
+     * Gets how far the center of a ship can move, in any direction, from a given position, while none of the points of
+     * its collision sphere can touch an obstacle or leave the map.
+     * @param a_x x coordinate of the center of the ship.
+     * @param a_y y coordinate of the center of the ship.
+     * @return the distance the ship can move, or a value <= 0 if it may already be touching an obstacle.
+     */
+    double getFreeDistance(double a_x, double a_y)
+    {
+        return getClearance(a_x, a_y) - COLL_SPHERE_REACH;
+    }
 
-    public LinkedList<Vector2d> getFuelTankPositions()
+    /**
+     * Gets how far the center of a ship can move, in any direction, from a given position, while none of the points of
+     * its collision sphere can touch an obstacle, a lava cell or leave the map.
+     * @param a_x x coordinate of the center of the ship.
+     * @param a_y y coordinate of the center of the ship.
+     * @return the distance the ship can move, or a value <= 0 if it may already be touching an obstacle or lava.
+     */
+    double getLavaFreeDistance(double a_x, double a_y)
     {
-        return m_fuelTankPos;
+        double clearance = getClearance(a_x, a_y);
+        if(m_lavaDistSq != null && clearance > 0)
+        {
+            int xRound = (int)Math.round(a_x);
+            int yRound = (int)Math.round(a_y);
+            clearance = Math.min(clearance, Math.sqrt(m_lavaDistSq[yRound * m_width + xRound]));
+        }
+        return clearance - COLL_SPHERE_REACH;
     }
 
     /**
-     * Gets the array representing the map
-     * @return the array representing the map
+     * Gets the distance from the cell of a position to the closest obstacle or cell out of the map.
+     * @param a_x x coordinate of the position.
+     * @param a_y y coordinate of the position.
+     * @return the distance, in pixels, to the closest obstacle or edge of the map (0 if the position is out of the map).
      */
-    public char[][] getMapChar() {return m_mapChar; }
+    private double getClearance(double a_x, double a_y)
+    {
+        int xRound = (int)Math.round(a_x);
+        int yRound = (int)Math.round(a_y);
+        if(isOutsideBounds(xRound, yRound))
+            return 0;
+
+        int edgeDistance = Math.min(Math.min(xRound + 1, m_width - xRound), Math.min(yRound + 1, m_height - yRound));
+        return Math.min(Math.sqrt(m_obstacleDistSq[yRound * m_width + xRound]), edgeDistance);
+    }
 
     /**
-     * Gets the starting point in the map
-     * @return the starting point.
+     * Enables or disables the collision grid of the map, that tells which points of the collision sphere of a ship
+     * can not be in collision from its center, at sub-pixel resolution (see getFreePoints()). Enabling it starts an
+     * empty grid, that is built by tiles as the ships move around the map. The grid is shared by all the games
+     * played in this map. When fully built, it takes 2*COLL_GRID_SUBDIV^2 bytes per pixel of the map (see
+     * getCollisionGridBytes()).
+     * @param a_enabled true to enable the grid, false to disable it and free its memory.
      */
-    public Vector2d getStartingPoint() {return m_startingPoint.copy();}
+    public void setCollisionGrid(boolean a_enabled)
+    {
+        if(!a_enabled)
+            m_collGrid = null;
+        else if(m_collGrid == null)
+        {
+            m_collGridTilesX = (m_width + COLL_GRID_TILE - 1) / COLL_GRID_TILE;
+            int tilesY = (m_height + COLL_GRID_TILE - 1) / COLL_GRID_TILE;
+            m_collGrid = new short[m_collGridTilesX * tilesY][];
+        }
+    }
 
     /**
-     * Gets the height of the map.
-     * @return the height of the map.
+     * Gets the line of sight between the cells of the map and to its waypoints and fuel tanks (see VisibilityCache).
+     * It is built the first time it is requested, and shared by all the games played in this map.
+     * @return the visibility cache of the map.
      */
-    public int getMapHeight() {return m_height;}
+    public VisibilityCache getVisibility()
+    {
+        VisibilityCache visibility = m_visibility;
+        if(visibility == null)
+        {
+            synchronized(this)
+            {
+                visibility = m_visibility;
+                if(visibility == null)
+                {
+                    visibility = new VisibilityCache(this);
+                    m_visibility = visibility;
+                }
+            }
+        }
+        return visibility;
+    }
 
     /**
-     * Gets the width of the map.
-     * @return the width of the map.
+     * Indicates if the collision grid of the map is enabled.
+     * @return true if the collision grid is enabled.
      */
-    public int getMapWidth() {return m_width;}
+    public boolean isCollisionGrid() {return m_collGrid != null;}
 
     /**
-     * Gets the filename this map was loaded from.
-     * @return the filename this map was loaded from.
+     * Gets the number of tiles of the collision grid built so far.
+     * @return the number of tiles built, 0 if the grid is not enabled.
      */
-    public String getFilename() {return m_filename;}
+    public int getCollisionGridTilesBuilt()
+    {
+        short[][] grid = m_collGrid;
+        if(grid == null)
+            return 0;
 
+        int built = 0;
+        for(short[] tile : grid)
+        {
+            if(tile != null)
+                built++;
+        }
+        return built;
+    }
 
     /**
-     * Sets the map character array.
-     * @param a_mapChar the map character array.
+     * Gets the memory used by the collision grid: the tiles built so far and the array that references them.
+     * @return the number of bytes used by the collision grid, 0 if it is not enabled.
      */
-    public void setMapChar(char[][] a_mapChar){m_mapChar = a_mapChar;}
+    public long getCollisionGridBytes()
+    {
+        short[][] grid = m_collGrid;
+        if(grid == null)
+            return 0;
+        return 4L * grid.length + 2L * COLL_GRID_TILE_CELLS * COLL_GRID_TILE_CELLS * getCollisionGridTilesBuilt();
+    }
 
     /**
-     * Sets the height of the map.
-     * @param a_h the height of the map.
+     * Gets which points of the collision sphere of a ship can not touch an obstacle or leave the map, with the ship
+     * centered in a given position. It only uses the collision grid, building its tile if needed.
+     * @param a_x x coordinate of the center of the ship.
+     * @param a_y y coordinate of the center of the ship.
+     * @return bit i is set if point i of COLL_SPHERE_RELATIVE can not be in collision. It is 0 if the collision grid
+     *         is not enabled or the position is out of the map.
      */
-    public void setHeight(int a_h) {m_height = a_h;}
+    int getFreePoints(double a_x, double a_y)
+    {
+        short[][] grid = m_collGrid;
+        if(grid == null)
+            return 0;
+
+        double gx = a_x * COLL_GRID_SUBDIV;
+        double gy = a_y * COLL_GRID_SUBDIV;
+        if(!(gx >= 0 && gy >= 0 && gx < m_width * COLL_GRID_SUBDIV && gy < m_height * COLL_GRID_SUBDIV))
+            return 0;
+
+        int cellX = (int) gx, cellY = (int) gy;
+        int tileIndex = (cellY / COLL_GRID_TILE_CELLS) * m_collGridTilesX + cellX / COLL_GRID_TILE_CELLS;
+        short[] tile = grid[tileIndex];
+        if(tile == null)
+        {
+            tile = buildCollisionGridTile(tileIndex);
+            grid[tileIndex] = tile;
+        }
+        return tile[(cellY % COLL_GRID_TILE_CELLS) * COLL_GRID_TILE_CELLS + cellX % COLL_GRID_TILE_CELLS] & 0xFFFF;
+    }
 
     /**
-     * Sets the width of the map.
-     * @param a_w the width of the map.
+     * Builds a tile of the collision grid. For each cell, the range of pixels that each point of the collision sphere
+     * can be rounded to, from any center of the cell, is checked.
+     * @param a_tileIndex index of the tile.
+     * @return the cells of the tile, row by row.
      */
-    public void setWidth(int a_w) {m_width = a_w;}
+    private short[] buildCollisionGridTile(int a_tileIndex)
+    {
+        short[] tile = new short[COLL_GRID_TILE_CELLS * COLL_GRID_TILE_CELLS];
+        int firstCellX = (a_tileIndex % m_collGridTilesX) * COLL_GRID_TILE_CELLS;
+        int firstCellY = (a_tileIndex / m_collGridTilesX) * COLL_GRID_TILE_CELLS;
+
+        //Pixels the center of the ship can be rounded to, for each column and row of cells of the tile.
+        int[] centerMinX = new int[COLL_GRID_TILE_CELLS];
+        int[] centerMaxX = new int[COLL_GRID_TILE_CELLS];
+        int[] centerMinY = new int[COLL_GRID_TILE_CELLS];
+        int[] centerMaxY = new int[COLL_GRID_TILE_CELLS];
+        for(int i = 0; i < COLL_GRID_TILE_CELLS; ++i)
+        {
+            centerMinX[i] = (int) Math.round((double) (firstCellX + i) / COLL_GRID_SUBDIV - COLL_GRID_MARGIN);
+            centerMaxX[i] = (int) Math.round((double) (firstCellX + i + 1) / COLL_GRID_SUBDIV + COLL_GRID_MARGIN);
+            centerMinY[i] = (int) Math.round((double) (firstCellY + i) / COLL_GRID_SUBDIV - COLL_GRID_MARGIN);
+            centerMaxY[i] = (int) Math.round((double) (firstCellY + i + 1) / COLL_GRID_SUBDIV + COLL_GRID_MARGIN);
+        }
+
+        //Pixels each point of the sphere can be rounded to, for each column and row of cells of the tile.
+        int numPoints = COLL_SPHERE_RELATIVE.length;
+        int allFree = (1 << numPoints) - 1;
+        int[] minX = new int[numPoints * COLL_GRID_TILE_CELLS];
+        int[] maxX = new int[numPoints * COLL_GRID_TILE_CELLS];
+        int[] minY = new int[numPoints * COLL_GRID_TILE_CELLS];
+        int[] maxY = new int[numPoints * COLL_GRID_TILE_CELLS];
+        for(int p = 0; p < numPoints; ++p)
+        {
+            Vector2d rel = COLL_SPHERE_RELATIVE[p];
+            for(int i = 0; i < COLL_GRID_TILE_CELLS; ++i)
+            {
+                double fromX = (double) (firstCellX + i) / COLL_GRID_SUBDIV;
+                double fromY = (double) (firstCellY + i) / COLL_GRID_SUBDIV;
+                double toX = (double) (firstCellX + i + 1) / COLL_GRID_SUBDIV;
+                double toY = (double) (firstCellY + i + 1) / COLL_GRID_SUBDIV;
+                minX[p * COLL_GRID_TILE_CELLS + i] = (int) Math.round(fromX + rel.x - COLL_GRID_MARGIN);
+                maxX[p * COLL_GRID_TILE_CELLS + i] = (int) Math.round(toX + rel.x + COLL_GRID_MARGIN);
+                minY[p * COLL_GRID_TILE_CELLS + i] = (int) Math.round(fromY + rel.y - COLL_GRID_MARGIN);
+                maxY[p * COLL_GRID_TILE_CELLS + i] = (int) Math.round(toY + rel.y + COLL_GRID_MARGIN);
+            }
+        }
+
+        for(int j = 0; j < COLL_GRID_TILE_CELLS; ++j)
+        {
+            for(int i = 0; i < COLL_GRID_TILE_CELLS; ++i)
+            {
+                //Cells far from the obstacles, as checked by isClearOfObstacles(), have all their points free.
+                if(isPixelClear(centerMinX[i], centerMinY[j]) && isPixelClear(centerMaxX[i], centerMinY[j]) &&
+                   isPixelClear(centerMinX[i], centerMaxY[j]) && isPixelClear(centerMaxX[i], centerMaxY[j]))
+                {
+                    tile[j * COLL_GRID_TILE_CELLS + i] = (short) allFree;
+                    continue;
+                }
+
+                int free = 0;
+                for(int p = 0; p < numPoints; ++p)
+                {
+                    int x = p * COLL_GRID_TILE_CELLS + i;
+                    int y = p * COLL_GRID_TILE_CELLS + j;
+                    if(isAreaFree(minX[x], minY[y], maxX[x], maxY[y]))
+                        free |= 1 << p;
+                }
+                tile[j * COLL_GRID_TILE_CELLS + i] = (short) free;
+            }
+        }
+        return tile;
+    }
 
     /**
-     * Sets the starting point of the ship in the map.
-     * @param a_sp the starting point of the ship in the map.
+     * Checks if all the pixels of a rectangle are inside the map and are not obstacles.
+     * @param a_minX smallest x coordinate of the rectangle.
+     * @param a_minY smallest y coordinate of the rectangle.
+     * @param a_maxX largest x coordinate of the rectangle.
+     * @param a_maxY largest y coordinate of the rectangle.
+     * @return true if there is no obstacle in the rectangle.
      */
-    public void setStartingPoint(Vector2d a_sp) {m_startingPoint = a_sp;}
+    private boolean isAreaFree(int a_minX, int a_minY, int a_maxX, int a_maxY)
+    {
+        if(isOutsideBounds(a_minX, a_minY) || isOutsideBounds(a_maxX, a_maxY))
+            return false;
+
+        for(int y = a_minY; y <= a_maxY; ++y)
+        {
+            for(int x = a_minX; x <= a_maxX; ++x)
+            {
+                if((m_codes[y * m_width + x] & CODE_COLLISION_MASK) != 0)
+                    return false;
+            }
+        }
+        return true;
+    }
 
     /**
-     * Sets the game instance
-     * @param a_game the game instance
+     * Checks if the ship would collide with an obstacle or the edge of the map in the given position. It gives the same
+     * result as Ship.checkCollisionInPosition(), but it does not modify any ship.
+     * @param a_position Central position of the ship.
+     * @return true if there is collision.
      */
-    public void setGame(Game a_game) {m_game = a_game;}
+    public boolean checkCollisionInPosition(Vector2d a_position)
+    {
+        if(isClearOfObstacles(a_position.x, a_position.y))
+            return false;
+
+        int free = getFreePoints(a_position.x, a_position.y);
+        for(int i = 0; i < COLL_SPHERE_RELATIVE.length; ++i)
+        {
+            if((free & (1 << i)) != 0)
+                continue;
+
+            int xRound = (int)Math.round(COLL_SPHERE_RELATIVE[i].x + a_position.x);
+            int yRound = (int)Math.round(COLL_SPHERE_RELATIVE[i].y + a_position.y);
+            if(isOutsideBounds(xRound, yRound) || (m_codes[yRound * m_width + xRound] & CODE_COLLISION_MASK) != 0)
+                return true;
+        }
+        return false;
+    }
+
+
+    /*** Getters ***/
 
     /**
-     * Sets the filename to read the map from.
-     * @param a_filename the filename where the map is.
+     * Gets the positions of the waypoints in the map.
+     * @return a new list with a copy of the positions of the waypoints.
      */
-    public void setFilename(String a_filename) {m_filename = a_filename;}
+    public LinkedList<Vector2d> getWaypointPositions()
+    {
+        return copyPositions(m_waypointPos);
+    }
 
     /**
-     * Gets a copy of the map.
-     * @param a_game the game isntance.
-     * @return The map copy.
+     * Gets the positions of the fuel tanks in the map.
+     * @return a new list with a copy of the positions of the fuel tanks.
      */
-    public Map getCopy(Game a_game)
+    public LinkedList<Vector2d> getFuelTankPositions()
     {
-        Map copied = new Map();
-
-        //Copy the map
-        char[][] mapChar = new char[m_mapChar.length][m_mapChar[0].length];
-        for(int i = 0; i < mapChar.length; ++i)
-            for(int j = 0; j < mapChar[0].length; ++j)
-                mapChar[i][j] = m_mapChar[i][j];
-        copied.setMapChar(mapChar);
-
-        copied.setHeight(m_height);
-        copied.setWidth(m_width);
-        copied.setStartingPoint(m_startingPoint.copy());
-        copied.setGame(a_game);
-        copied.setFilename(m_filename); //Not copied, no need.
+        return copyPositions(m_fuelTankPos);
+    }
 
+    /**
+     * Copies a list of positions.
+     * @param a_positions positions to copy.
+     * @return a new list with a copy of each position.
+     */
+    private static LinkedList<Vector2d> copyPositions(LinkedList<Vector2d> a_positions)
+    {
+        LinkedList<Vector2d> copied = new LinkedList<Vector2d>();
+        for(Vector2d pos : a_positions)
+            copied.add(pos.copy());
         return copied;
     }
 
-}
+    /**
+     * Gets the array representing the map. The array is shared by all the games played in this map: it must not be
+     * modified.
+     * @return the array representing the map
+     */
+    public char[][] getMapChar() {return m_mapChar; }
+
+    /**
+     * Gets the starting point in the map
+     * @return the starting point.
+     */
+    public Vector2d getStartingPoint() {return m_startingPoint.copy();}
+
+    /**
+     * Gets the height of the map.
+     * @return the height of the map.
+     */
+    public int getMapHeight() {return m_height;}
+
+    /**
+     * Gets the width of the map.
+     * @return the width of the map.
+     */
+    public int getMapWidth() {return m_width;}
+
+    /**
+     * Gets the grid that indexes the positions of the waypoints.
+     * @return the grid of waypoints.
+     */
+    CollectibleGrid getWaypointGrid() {return m_waypointGrid;}
 
+    /**
+     * Gets the grid that indexes the positions of the fuel tanks.
+     * @return the grid of fuel tanks.
+     */
+    CollectibleGrid getFuelTankGrid() {return m_fuelTankGrid;}
+
+    /**
+     * Gets the filename this map was loaded from.
+     * @return the filename this map was loaded from.
+     */
+    public String getFilename() {return m_filename;}
+}
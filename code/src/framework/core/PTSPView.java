@@ -19,14 +19,19 @@ public class PTSPView extends JComponent
 {
 
     /**
-     * Reference to the game to be painted.
+     * Reference to the game to be painted. It is only read by refresh(), from the thread that runs the game.
      */
     private Game m_game;
 
     /**
-     * Reference to the ship of the game.
+     * Render copies of the game. refresh() fills the one that is not published while the other one can be painted.
      */
-    private Ship m_ship;
+    private Game[] m_renderGames;
+
+    /**
+     * Render copy of the game to be painted. Each render copy is locked while it is being filled or painted.
+     */
+    private volatile Game m_publishedGame;
 
     /**
      * reference to the map instance where the game is being played.
@@ -101,16 +106,15 @@ public class PTSPView extends JComponent
     /**
      * Constructor of the class.
      * @param a_game Game to paint.
-     * @param a_size Size of the map.
      * @param a_map Map to be painted.
-     * @param a_ship Ship of the game.
-     * @param a_controller Controller of the ship.              
+     * @param a_controller Controller of the ship.
      */
-    public PTSPView(Game a_game, Dimension a_size, Map a_map, Ship a_ship, Controller a_controller) {
+    public PTSPView(Game a_game, Map a_map, Controller a_controller) {
         m_game = a_game;
+        m_renderGames = new Game[]{a_game.getCopy(), a_game.getCopy()};
+        m_publishedGame = m_renderGames[0];
         m_map = a_map;
-        m_size = a_size;   m_size.height += HUD_SPACE;   //We add some space for the HUD.
-        m_ship = a_ship;
+        m_size = new Dimension(a_map.getMapWidth(), a_map.getMapHeight() + HUD_SPACE);   //We add some space for the HUD.
         m_font = new Font("Courier", Font.PLAIN, 14);
         m_font2 = new Font("Courier", Font.BOLD, 14);
         m_positions = new LinkedList<Vector2d>();
@@ -120,13 +124,39 @@ public class PTSPView extends JComponent
         m_rnd = new Random();
     }
 
+    /**
+     * Publishes the current state of the game to be painted, and asks for a repaint. It must be called from the thread
+     * that runs the game, between two ticks. The game itself is never locked: only the render copy being filled.
+     */
+    public void refresh()
+    {
+        Game renderGame = (m_publishedGame == m_renderGames[0]) ? m_renderGames[1] : m_renderGames[0];
+        synchronized (renderGame) {
+            m_game.copyInto(renderGame);
+        }
+        m_publishedGame = renderGame;
+        repaint();
+    }
+
     /**
      * Main method to paint the game
      * @param gx Graphics object.
      */
     public void paintComponent(Graphics gx)
     {
-        Graphics2D g = (Graphics2D) gx;
+        Game game = m_publishedGame;
+        synchronized (game) {
+            paintGame((Graphics2D) gx, game);
+        }
+    }
+
+    /**
+     * Paints a render copy of the game.
+     * @param g Graphics object.
+     * @param a_game render copy of the game to paint.
+     */
+    private void paintGame(Graphics2D g, Game a_game)
+    {
 
         //For a better graphics, enable this: (be aware this could bring performance issues depending on your HW & OS).
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -193,16 +223,15 @@ public class PTSPView extends JComponent
         }
 
         //Paint all objects of the game.
-        synchronized (Game.class) {
-            for (GameObject go : m_game.getGameObjects()) {
-                go.draw(g);
-            }
+        for (GameObject go : a_game.getGameObjects()) {
+            GamePainter.draw(g, go);
         }
 
         //Update positions to draw trajectory.
-        if(m_ship.ps.x != m_ship.s.x || m_ship.ps.y != m_ship.s.y)
+        Ship ship = a_game.getShip();
+        if(ship.ps.x != ship.s.x || ship.ps.y != ship.s.y)
         {
-            m_positions.add(m_ship.s.copy());
+            m_positions.add(ship.s.copy());
         }
 
         //Draw the trajectory
@@ -221,7 +250,7 @@ public class PTSPView extends JComponent
         }
 
         //Paint stats of the m_game.
-        paintStats(g);
+        paintStats(g, a_game);
 
         //Draw controller paint stuff
         if(m_controller != null)
@@ -231,16 +260,17 @@ public class PTSPView extends JComponent
     /**
      * Paints texts on the game, as the total and time left, and results.
      * @param g Graphics device.
+     * @param a_game render copy of the game to paint.
      */
-    private void paintStats(Graphics2D g)
+    private void paintStats(Graphics2D g, Game a_game)
     {
         g.setColor(fontColor);
         g.setFont(m_font);
-        g.drawString("Total time: " + m_game.getTotalTime(), 10, m_size.height - 60);
-        g.drawString("Waypoints: " + m_game.getWaypointsVisited() + "/" + m_game.getNumWaypoints(), m_size.width - 180, m_size.height - 60);
-        g.drawString("Time left: " + m_game.getStepsLeft(), 10, m_size.height - 40);
-        g.drawString("Fuel: " + m_game.getShip().getRemainingFuel() + "/" + PTSPConstants.INITIAL_FUEL, m_size.width - 350, m_size.height - 40);
-        g.drawString("Damage: " + m_game.getShip().getDamage() + "/" + PTSPConstants.MAX_DAMAGE, m_size.width - 180, m_size.height - 40);
+        g.drawString("Total time: " + a_game.getTotalTime(), 10, m_size.height - 60);
+        g.drawString("Waypoints: " + a_game.getWaypointsVisited() + "/" + a_game.getNumWaypoints(), m_size.width - 180, m_size.height - 60);
+        g.drawString("Time left: " + a_game.getStepsLeft(), 10, m_size.height - 40);
+        g.drawString("Fuel: " + a_game.getShip().getRemainingFuel() + "/" + PTSPConstants.INITIAL_FUEL, m_size.width - 350, m_size.height - 40);
+        g.drawString("Damage: " + a_game.getShip().getDamage() + "/" + PTSPConstants.MAX_DAMAGE, m_size.width - 180, m_size.height - 40);
 
         //Last action
         /*if(m_ship.getActionList().size() > 0)
@@ -258,27 +288,27 @@ public class PTSPView extends JComponent
 
 
         //Draw the results if the game is over.
-        if(m_game.getWaypointsLeft() == 0)
+        if(a_game.getWaypointsLeft() == 0)
         {
             g.setColor(finalResult);
             g.setFont(m_font2);
-            g.drawString("Waypoints: " + m_game.getWaypointsVisited() +
-                    ", steps: " + m_game.getTotalTime() + ", damage: " + m_game.getShip().getDamage()
-                    + ", fuel: " + (PTSPConstants.INITIAL_FUEL-m_game.getShip().getRemainingFuel()), 10, m_size.height - 10);
-        }else if(m_game.getStepsLeft() <= 0)
+            g.drawString("Waypoints: " + a_game.getWaypointsVisited() +
+                    ", steps: " + a_game.getTotalTime() + ", damage: " + a_game.getShip().getDamage()
+                    + ", fuel: " + (PTSPConstants.INITIAL_FUEL-a_game.getShip().getRemainingFuel()), 10, m_size.height - 10);
+        }else if(a_game.getStepsLeft() <= 0)
         {
             g.setColor(finalResult);
             g.setFont(m_font2);
-            g.drawString("Time out. Waypoints: " + m_game.getWaypointsVisited() +
-                    ", steps: " + m_game.getTotalTime() + ", damage: " + m_game.getShip().getDamage()
-                    + ", fuel: " + (PTSPConstants.INITIAL_FUEL-m_game.getShip().getRemainingFuel()), 10, m_size.height - 10);
-        }else if(m_game.getShip().getDamage() >= PTSPConstants.MAX_DAMAGE)
+            g.drawString("Time out. Waypoints: " + a_game.getWaypointsVisited() +
+                    ", steps: " + a_game.getTotalTime() + ", damage: " + a_game.getShip().getDamage()
+                    + ", fuel: " + (PTSPConstants.INITIAL_FUEL-a_game.getShip().getRemainingFuel()), 10, m_size.height - 10);
+        }else if(a_game.getShip().getDamage() >= PTSPConstants.MAX_DAMAGE)
         {
             g.setColor(finalResult);
             g.setFont(m_font2);
-            g.drawString("Ship destroyed. Waypoints: " + m_game.getWaypointsVisited() +
-                    ", steps: " + m_game.getTotalTime() + ", damage: " + m_game.getShip().getDamage()
-                    + ", fuel: " + (PTSPConstants.INITIAL_FUEL-m_game.getShip().getRemainingFuel()), 10, m_size.height - 10);
+            g.drawString("Ship destroyed. Waypoints: " + a_game.getWaypointsVisited() +
+                    ", steps: " + a_game.getTotalTime() + ", damage: " + a_game.getShip().getDamage()
+                    + ", fuel: " + (PTSPConstants.INITIAL_FUEL-a_game.getShip().getRemainingFuel()), 10, m_size.height - 10);
         }
     }
 
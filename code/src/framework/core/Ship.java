@@ -1,8 +1,6 @@
 package framework.core;
 
 import framework.utils.Vector2d;
-import java.awt.*;
-import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
 
 /**
@@ -44,20 +42,44 @@ public class Ship extends GameObject
      */
     public final static double loss = 0.99;
 
+    /**
+     * Number of different headings the ship can have (a full turn in steps of steerStep).
+     */
+    public final static int NUM_HEADINGS = 120;
+
     /**
      * Radius of the ship.
      */
     public final static int SHIP_RADIUS = 3;
 
+    /**
+     * Direction of each heading index (x coordinate), used when the heading table is enabled.
+     */
+    private final static double[] HEADING_X = new double[NUM_HEADINGS];
+
+    /**
+     * Direction of each heading index (y coordinate), used when the heading table is enabled.
+     */
+    private final static double[] HEADING_Y = new double[NUM_HEADINGS];
+
+    static
+    {
+        for(int i = 0; i < NUM_HEADINGS; ++i)
+        {
+            HEADING_X[i] = Math.cos(i * steerStep);
+            HEADING_Y[i] = Math.sin(i * steerStep);
+        }
+    }
+
     /**
      * Indicates if the game has started or not.
      */
     private boolean m_started = false;
 
     /**
-     * List of all the actions executed so far(to save replies)
+     * Log of all the actions executed so far(to save replies). Copies of the ship share the log prefix.
      */
-    private ArrayList<Integer> m_actionList;
+    private ActionLog m_actionLog;
 
     /**
      * Next action to be executed.
@@ -66,14 +88,24 @@ public class Ship extends GameObject
     
 
     /**
-     * Position of the ship after applying a movement BUT before checking for collisions.
+     * Position of the ship after applying a movement BUT before checking for collisions (x coordinate).
+     */
+    private double m_potentialX;
+
+    /**
+     * Position of the ship after applying a movement BUT before checking for collisions (y coordinate).
      */
-    private Vector2d m_potentialPosition;
+    private double m_potentialY;
 
     /**
-     * Speed of the ship after applying a movement BUT before checking for collisions.
+     * Speed of the ship after applying a movement BUT before checking for collisions (x coordinate).
      */
-    private Vector2d m_potentialSpeed;
+    private double m_potentialVx;
+
+    /**
+     * Speed of the ship after applying a movement BUT before checking for collisions (y coordinate).
+     */
+    private double m_potentialVy;
 
     /**
      * Indicates if the current action involves acceleration.
@@ -86,29 +118,24 @@ public class Ship extends GameObject
     private int m_turning;
 
     /**
-     * Indicates if there was a collision in previous step.
-     */
-    private boolean m_collisionLastStep;
-
-    /**
-     * Last collision type
+     * Indicates if the direction of the ship is taken from the heading table instead of being rotated every step.
      */
-    private int m_lastCollisionType;
+    private boolean m_headingTable;
 
     /**
-     * Color of the chassis of the ship.
+     * Index of the heading of the ship, only kept when the heading table is enabled.
      */
-    private final Color chassisColor = new Color(0,0,128); //Dark blue
+    private int m_heading;
 
     /**
-     * Color of the chassis of the ship (broken).
+     * Indicates if there was a collision in previous step.
      */
-    private final Color chassisBrokenColor = Color.red;
+    private boolean m_collisionLastStep;
 
     /**
-     * Color of the thrust of the ship.
+     * Last collision type
      */
-    private final Color thrustColor = Color.green;
+    private int m_lastCollisionType;
 
     /**
      * Collision sphere of the ship. It represents relative points around the ship that compose the "sphere" (local coordinates).
@@ -150,7 +177,7 @@ public class Ship extends GameObject
      */
     private Ship()
     {
-        m_actionList = new ArrayList<Integer>();
+        m_actionLog = new ActionLog();
     }
 
     /**
@@ -170,7 +197,7 @@ public class Ship extends GameObject
         this.m_lastCollisionType = PTSPConstants.NO_COLLISION_TYPE;
         this.m_damage = 0;
         this.m_invulnerable = 0;
-        m_actionList = new ArrayList<Integer>();
+        m_actionLog = new ActionLog();
         m_collisionLastStep = false;
         m_nextMove = Controller.ACTION_NO_FRONT;
         m_onLava = false;
@@ -211,8 +238,8 @@ public class Ship extends GameObject
     {
         for(int i = 0; i < m_collSphereRelative.length; ++i)
         {
-            m_collPotentialSphere[i].x = m_collSphereRelative[i].x + m_potentialPosition.x;
-            m_collPotentialSphere[i].y = m_collSphereRelative[i].y + m_potentialPosition.y;
+            m_collPotentialSphere[i].x = m_collSphereRelative[i].x + m_potentialX;
+            m_collPotentialSphere[i].y = m_collSphereRelative[i].y + m_potentialY;
         }
     }
 
@@ -254,24 +281,38 @@ public class Ship extends GameObject
                 return;
         }
 
-        ps = s.copy();
-        m_potentialPosition = s.copy();
-        m_potentialSpeed = v.copy();
+        //The vectors of the ship are updated in place, so a tick does not create new objects.
+        ps.set(s);
+        m_potentialX = s.x;
+        m_potentialY = s.y;
+        m_potentialVx = v.x;
+        m_potentialVy = v.y;
         m_thrusting = Controller.getThrust(a_actionId);
         m_turning = Controller.getTurning(a_actionId);
 
-        d.rotate(m_turning * steerStep);
+        if(m_headingTable)
+        {
+            m_heading += m_turning;
+            if(m_heading < 0) m_heading += NUM_HEADINGS;
+            else if(m_heading >= NUM_HEADINGS) m_heading -= NUM_HEADINGS;
+            d.set(HEADING_X[m_heading], HEADING_Y[m_heading]);
+        }
+        else d.rotate(m_turning * steerStep);
         if(m_thrusting)
         {
             if(m_remFuel>0)
             {
                 m_remFuel--;  //Reduce fuel if needed.
-                m_potentialSpeed.add(d, PTSPConstants.T * 0.05 / 2);
+                double acceleration = PTSPConstants.T * 0.05 / 2;
+                m_potentialVx += acceleration * d.x;
+                m_potentialVy += acceleration * d.y;
             } else m_thrusting = false;
         }
 
-        m_potentialSpeed.mul(loss);
-        m_potentialPosition.add(m_potentialSpeed);
+        m_potentialVx *= loss;
+        m_potentialVy *= loss;
+        m_potentialX += m_potentialVx;
+        m_potentialY += m_potentialVy;
         m_collisionLastStep = false;
 
 
@@ -325,8 +366,8 @@ public class Ship extends GameObject
         //Check for collisions
         if(!m_collisionLastStep)
         {
-            s = m_potentialPosition.copy();
-            v = m_potentialSpeed.copy();
+            s.set(m_potentialX, m_potentialY);
+            v.set(m_potentialVx, m_potentialVy);
 
             //Update the position of the collision sphere
             updateCollSphere();
@@ -334,38 +375,57 @@ public class Ship extends GameObject
 
 
         //Add the action to the list of actions.
-        m_actionList.add(a_actionId);
+        m_actionLog.add(a_actionId);
 
-        //Check for visited waypoints.
-        for(int i=0; i < m_game.getWaypoints().size(); ++i)
-        {
-            Waypoint way = m_game.getWaypoints().get(i);
-            if(!way.collected)
-            {
-                boolean collected = way.checkCollected(this.s, this.radius);
-                if(collected)
-                {
-                    way.setCollected(true);
-                    m_game.addCollected(i);
-                    addFuel(PTSPConstants.FUEL_WAYPOINT_REWARD);
-                }
-            }
-        }
+        //Check for visited waypoints and collected fuel tanks.
+        m_game.checkPickups(this);
+    }
 
-        //Check for fuel tanks collection
-        for(int i=0; i < m_game.getFuelTanks().size(); ++i)
+    /**
+     * Advances the ship several ticks at once with an action that does not thrust, with the closed form of the motion
+     * of update(): the speed is multiplied by loss every tick, so after n ticks it is v*loss^n and the ship has moved
+     * v*loss*(1-loss^n)/(1-loss). The caller must have checked that the ship has started and that it can not collide,
+     * touch lava or collect anything in these ticks (see Game.coast()).
+     * The result is not bit-exact with calling update() n times, as the rounding of the sums is different: the
+     * position differs in the last digits. The direction of the ship is exact if the heading table is enabled (see
+     * setHeadingTable()), and it is rotated in one go otherwise.
+     * @param a_actionId Action to execute, without thrust.
+     * @param a_numTicks Number of ticks to advance, at least 1.
+     */
+    void coast(int a_actionId, int a_numTicks)
+    {
+        m_thrusting = false;
+        m_turning = Controller.getTurning(a_actionId);
+
+        if(m_headingTable)
         {
-            FuelTank ft = m_game.getFuelTanks().get(i);
-            if(!ft.collected)
-            {
-                boolean collected = ft.checkCollected(this.s, this.radius);
-                if(collected)
-                {
-                    ft.setCollected(true);
-                }
-            }
+            m_heading = (m_heading + (m_turning * a_numTicks) % NUM_HEADINGS + NUM_HEADINGS) % NUM_HEADINGS;
+            d.set(HEADING_X[m_heading], HEADING_Y[m_heading]);
         }
+        else d.rotate(m_turning * a_numTicks * steerStep);
+
+        //Distance moved, in units of the initial speed, after n-1 and n ticks.
+        double lossN = Math.pow(loss, a_numTicks);
+        double movedPrev = (loss - lossN) / (1 - loss);
+        double moved = loss * (1 - lossN) / (1 - loss);
+
+        ps.set(s.x + v.x * movedPrev, s.y + v.y * movedPrev);
+        m_potentialX = s.x + v.x * moved;
+        m_potentialY = s.y + v.y * moved;
+        m_potentialVx = v.x * lossN;
+        m_potentialVy = v.y * lossN;
+        s.set(m_potentialX, m_potentialY);
+        v.set(m_potentialVx, m_potentialVy);
+
+        updateCollPotentialSphere();
+        updateCollSphere();
 
+        m_collisionLastStep = false;
+        m_onLava = false;
+        m_invulnerable = Math.max(0, m_invulnerable - a_numTicks);
+
+        for(int i = 0; i < a_numTicks; ++i)
+            m_actionLog.add(a_actionId);
     }
 
     /**
@@ -373,21 +433,22 @@ public class Ship extends GameObject
      */
     private void checkBoundaries()
     {
-        if(m_potentialPosition.x > m_game.getMap().getMapChar().length-1)
+        Map map = m_game.getMap();
+        if(m_potentialX > map.getMapWidth()-1)
         {
-            m_potentialPosition.x = m_game.getMap().getMapChar().length-1;
+            m_potentialX = map.getMapWidth()-1;
         }
-        else if(m_potentialPosition.x < 0)
+        else if(m_potentialX < 0)
         {
-            m_potentialPosition.x = 0;
+            m_potentialX = 0;
         }
-        else if(m_potentialPosition.y > m_game.getMap().getMapChar()[0].length -1)
+        else if(m_potentialY > map.getMapHeight() -1)
         {
-            m_potentialPosition.y = m_game.getMap().getMapChar()[0].length -1;
+            m_potentialY = map.getMapHeight() -1;
         }
-        else if(m_potentialPosition.y < 0)
+        else if(m_potentialY < 0)
         {
-            m_potentialPosition.y = 0;
+            m_potentialY = 0;
         }
     }
 
@@ -398,27 +459,61 @@ public class Ship extends GameObject
      */
     private int checkCollisions()
     {
+        //The sphere may not be centered in the potential position if checkBoundaries() moved it: take the center from it.
+        Map map = m_game.getMap();
+        double centerX = m_collPotentialSphere[0].x - m_collSphereRelative[0].x;
+        double centerY = m_collPotentialSphere[0].y - m_collSphereRelative[0].y;
+        int last = m_collPotentialSphere.length - 1;
+        if(map.isClearOfObstacles(centerX, centerY))
+        {
+            m_onLava = isLavaInPos(m_collPotentialSphere[last].x, m_collPotentialSphere[last].y);
+            return 0;
+        }
+
+        //Points that the collision grid of the map proves free are not checked. They are inside the map, so m_onLava
+        //must end up as the lava of the last point inside the map among the ones checked and the ones skipped.
+        int free = map.getFreePoints(centerX, centerY);
+        int lavaPoint = -1;
         for(int i = 0; i < m_collSphere.length; ++i)
         {
-            Vector2d v = m_collPotentialSphere[i];
-            int collision = checkCollInPos(v);
+            if((free & (1 << i)) != 0)
+            {
+                lavaPoint = i;
+                continue;
+            }
+
+            Vector2d collPoint = m_collPotentialSphere[i];
+            int collision = 1;
+            int xRound = (int)Math.round(collPoint.x);
+            int yRound = (int)Math.round(collPoint.y);
+            if(!map.isOutsideBounds(xRound, yRound))
+            {
+                collision = map.getCode(xRound, yRound) & Map.CODE_COLLISION_MASK;
+                lavaPoint = i;
+            }
+
             if(collision != 0)
             {
-                Vector2d collPoint = v.copy();
-                Vector2d vToColl = v.subtract(m_potentialPosition);
-                vToColl.normalise();
-                Vector2d velocity = m_potentialSpeed.copy();
-                velocity.normalise();
+                //Same operations as Vector2d.normalise() and dot(), without creating vectors.
+                double toCollX = collPoint.x - m_potentialX;
+                double toCollY = collPoint.y - m_potentialY;
+                double toCollMag = Math.sqrt(toCollX * toCollX + toCollY * toCollY);
+                toCollX /= toCollMag;
+                toCollY /= toCollMag;
+
+                double speedMag = Math.sqrt(m_potentialVx * m_potentialVx + m_potentialVy * m_potentialVy);
+                double velocityX = m_potentialVx / speedMag;
+                double velocityY = m_potentialVy / speedMag;
 
                 //This is to slide when in contact with walls instead of being stuck.
-                double dotProduct = velocity.dot(vToColl);
+                double dotProduct = velocityX * toCollX + velocityY * toCollY;
                 if(dotProduct > 0.5)   //There is actually a collision:
                 {
-                    int t_x =  (int)Math.round(collPoint.x);
-                    int t_y =  (int)Math.round(collPoint.y);
-
                     //Update type of collision
-                    m_lastCollisionType = m_game.getMap().getCollisionType(t_x,t_y);
+                    m_lastCollisionType = map.getCollisionType(xRound, yRound);
+
+                    if(lavaPoint >= 0)
+                        m_onLava = isLavaInPos(m_collPotentialSphere[lavaPoint].x, m_collPotentialSphere[lavaPoint].y);
 
                     //and return it:
                     return collision;
@@ -426,6 +521,8 @@ public class Ship extends GameObject
             }
         }
 
+        if(lavaPoint >= 0)
+            m_onLava = isLavaInPos(m_collPotentialSphere[lavaPoint].x, m_collPotentialSphere[lavaPoint].y);
         return 0;
     }
 
@@ -437,13 +534,17 @@ public class Ship extends GameObject
      */
     public boolean checkCollisionInPosition(Vector2d a_position)
     {
+        if(m_game.getMap().isClearOfObstacles(a_position.x, a_position.y))
+        {
+            int last = m_collSphereRelative.length - 1;
+            m_onLava = isLavaInPos(m_collSphereRelative[last].x + a_position.x, m_collSphereRelative[last].y + a_position.y);
+            return false;
+        }
+
         m_onLava = false;
-        Vector2d position = new Vector2d();
         for(int i = 0; i < m_collSphere.length; ++i)
         {
-            position.x = m_collSphereRelative[i].x + a_position.x;
-            position.y = m_collSphereRelative[i].y + a_position.y;
-            int collision = checkCollInPos(position);
+            int collision = checkCollInPos(m_collSphereRelative[i].x + a_position.x, m_collSphereRelative[i].y + a_position.y);
             if(collision != 0)
                 return true;
         }
@@ -458,15 +559,21 @@ public class Ship extends GameObject
      */
     public int getCollisionTypeInPosition(Vector2d a_position)
     {
-        Vector2d position = new Vector2d();
+        if(m_game.getMap().isClearOfObstacles(a_position.x, a_position.y))
+        {
+            int last = m_collSphereRelative.length - 1;
+            m_onLava = isLavaInPos(m_collSphereRelative[last].x + a_position.x, m_collSphereRelative[last].y + a_position.y);
+            return PTSPConstants.NO_COLLISION_TYPE;
+        }
+
         for(int i = 0; i < m_collSphere.length; ++i)
         {
-            position.x = m_collSphereRelative[i].x + a_position.x;
-            position.y = m_collSphereRelative[i].y + a_position.y;
-            int collision = checkCollInPos(position);
+            double x = m_collSphereRelative[i].x + a_position.x;
+            double y = m_collSphereRelative[i].y + a_position.y;
+            int collision = checkCollInPos(x, y);
             if(collision != 0)
             {
-                return m_game.getMap().getCollisionType((int) Math.round(position.x), (int) Math.round(position.y));
+                return m_game.getMap().getCollisionType((int) Math.round(x), (int) Math.round(y));
             }
 
         }
@@ -476,103 +583,47 @@ public class Ship extends GameObject
     /**
      * Checks if there is a collision in one point in the world.
      * Updates m_onLava, that indicates if the ship is touching any lava surface.
-     * @param a_collPoint Point in the world to check.
+     * @param a_x x coordinate of the point in the world to check.
+     * @param a_y y coordinate of the point in the world to check.
      * @return the type of collision (0: no collision, 1: collision up/down, 2: collision left/right)
      */
-    private int checkCollInPos(Vector2d a_collPoint)
+    private int checkCollInPos(double a_x, double a_y)
     {
-        int xRound = (int)Math.round(a_collPoint.x);
-        int yRound = (int)Math.round(a_collPoint.y);
+        int xRound = (int)Math.round(a_x);
+        int yRound = (int)Math.round(a_y);
 
-        if(m_game.getMap().isOutsideBounds(xRound,yRound))
+        Map map = m_game.getMap();
+        if(map.isOutsideBounds(xRound,yRound))
             return 1;
 
-        //lava?
-        m_onLava = false;
-        if(m_game.getMap().isLava(xRound, yRound))
-            m_onLava = true;
-
-
-        if(m_game.getMap().isObstacle(xRound, yRound))
-        {
-            if(m_game.getMap().isCollisionUpDown(xRound,yRound))
-            {
-                return 1;
-            }
-            else
-            {
-                return 2;
-            }
-        }
-        return 0;
+        //The code of the cell tells if it is lava and, for obstacles, the orientation of the wall.
+        int code = map.getCode(xRound, yRound);
+        m_onLava = (code & Map.CODE_LAVA) != 0;
+        return code & Map.CODE_COLLISION_MASK;
     }
 
     /**
-     * Adds an amount of fuel to the ship. Checks for its maximum: PTSPConstants.INITIAL_FUEL.
-     * @param a_amount amount of fuel to be added.
+     * Checks if one point in the world, known to be inside the map, is a lava surface. When the collision sphere is far
+     * from the obstacles, this gives the value of m_onLava that checking all its points would leave: the one of the last.
+     * @param a_x x coordinate of the point.
+     * @param a_y y coordinate of the point.
+     * @return true if the point is a lava surface.
      */
-    public void addFuel(int a_amount)
+    private boolean isLavaInPos(double a_x, double a_y)
     {
-        m_remFuel = Math.min(m_remFuel + a_amount, PTSPConstants.INITIAL_FUEL);
-
+        return (m_game.getMap().getCode((int)Math.round(a_x), (int)Math.round(a_y)) & Map.CODE_LAVA) != 0;
     }
 
-
     /**
-     * Draws the ship on the screen.
-     * @param g Graphics object.
+     * Adds an amount of fuel to the ship. Checks for its maximum: PTSPConstants.INITIAL_FUEL.
+     * @param a_amount amount of fuel to be added.
      */
-    public void draw(Graphics2D g)
+    public void addFuel(int a_amount)
     {
-        boolean paintIt = true;
-        boolean paintThrust = m_thrusting;
-        if(m_invulnerable > 0 && (m_invulnerable%2==0))
-            paintIt = false;
-
-        if(paintIt)
-        {
-            AffineTransform at = g.getTransform();
-            g.translate(s.x, s.y);
-
-            double rot = Math.atan2(d.y, d.x) + Controller.HALF_PI;
-            g.rotate(rot);
-            g.scale(radius, radius);
-            if(m_damage >= PTSPConstants.MAX_DAMAGE){
-                g.setColor(chassisBrokenColor);
-                paintThrust = false;
-            }
-            else
-                g.setColor(chassisColor);
-            g.fillPolygon(xp, yp, xp.length);
-
-            if (paintThrust) {
-                g.setColor(thrustColor);
-                g.fillPolygon(xpThrust, ypThrust, xpThrust.length);
-            }
+        m_remFuel = Math.min(m_remFuel + a_amount, PTSPConstants.INITIAL_FUEL);
 
-            g.setTransform(at);
-            //printDebug(g);
-        }
     }
 
-    /**
-     * Prints the collision sphere and the center of the ship.
-     * @param g Graphics object.
-     */
-    private void printDebug(Graphics2D g)
-    {
-        //Collision sphere
-        g.setColor(Color.yellow);
-        for(int i = 0; i < m_collSphere.length; ++i)
-        {
-            Vector2d v = m_collSphere[i];
-            g.drawOval((int) Math.round(v.x),(int) Math.round(v.y), 2, 2);
-        }
-
-        //CENTER OF THE SHIP  (real position in map).
-        g.setColor(Color.red);
-        g.drawOval((int) (s.x),(int) (s.y), 2, 2);
-    }
 
     /**
      * Resets the ship.
@@ -584,10 +635,23 @@ public class Ship extends GameObject
     /************* Getters and Setters **********************/
 
     /**
-     * Returns all the actions executed so far.
+     * Returns all the actions executed so far. The list is built from the action log on every call.
      * @return all the actions executed so far.
      */
-    public ArrayList getActionList() {return m_actionList;}
+    public ArrayList getActionList()
+    {
+        int[] actions = m_actionLog.toArray();
+        ArrayList<Integer> actionList = new ArrayList<Integer>(actions.length);
+        for(int i = 0; i < actions.length; ++i)
+            actionList.add(actions[i]);
+        return actionList;
+    }
+
+    /**
+     * Returns the log of all the actions executed so far.
+     * @return the log of all the actions executed so far.
+     */
+    public ActionLog getActionLog() {return m_actionLog;}
 
     /**
      * Returns if there was a collision in the last step.
@@ -605,13 +669,13 @@ public class Ship extends GameObject
      * Gets a copy the position of the ship before checking for collisions.
      * @return the potential position of the ship.
      */
-    public Vector2d getPotentialPosition() {return m_potentialPosition.copy();}
+    public Vector2d getPotentialPosition() {return new Vector2d(m_potentialX, m_potentialY);}
 
     /**
      * Gets a copy of the speed of the ship before checking for collisions.
      * @return the potential velocity of the ship.
      */
-    public Vector2d getPotentialSpeed() {return m_potentialSpeed.copy();}
+    public Vector2d getPotentialSpeed() {return new Vector2d(m_potentialVx, m_potentialVy);}
 
     /**
      * Indicates if the last action involved acceleration.
@@ -655,6 +719,12 @@ public class Ship extends GameObject
      */
     public boolean isOnLava() {return m_onLava;}
 
+    /**
+     * Gets the points of the collision sphere of the ship, in world coordinates (for debug painting).
+     * @return the points of the collision sphere.
+     */
+    Vector2d[] getCollSphere() {return m_collSphere;}
+
     /**
      * Sets if the game has started.
      * @param a_st if the game has started.
@@ -695,7 +765,7 @@ public class Ship extends GameObject
      * Adds a new action to the list of actions executed so far.
      * @param a_action new action to add.
      */
-    public void addAction(int a_action) {m_actionList.add(a_action);}
+    public void addAction(int a_action) {m_actionLog.add(a_action);}
 
     /**
      * Set the invulnerable time to the time given
@@ -703,6 +773,62 @@ public class Ship extends GameObject
      */
     public void setInvulnerableTime(int a_time) {m_invulnerable = a_time;}
 
+    /**
+     * Gets the index of the heading of the ship. The ship can only rotate in steps of steerStep, so there are
+     * NUM_HEADINGS possible headings, and the index is the angle of the heading divided by steerStep.
+     * @return the index of the heading, from 0 to NUM_HEADINGS-1.
+     */
+    public int getHeadingIndex()
+    {
+        if(m_headingTable)
+            return m_heading;
+        return computeHeadingIndex();
+    }
+
+    /**
+     * Computes the index of the heading closest to the direction of the ship.
+     * @return the index of the heading, from 0 to NUM_HEADINGS-1.
+     */
+    private int computeHeadingIndex()
+    {
+        int heading = (int) Math.round(Math.atan2(d.y, d.x) / steerStep) % NUM_HEADINGS;
+        return heading < 0 ? heading + NUM_HEADINGS : heading;
+    }
+
+    /**
+     * Enables or disables the heading table. With the table, the direction of the ship is always one of the
+     * NUM_HEADINGS exact unit vectors, and turning only changes the heading index, instead of rotating the direction
+     * with a sine and a cosine every step. The rotation accumulates rounding errors, so both representations give
+     * slightly different trajectories: games played with the table do not reproduce routes recorded without it.
+     * Enabling the table moves the direction to the closest heading of the table.
+     * @param a_enabled true to use the heading table, false to rotate the direction (default).
+     */
+    public void setHeadingTable(boolean a_enabled)
+    {
+        if(a_enabled)
+        {
+            m_heading = computeHeadingIndex();
+            d.set(HEADING_X[m_heading], HEADING_Y[m_heading]);
+        }
+        m_headingTable = a_enabled;
+    }
+
+    /**
+     * Indicates if the heading table is enabled.
+     * @return true if the direction of the ship is taken from the heading table.
+     */
+    public boolean isHeadingTable() {return m_headingTable;}
+
+    /**
+     * Gets the direction of a heading of the table.
+     * @param a_heading index of the heading, from 0 to NUM_HEADINGS-1.
+     * @return a new vector with the direction of the heading.
+     */
+    public static Vector2d getHeadingDirection(int a_heading)
+    {
+        return new Vector2d(HEADING_X[a_heading], HEADING_Y[a_heading]);
+    }
+
     /**
      * Sets the flag that indicates if the ship is on a lava surface
      */
@@ -717,11 +843,7 @@ public class Ship extends GameObject
     public Ship getCopy(Game a_game)
     {
         Ship copied = new Ship();
-
-        for(int i = 0; i < m_actionList.size(); ++i)
-        {
-            copied.addAction(m_actionList.get(i));
-        }
+        copied.m_actionLog.copyFrom(m_actionLog);
 
         copied.s = this.s.copy();
         copied.v = this.v.copy();
@@ -736,6 +858,8 @@ public class Ship extends GameObject
         copied.setDamage(m_damage);
         copied.setLastCollisionType(m_lastCollisionType);
         copied.setInvulnerableTime(m_invulnerable);
+        copied.m_headingTable = m_headingTable;
+        copied.m_heading = m_heading;
         copied.setLava(m_onLava);
 
         //Create and copy all collision spheres
@@ -745,6 +869,138 @@ public class Ship extends GameObject
         return copied;
     }
 
+    /**
+     * Copies the state of this ship into another ship, without creating new objects. Used by Game.copyInto().
+     * @param a_target ship to copy the state to.
+     */
+    void copyInto(Ship a_target)
+    {
+        a_target.m_actionLog.copyFrom(m_actionLog);
+
+        a_target.s.set(s);
+        a_target.ps.set(ps);
+        a_target.v.set(v);
+        a_target.d.set(d);
+        a_target.radius = radius;
+
+        a_target.m_started = m_started;
+        a_target.m_collisionLastStep = m_collisionLastStep;
+        a_target.m_remFuel = m_remFuel;
+        a_target.m_damage = m_damage;
+        a_target.m_lastCollisionType = m_lastCollisionType;
+        a_target.m_invulnerable = m_invulnerable;
+        a_target.m_onLava = m_onLava;
+        a_target.m_thrusting = m_thrusting;
+        a_target.m_turning = m_turning;
+        a_target.m_headingTable = m_headingTable;
+        a_target.m_heading = m_heading;
+    }
+
+    /**
+     * Stores the state of this ship in a snapshot.
+     * @param a_snapshot snapshot to fill.
+     */
+    void saveState(GameSnapshot a_snapshot)
+    {
+        a_snapshot.m_x = s.x;   a_snapshot.m_y = s.y;
+        a_snapshot.m_px = ps.x; a_snapshot.m_py = ps.y;
+        a_snapshot.m_vx = v.x;  a_snapshot.m_vy = v.y;
+        a_snapshot.m_dx = d.x;  a_snapshot.m_dy = d.y;
+
+        a_snapshot.m_shipStarted = m_started;
+        a_snapshot.m_remFuel = m_remFuel;
+        a_snapshot.m_damage = m_damage;
+        a_snapshot.m_invulnerable = m_invulnerable;
+        a_snapshot.m_lastCollisionType = m_lastCollisionType;
+        a_snapshot.m_collisionLastStep = m_collisionLastStep;
+        a_snapshot.m_onLava = m_onLava;
+        a_snapshot.m_thrusting = m_thrusting;
+        a_snapshot.m_turning = m_turning;
+
+        a_snapshot.m_actions.copyFrom(m_actionLog);
+    }
+
+    /**
+     * Records the state of this ship in the undo journal of the game, for the tick about to be executed.
+     * @param a_journal journal to write to.
+     * @param a_tick index of the tick in the journal.
+     */
+    void journalState(GameJournal a_journal, int a_tick)
+    {
+        double[] doubles = a_journal.m_doubles;
+        int dOff = a_tick * GameJournal.DOUBLES_PER_TICK;
+        doubles[dOff] = s.x;    doubles[dOff+1] = s.y;
+        doubles[dOff+2] = ps.x; doubles[dOff+3] = ps.y;
+        doubles[dOff+4] = v.x;  doubles[dOff+5] = v.y;
+        doubles[dOff+6] = d.x;  doubles[dOff+7] = d.y;
+
+        int[] ints = a_journal.m_ints;
+        int iOff = a_tick * GameJournal.INTS_PER_TICK;
+        ints[iOff] = m_remFuel;
+        ints[iOff+1] = m_damage;
+        ints[iOff+2] = m_invulnerable;
+        ints[iOff+3] = m_lastCollisionType;
+        ints[iOff+4] = m_turning;
+        ints[iOff+5] = (m_started ? 1 : 0) | (m_collisionLastStep ? 2 : 0) | (m_onLava ? 4 : 0) | (m_thrusting ? 8 : 0);
+        ints[iOff+6] = m_actionLog.size();
+    }
+
+    /**
+     * Sets the state of this ship to the one recorded in the undo journal for a tick.
+     * @param a_journal journal to read from.
+     * @param a_tick index of the tick in the journal.
+     */
+    void undoState(GameJournal a_journal, int a_tick)
+    {
+        double[] doubles = a_journal.m_doubles;
+        int dOff = a_tick * GameJournal.DOUBLES_PER_TICK;
+        s.set(doubles[dOff], doubles[dOff+1]);
+        ps.set(doubles[dOff+2], doubles[dOff+3]);
+        v.set(doubles[dOff+4], doubles[dOff+5]);
+        d.set(doubles[dOff+6], doubles[dOff+7]);
+
+        int[] ints = a_journal.m_ints;
+        int iOff = a_tick * GameJournal.INTS_PER_TICK;
+        m_remFuel = ints[iOff];
+        m_damage = ints[iOff+1];
+        m_invulnerable = ints[iOff+2];
+        m_lastCollisionType = ints[iOff+3];
+        m_turning = ints[iOff+4];
+        if(m_headingTable)
+            m_heading = computeHeadingIndex();
+        int flags = ints[iOff+5];
+        m_started = (flags & 1) != 0;
+        m_collisionLastStep = (flags & 2) != 0;
+        m_onLava = (flags & 4) != 0;
+        m_thrusting = (flags & 8) != 0;
+        m_actionLog.truncate(ints[iOff+6]);
+    }
+
+    /**
+     * Sets the state of this ship to the one stored in a snapshot.
+     * @param a_snapshot snapshot to read from.
+     */
+    void restoreState(GameSnapshot a_snapshot)
+    {
+        s.set(a_snapshot.m_x, a_snapshot.m_y);
+        ps.set(a_snapshot.m_px, a_snapshot.m_py);
+        v.set(a_snapshot.m_vx, a_snapshot.m_vy);
+        d.set(a_snapshot.m_dx, a_snapshot.m_dy);
+
+        m_started = a_snapshot.m_shipStarted;
+        m_remFuel = a_snapshot.m_remFuel;
+        m_damage = a_snapshot.m_damage;
+        m_invulnerable = a_snapshot.m_invulnerable;
+        m_lastCollisionType = a_snapshot.m_lastCollisionType;
+        m_collisionLastStep = a_snapshot.m_collisionLastStep;
+        m_onLava = a_snapshot.m_onLava;
+        m_thrusting = a_snapshot.m_thrusting;
+        m_turning = a_snapshot.m_turning;
+        if(m_headingTable)
+            m_heading = computeHeadingIndex();
+        m_actionLog.copyFrom(a_snapshot.m_actions);
+    }
+
     /**
      * Copies an array of positions to the collision sphere of the ship
      * @param a_collRel the array of positions.
@@ -0,0 +1,243 @@
+package framework.core;
+
+import framework.utils.Vector2d;
+
+/**
+ * This class keeps the line of sight of a map, precomputed on a grid of visibility cells, one every CELL_SIZE pixels
+ * (the granularity of the graph of the map, so every graph node is at the anchor of a cell). For the anchor of each
+ * cell, it stores two bitsets: the waypoints and fuel tanks it has line of sight to, and the anchors of the cells around
+ * it, up to RADIUS cells away, it has line of sight to.
+ * Positions are answered by snapping them to the closest anchor, so the answers are those of Map.checkObsFree() from
+ * the anchor, not from the position itself. Positions whose anchor is an obstacle, and points further than RADIUS cells
+ * from the anchor, are checked with Map.checkObsFree() from the position.
+ * Items are numbered as in the game: waypoints first, then fuel tanks, each in the order of their lists.
+ * It is built once per map (see Map.getVisibility()), and it is not modified after that, so it can be used from several
+ * threads.
+ * PTSP-Competition
+ */
+public class VisibilityCache
+{
+    /**
+     * Distance between the anchors of two adjacent cells, in pixels.
+     */
+    public static final int CELL_SIZE = 8;
+
+    /**
+     * Largest distance, in cells along each axis, from a cell to the anchors whose line of sight it stores.
+     */
+    public static final int RADIUS = 3;
+
+    /**
+     * Number of cells along each axis of the window of anchors around a cell (2*RADIUS+1).
+     */
+    private static final int WINDOW = 2 * RADIUS + 1;
+
+    /**
+     * Map where the line of sight is checked.
+     */
+    private final Map m_map;
+
+    /**
+     * Number of cells of the grid (x coordinate).
+     */
+    private final int m_cellsX;
+
+    /**
+     * Number of cells of the grid (y coordinate).
+     */
+    private final int m_cellsY;
+
+    /**
+     * Number of waypoints of the map. Fuel tanks follow them in the bitsets of items.
+     */
+    private final int m_numWaypoints;
+
+    /**
+     * Number of longs of the bitset of items of each cell.
+     */
+    private final int m_words;
+
+    /**
+     * For each cell (row by row), if its anchor is an obstacle, so its line of sight is not stored.
+     */
+    private final boolean[] m_blocked;
+
+    /**
+     * For each cell, bit (dy+RADIUS)*WINDOW + (dx+RADIUS) is set if its anchor has line of sight to the anchor of the
+     * cell dx cells to the right and dy cells down.
+     */
+    private final long[] m_anchorBits;
+
+    /**
+     * For each cell, m_words longs with bit i set if its anchor has line of sight to item i.
+     */
+    private final long[] m_itemBits;
+
+    /**
+     * Time spent building the cache, in nanoseconds.
+     */
+    private final long m_buildNanos;
+
+    /**
+     * Builds the line of sight of the cells of a map. Use Map.getVisibility() instead, that builds it once per map.
+     * @param a_map map to build it for.
+     */
+    VisibilityCache(Map a_map)
+    {
+        long start = System.nanoTime();
+        m_map = a_map;
+        m_cellsX = (a_map.getMapWidth() + CELL_SIZE - 1) / CELL_SIZE;
+        m_cellsY = (a_map.getMapHeight() + CELL_SIZE - 1) / CELL_SIZE;
+        m_numWaypoints = a_map.getWaypointPositions().size();
+        int numItems = m_numWaypoints + a_map.getFuelTankPositions().size();
+        m_words = Math.max(1, (numItems + 63) >> 6);
+
+        int[] itemX = new int[numItems];
+        int[] itemY = new int[numItems];
+        int i = 0;
+        for(Vector2d pos : a_map.getWaypointPositions())
+        {
+            itemX[i] = (int) pos.x;
+            itemY[i++] = (int) pos.y;
+        }
+        for(Vector2d pos : a_map.getFuelTankPositions())
+        {
+            itemX[i] = (int) pos.x;
+            itemY[i++] = (int) pos.y;
+        }
+
+        int numCells = m_cellsX * m_cellsY;
+        m_blocked = new boolean[numCells];
+        m_anchorBits = new long[numCells];
+        m_itemBits = new long[numCells * m_words];
+        for(int cy = 0; cy < m_cellsY; ++cy)
+        {
+            for(int cx = 0; cx < m_cellsX; ++cx)
+            {
+                int cell = cy * m_cellsX + cx;
+                int x = cx * CELL_SIZE, y = cy * CELL_SIZE;
+                if(a_map.isObstacle(x, y))
+                {
+                    m_blocked[cell] = true;
+                    continue;
+                }
+
+                for(i = 0; i < numItems; ++i)
+                {
+                    if(a_map.checkObsFree(x, y, itemX[i], itemY[i]))
+                        m_itemBits[cell * m_words + (i >> 6)] |= (1L << i);
+                }
+
+                long bits = 0;
+                for(int dy = -RADIUS; dy <= RADIUS; ++dy)
+                {
+                    for(int dx = -RADIUS; dx <= RADIUS; ++dx)
+                    {
+                        int ox = cx + dx, oy = cy + dy;
+                        if(ox >= 0 && oy >= 0 && ox < m_cellsX && oy < m_cellsY &&
+                           a_map.checkObsFree(x, y, ox * CELL_SIZE, oy * CELL_SIZE))
+                            bits |= 1L << ((dy + RADIUS) * WINDOW + dx + RADIUS);
+                    }
+                }
+                m_anchorBits[cell] = bits;
+            }
+        }
+        m_buildNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Checks if there is line of sight between a position and a waypoint or a fuel tank of the game.
+     * @param a_origin position to check from.
+     * @param a_item waypoint or fuel tank to check.
+     * @return true if there is line of sight from the anchor of the cell of the position to the item.
+     */
+    public boolean isVisible(Vector2d a_origin, GameObject a_item)
+    {
+        if(a_item instanceof Waypoint)
+            return isItemVisible((int) a_origin.x, (int) a_origin.y, ((Waypoint) a_item).m_index);
+        else if(a_item instanceof FuelTank)
+            return isItemVisible((int) a_origin.x, (int) a_origin.y, m_numWaypoints + ((FuelTank) a_item).m_index);
+        return m_map.LineOfSight(a_origin, a_item.s);
+    }
+
+    /**
+     * Checks if there is line of sight between a position and an item.
+     * @param a_x x coordinate of the position.
+     * @param a_y y coordinate of the position.
+     * @param a_item index of the item: waypoints first, then fuel tanks.
+     * @return true if there is line of sight from the anchor of the cell of the position to the item.
+     */
+    public boolean isItemVisible(int a_x, int a_y, int a_item)
+    {
+        int cell = getCell(a_x, a_y);
+        if(cell == -1)
+        {
+            Vector2d item = getItemPosition(a_item);
+            return m_map.checkObsFree(a_x, a_y, (int) item.x, (int) item.y);
+        }
+        return (m_itemBits[cell * m_words + (a_item >> 6)] & (1L << a_item)) != 0;
+    }
+
+    /**
+     * Checks if there is line of sight between a position and a point of the map, like the position of a graph node.
+     * @param a_x x coordinate of the position.
+     * @param a_y y coordinate of the position.
+     * @param a_toX x coordinate of the point.
+     * @param a_toY y coordinate of the point.
+     * @return true if there is line of sight from the anchor of the cell of the position to the point, if the point is
+     *         an anchor up to RADIUS cells away. Otherwise, the same as Map.checkObsFree() from the position.
+     */
+    public boolean isPointVisible(int a_x, int a_y, int a_toX, int a_toY)
+    {
+        int cell = getCell(a_x, a_y);
+        if(cell != -1 && a_toX % CELL_SIZE == 0 && a_toY % CELL_SIZE == 0)
+        {
+            int dx = a_toX / CELL_SIZE - cell % m_cellsX;
+            int dy = a_toY / CELL_SIZE - cell / m_cellsX;
+            if(dx >= -RADIUS && dx <= RADIUS && dy >= -RADIUS && dy <= RADIUS)
+                return (m_anchorBits[cell] & (1L << ((dy + RADIUS) * WINDOW + dx + RADIUS))) != 0;
+        }
+        return m_map.checkObsFree(a_x, a_y, a_toX, a_toY);
+    }
+
+    /**
+     * Gets the cell whose anchor is closest to a position.
+     * @param a_x x coordinate of the position.
+     * @param a_y y coordinate of the position.
+     * @return the index of the cell (row by row), or -1 if the position is out of the map or its anchor is an obstacle.
+     */
+    public int getCell(int a_x, int a_y)
+    {
+        if(m_map.isOutsideBounds(a_x, a_y))
+            return -1;
+
+        int cx = Math.min((a_x + CELL_SIZE / 2) / CELL_SIZE, m_cellsX - 1);
+        int cy = Math.min((a_y + CELL_SIZE / 2) / CELL_SIZE, m_cellsY - 1);
+        int cell = cy * m_cellsX + cx;
+        return m_blocked[cell] ? -1 : cell;
+    }
+
+    /**
+     * Gets the position of an item.
+     * @param a_item index of the item: waypoints first, then fuel tanks.
+     * @return the position of the item.
+     */
+    private Vector2d getItemPosition(int a_item)
+    {
+        if(a_item < m_numWaypoints)
+            return m_map.getWaypointPositions().get(a_item);
+        return m_map.getFuelTankPositions().get(a_item - m_numWaypoints);
+    }
+
+    /**
+     * Gets the memory used by the bitsets of the cells.
+     * @return the number of bytes used.
+     */
+    public long getBytes() {return m_blocked.length + 8L * (m_anchorBits.length + m_itemBits.length);}
+
+    /**
+     * Gets the time spent building the cache.
+     * @return the time, in nanoseconds.
+     */
+    public long getBuildNanos() {return m_buildNanos;}
+}
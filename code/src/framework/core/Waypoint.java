@@ -1,7 +1,6 @@
 package framework.core;
 
 import framework.utils.Vector2d;
-import java.awt.*;
 
 /**
  * This class represents the Waypoint object, that must be collected by the ship during the game.
@@ -12,9 +11,9 @@ import java.awt.*;
 public class Waypoint extends GameObject
 {
     /**
-     * Indicates if this waypoint has been collected in the game.
+     * Index of this waypoint in the list of the game. Its collected flag is kept by the game.
      */
-    protected boolean collected;
+    protected int m_index;
 
 
     /**
@@ -38,7 +37,6 @@ public class Waypoint extends GameObject
     {
         m_game = game;
         this.s = s;
-        this.collected = false;
         this.radius = RADIUS;
     }
 
@@ -56,43 +54,6 @@ public class Waypoint extends GameObject
         //Not in use, nothing to do here.
     }
 
-    /**
-     *  Draws the waypoint.
-     *  @param g Graphics object.
-     */
-    public void draw(Graphics2D g)
-    {
-        /*if(!collected)
-            g.setColor(Color.red);
-        else
-            g.setColor(Color.blue);
-
-        int drawRadius = Ship.SHIP_RADIUS * radius;
-        g.fillOval((int) (s.x - drawRadius*0.5),(int) (s.y - drawRadius*0.5),drawRadius,drawRadius);
-
-        g.setColor(Color.yellow);
-        g.fillOval((int) (s.x - radius),(int) (s.y - radius),radius,radius);   */
-
-        int drawRadius = Ship.SHIP_RADIUS * radius;
-        if(!collected)
-        {
-            g.setColor(Color.blue);
-            g.fillOval((int) (s.x - drawRadius*0.5),(int) (s.y - drawRadius*0.5),drawRadius,drawRadius);
-            g.setColor(Color.yellow);
-            g.fillOval((int) (s.x),(int) (s.y),radius,radius);
-            g.setColor(Color.black);
-            g.drawOval((int) (s.x - drawRadius*0.5),(int) (s.y - drawRadius*0.5),drawRadius,drawRadius);
-
-        }else{
-            g.setColor(Color.black);
-            g.drawOval((int) (s.x - drawRadius*0.5),(int) (s.y - drawRadius*0.5),drawRadius,drawRadius);
-        }
-
-
-    }
-
-    //
-
     /**
      * Check if this waypoint is collected, given the position of the ship.
      * @param a_pos Position of the ship, or to be checked.
@@ -114,9 +75,9 @@ public class Waypoint extends GameObject
      */
     public void setCollected(boolean coll)
     {
-        if(!collected)
+        if(!isCollected())
         {
-            collected = coll;
+            m_game.setWaypointCollected(m_index, coll);
             m_game.waypointCollected();
         }
     }
@@ -125,7 +86,7 @@ public class Waypoint extends GameObject
      * Indicates if this waypoint is already visted or not.
      * @return if this waypoint has been already collected.
      */
-    public boolean isCollected() {return this.collected;}
+    public boolean isCollected() {return m_game.isWaypointCollected(m_index);}
 
 
     /**
@@ -144,7 +105,7 @@ public class Waypoint extends GameObject
         copied.d = this.d.copy();
         copied.m_game = a_game;
         copied.radius = this.radius;
-        copied.collected = this.collected;
+        copied.m_index = this.m_index;
 
         return copied;
     }
@@ -0,0 +1,149 @@
+package framework.graph;
+
+import framework.core.FuelTank;
+import framework.core.Game;
+import framework.core.Waypoint;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps, for each waypoint and fuel tank of a game, the cost of the shortest path in the graph from every
+ * node to it. They are computed once, with a search from the node closest to each item to the whole graph (see
+ * PathFinder.getDistances()), so the distance from any position to an item is read from the four nodes around the
+ * position, interpolated bilinearly, instead of searching a path.
+ * Items are numbered as in the game: waypoints first, then fuel tanks, each in the order of their lists.
+ * PTSP-Competition
+ */
+public class DistanceFields
+{
+    /**
+     * Graph the distances are computed in.
+     */
+    private Graph m_graph;
+
+    /**
+     * Compressed graph of m_graph.
+     */
+    private NavGraph m_navGraph;
+
+    /**
+     * Number of waypoints of the game. Fuel tanks follow them in m_distances.
+     */
+    private int m_numWaypoints;
+
+    /**
+     * Cost of the path from each node (by index in m_navGraph) to each item, or Float.POSITIVE_INFINITY if there is
+     * no path.
+     */
+    private float[][] m_distances;
+
+    /**
+     * Creates the distance fields of the waypoints and fuel tanks of a game.
+     * @param a_graph Graph of the map of the game.
+     * @param a_game Game with the waypoints and fuel tanks.
+     */
+    public DistanceFields(Graph a_graph, Game a_game)
+    {
+        m_graph = a_graph;
+        m_navGraph = a_graph.getNavGraph();
+        m_numWaypoints = a_game.getWaypoints().size();
+        m_distances = new float[m_numWaypoints + a_game.getFuelTanks().size()][];
+
+        int i = 0;
+        for(Waypoint way : a_game.getWaypoints())
+            m_distances[i++] = computeField(way.s.x, way.s.y);
+        for(FuelTank ft : a_game.getFuelTanks())
+            m_distances[i++] = computeField(ft.s.x, ft.s.y);
+    }
+
+    /**
+     * Computes the cost of the paths from all the nodes to a position.
+     * @param a_x x position in the map.
+     * @param a_y y position in the map.
+     * @return the cost of the path from each node to the node closest to the position.
+     */
+    private float[] computeField(double a_x, double a_y)
+    {
+        Node target = m_graph.getClosestNodeTo(a_x, a_y);
+        if(target == null)
+        {
+            float[] unreachable = new float[m_navGraph.getNumNodes()];
+            Arrays.fill(unreachable, Float.POSITIVE_INFINITY);
+            return unreachable;
+        }
+        return m_graph.getPathFinder().getDistances(target.id());
+    }
+
+    /**
+     * Gets the distance from a position to a waypoint.
+     * @param a_index index of the waypoint in the list of waypoints of the game.
+     * @param a_x x position in the map.
+     * @param a_y y position in the map.
+     * @return the distance, following the graph, or Double.POSITIVE_INFINITY if the waypoint can not be reached.
+     */
+    public double getWaypointDistance(int a_index, double a_x, double a_y)
+    {
+        return getDistance(a_index, a_x, a_y);
+    }
+
+    /**
+     * Gets the distance from a position to a fuel tank.
+     * @param a_index index of the fuel tank in the list of fuel tanks of the game.
+     * @param a_x x position in the map.
+     * @param a_y y position in the map.
+     * @return the distance, following the graph, or Double.POSITIVE_INFINITY if the fuel tank can not be reached.
+     */
+    public double getFuelTankDistance(int a_index, double a_x, double a_y)
+    {
+        return getDistance(m_numWaypoints + a_index, a_x, a_y);
+    }
+
+    /**
+     * Gets the distance from a position to an item. It is interpolated bilinearly from the nodes at the corners of the
+     * cell of the graph that contains the position, ignoring the corners without a node or without a path to the item.
+     * If none of them is valid, it is the distance from the closest node to the position.
+     * @param a_item index of the item: waypoints first, then fuel tanks.
+     * @param a_x x position in the map.
+     * @param a_y y position in the map.
+     * @return the distance, following the graph, or Double.POSITIVE_INFINITY if the item can not be reached.
+     */
+    public double getDistance(int a_item, double a_x, double a_y)
+    {
+        float[] distances = m_distances[a_item];
+        double gx = a_x / NavGraph.GRANULARITY;
+        double gy = a_y / NavGraph.GRANULARITY;
+        int cx = (int) Math.floor(gx);
+        int cy = (int) Math.floor(gy);
+        double fx = gx - cx, fy = gy - cy;
+
+        double sum = 0, weights = 0;
+        for(int corner = 0; corner < 4; ++corner)
+        {
+            int dx = corner & 1, dy = corner >> 1;
+            double weight = (dx == 0 ? 1 - fx : fx) * (dy == 0 ? 1 - fy : fy);
+            if(weight <= 0)
+                continue;
+
+            int node = m_navGraph.getIndex((cx + dx) * NavGraph.GRANULARITY, (cy + dy) * NavGraph.GRANULARITY);
+            if(node != -1 && distances[node] != Float.POSITIVE_INFINITY)
+            {
+                sum += weight * distances[node];
+                weights += weight;
+            }
+        }
+        if(weights > 0)
+            return sum / weights;
+
+        //No corner can be used: take the closest node.
+        Node closest = m_graph.getClosestNodeTo(a_x, a_y);
+        if(closest == null)
+            return Double.POSITIVE_INFINITY;
+        return distances[m_navGraph.getIndexOfId(closest.id())];
+    }
+
+    /**
+     * Gets the number of items (waypoints and fuel tanks) with a distance field.
+     * @return the number of items.
+     */
+    public int getNumItems() {return m_distances.length;}
+}
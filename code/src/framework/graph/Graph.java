@@ -2,10 +2,9 @@ package framework.graph;
 
 import framework.core.Game;
 import framework.core.Map;
-import framework.utils.Vector2d;
+import framework.core.VisibilityCache;
 
 import java.awt.*;
-import java.util.Collection;
 import java.util.HashMap;
 
 /**
@@ -22,28 +21,43 @@ public class Graph
     /**
      * Granularity of the graph (distance between two consecutive nodes, in pixels).
      */
-    public final int GRANULARITY = 8;
+    public final int GRANULARITY = NavGraph.GRANULARITY;
 
     /**
      * Cost of an edge that links two not diagonally adjacent nodes.
      */
-    public final double COST_STRAIGHT = GRANULARITY;
+    public final double COST_STRAIGHT = NavGraph.COST_STRAIGHT;
 
     /**
      * Cost of an edge that links two diagonally adjacent nodes.
      */
-    public final double COST_DIAG = Math.sqrt(GRANULARITY*GRANULARITY + GRANULARITY*GRANULARITY);
+    public final double COST_DIAG = NavGraph.COST_DIAG;
 
     /**
-     * Edges of the graph
+     * Nodes and edges of the graph, shared by all the graphs of the same map.
      */
-    private HashMap<Long, Edge> m_edges;
+    private NavGraph m_navGraph;
+
+    /**
+     * Node objects of the graph, by index in m_navGraph. They are created when they are first requested.
+     */
+    private Node[] m_nodeObjects;
 
     /**
-     * Nodes of the graph.
+     * Edge objects of the graph, by index in m_navGraph. They are created when they are first requested.
+     */
+    private Edge[] m_edgeObjects;
+
+    /**
+     * Nodes of the graph, indexed by their IDs. Only created if getNodes() is called.
      */
     private HashMap<Integer, Node> m_nodes;
 
+    /**
+     * Edges of the graph, indexed by their IDs. Only created if getEdges() is called.
+     */
+    private HashMap<Long, Edge> m_edges;
+
     /**
      * PathFinder class to do... path finding!
      */
@@ -60,176 +74,30 @@ public class Graph
     private Node[][] m_nodesCache;
 
     /**
-     * Constructor of the graph.
+     * Line of sight of the map, used to check the obstacles between a position and the nodes close to it.
+     */
+    private VisibilityCache m_visibility;
+
+    /**
+     * Constructor of the graph. The nodes and edges are only built the first time a graph is created for a map (see
+     * NavGraph.get()).
      * @param a_game Game reference.
      */
     public Graph(Game a_game)
     {
         //Initialise some values.
         m_map = a_game.getMap();
-        m_edges = new HashMap<Long, Edge>();
-        m_nodes = new HashMap<Integer, Node>();
-        int distance = 5;
+        m_navGraph = NavGraph.get(m_map);
+        m_nodeObjects = new Node[m_navGraph.getNumNodes()];
+        m_edgeObjects = new Edge[m_navGraph.getNumEdges()];
 
         m_nodesCache = new Node[m_map.getMapChar().length][m_map.getMapChar()[0].length];
-
-        //Create the nodes:
-        for(int i = 0; i < m_map.getMapChar().length; i+=GRANULARITY)
-        {
-            for(int j = 0; j < m_map.getMapChar()[0].length; j+=GRANULARITY)
-            {
-                if(!m_map.isObstacle(i,j) && !isObstacleClose(i, j, distance) && !a_game.getShip().checkCollisionInPosition(new Vector2d(i,j)))
-                {
-                    addNode(i,j);
-                }
-            }
-        }
-
-        //Create the links between nodes:
-        Collection<Node> nodes = m_nodes.values();
-        for(Node n: nodes)
-        {
-            eightWayConnectivity(n);
-        }
+        m_visibility = m_map.getVisibility();
 
         //Init the PathFinder when the graph is created.
         m_pathFinder = new PathFinder(this);
     }
 
-    /**
-     * Returns true if there exists an obstacle close to the given position, where "close" is defined by a param.
-     * @param x x position in the map.
-     * @param y y position in the map.
-     * @param maxDist maximum distance to check.
-     * @return true if an obstacle exists.
-     */
-    private boolean isObstacleClose(int x, int y, int maxDist)
-    {
-        for(int dist = 1; dist <= maxDist; ++dist)
-        {
-            //up
-            if(y-dist >=0 && m_map.isObstacle(x,y-dist)) return true;
-            //down
-            if(y+dist < m_map.getMapHeight() && m_map.isObstacle(x,y+dist)) return true;
-            //left
-            if(x-dist >=0 && m_map.isObstacle(x-dist,y)) return true;
-            //right
-            if(x+dist < m_map.getMapWidth() && m_map.isObstacle(x+dist,y)) return true;
-            //up-left
-            if(y-dist >=0 && x-dist >=0 && m_map.isObstacle(x-dist,y-dist)) return true;
-            //up-right
-            if(y-dist >=0 && x+dist < m_map.getMapWidth() && m_map.isObstacle(x+dist,y-dist)) return true;
-            //down-left
-            if(y+dist < m_map.getMapHeight() && x-dist >=0 && m_map.isObstacle(x-dist,y+dist)) return true;
-            //down-right
-            if(y+dist < m_map.getMapHeight() && x+dist < m_map.getMapWidth() && m_map.isObstacle(x+dist,y+dist)) return true;
-
-        }
-        //else
-        return false;
-    }
-
-    /**
-     * Links the node given with all the neighbours.
-     * @param n the node to link
-     */
-    private void eightWayConnectivity(Node n)
-    {
-        int x = n.x();
-        int y = n.y();
-
-        //up
-        if(y-GRANULARITY >=0)
-        {
-            int nodeID = existsNode(x,y-GRANULARITY);
-            if(nodeID != -1 && m_map.checkObsFree(x, y, x, y-GRANULARITY))
-                addEdge(n.id(), nodeID, COST_STRAIGHT);
-
-
-            //up+left
-            if(x-GRANULARITY >=0)
-            {
-                nodeID = existsNode(x - GRANULARITY, y - GRANULARITY);
-                if(nodeID != -1 && m_map.checkObsFree(x, y, x- GRANULARITY, y-GRANULARITY))
-                    addEdge(n.id(), nodeID, COST_DIAG);
-            }
-
-            //up+right
-            if(x+GRANULARITY < m_map.getMapWidth())
-            {
-                nodeID = existsNode(x + GRANULARITY, y - GRANULARITY);
-                if(nodeID != -1 && m_map.checkObsFree(x, y, x + GRANULARITY, y - GRANULARITY))
-                    addEdge(n.id(), nodeID, COST_DIAG);
-            }
-
-        }
-
-        //down
-        if(y+GRANULARITY < m_map.getMapHeight())
-        {
-            int nodeID = existsNode(x, y + GRANULARITY);
-            if(nodeID != -1 && m_map.checkObsFree(x, y, x, y + GRANULARITY))
-                addEdge(n.id(), nodeID, COST_STRAIGHT);
-
-
-            //down+left
-            if(x-GRANULARITY >=0)
-            {
-                nodeID = existsNode(x - GRANULARITY, y + GRANULARITY);
-                if(nodeID != -1 && m_map.checkObsFree(x, y, x - GRANULARITY, y + GRANULARITY))
-                    addEdge(n.id(), nodeID, COST_DIAG);
-            }
-
-            //down+right
-            if(x+GRANULARITY < m_map.getMapWidth())
-            {
-                nodeID = existsNode(x + GRANULARITY, y + GRANULARITY);
-                if(nodeID != -1 && m_map.checkObsFree(x, y, x + GRANULARITY, y + GRANULARITY))
-                    addEdge(n.id(), nodeID, COST_DIAG);
-            }
-
-        }
-
-        //left
-        if(x-GRANULARITY >=0)
-        {
-            int nodeID = existsNode(x-GRANULARITY,y);
-            if(nodeID != -1 && m_map.checkObsFree(x, y, x-GRANULARITY, y))
-                addEdge(n.id(), nodeID, COST_STRAIGHT);
-        }
-
-        //right
-        if(x+GRANULARITY < m_map.getMapWidth())
-        {
-            int nodeID = existsNode(x + GRANULARITY, y);
-            if(nodeID != -1 && m_map.checkObsFree(x, y, x + GRANULARITY, y ))
-                addEdge(n.id(), nodeID, COST_STRAIGHT);
-        }
-
-    }
-
-    /**
-     * Adds a new node to the graph in the indicated position.
-     * @param a_x x position in the map.
-     * @param a_y y position in the map.
-     * @return the id of the new node.
-     */
-    private int addNode(int a_x, int a_y)
-    {
-        //calculate an unique ID depending on the coordinates:
-        int id = 100000*(100+a_y) + (10000+a_x);
-        Integer idKey = id;
-
-        if(!m_nodes.containsKey(idKey))
-        {
-            //Not registered, create node and insert it.
-            Node newNode = new Node(id, a_x, a_y);
-            m_nodes.put(idKey, newNode);
-        }
-
-        return id;
-    }
-
     /**
      * Checks if there is an existing node in the given coordinates.
      * @param a_x x coordinate.
@@ -238,77 +106,39 @@ public class Graph
      */
     private int existsNode(int a_x, int a_y)
     {
-    //calculate an unique ID depending on the coordinates:
-        int id = 100000*(100+a_y) + (10000+a_x);
-        Integer idKey = id;
-
-        if(!m_nodes.containsKey(idKey))
-            return -1;
-        else return id;
-    }
-
-    /**
-     * Checks if there is an existing node with the given ID.
-     * @param a_id id of the node of check.
-     * @return If it does not exist, returns -1. Otherwise, return its ID.
-     */
-    private int existsNode(int a_id)
-    {
-        if(!m_nodes.containsKey(a_id))
+        if(m_navGraph.getIndex(a_x, a_y) == -1)
             return -1;
-        else return a_id;
+        else return Node.getId(a_x, a_y);
     }
 
     /**
-     * Adds an edge to the graph.
-     * @param a_aID Id of one of the nodes for this edge.
-     * @param a_bID Id of the other node for this edge.
-     * @param a_cost Cost of the new edge.
+     * Gets the node object of a node of the graph, creating it if needed.
+     * @param a_index index of the node in m_navGraph.
+     * @return the node.
      */
-    private void addEdge(int a_aID, int a_bID, double a_cost)
+    private Node getNodeObject(int a_index)
     {
-        //calculate an unique ID depending on the IDs of the nodes:
-        long id = (100000000L * a_aID) + a_bID;
-        Long idKey = id;
-
-        if(!m_edges.containsKey(idKey))
+        Node node = m_nodeObjects[a_index];
+        if(node == null)
         {
-            //Not registered, create node and insert it.
-            //Get the nodes of the edge
-            Node nodeA = m_nodes.get(a_aID);
-            Node nodeB = m_nodes.get(a_bID);
-
-            if(nodeA != null && nodeB != null)
-            {
-                Edge newEdgeAB = new Edge(id, a_aID, a_bID, a_cost);
-                m_edges.put(idKey, newEdgeAB);
-                nodeA.addEdge(id);
-
-                long id2 = (100000000L * a_bID) + a_aID;
-                Long idKey2 = id2;
-                Edge newEdgeBA = new Edge(id2, a_bID, a_aID, a_cost);
-                m_edges.put(idKey2, newEdgeBA);
-                nodeB.addEdge(id2);
-
-            }
+            int id = m_navGraph.getId(a_index);
+            node = new Node(id, m_navGraph.getX(a_index), m_navGraph.getY(a_index));
+            for(int e = m_navGraph.getFirstEdge(a_index); e < m_navGraph.getEdgeEnd(a_index); ++e)
+                node.addEdge(getEdgeId(id, m_navGraph.getId(m_navGraph.getTarget(e))));
+            m_nodeObjects[a_index] = node;
         }
+        return node;
     }
 
     /**
-     * Checks if there is an existing edge between two nodes.
-     * @param a_aID Id of one of the nodes.
-     * @param a_bID Id of the other node.
-     * @return If it does not exist, returns -1. Otherwise, return its ID.
+     * Calculates the ID of the edge between two nodes.
+     * @param a_aID Id of the node the edge leaves.
+     * @param a_bID Id of the node the edge goes to.
+     * @return the ID of the edge.
      */
-    private long existsEdge(int a_aID, int a_bID)
+    private static long getEdgeId(int a_aID, int a_bID)
     {
-        long id = (100000000L * a_aID) + a_bID;
-        Long idKey = id;
-
-        if(!m_edges.containsKey(idKey))
-        {
-            return -1;
-        }else return id;
+        return (100000000L * a_aID) + a_bID;
     }
 
     /**
@@ -319,17 +149,25 @@ public class Graph
      */
     private Edge getEdge(int a_aID, int a_bID)
     {
-        //calculate an unique ID depending on the nodes:
-        long id = (100000000L * a_aID) + a_bID;
-        Long idKey = id;
+        int a = m_navGraph.getIndexOfId(a_aID);
+        int b = m_navGraph.getIndexOfId(a_bID);
+        if(a == -1 || b == -1)
+            return null;
 
-        if(!m_edges.containsKey(idKey))
+        int e = m_navGraph.getEdge(a, b);
+        if(e == -1)
         {
             //No edge
             return null;
         }
 
-        return m_edges.get(idKey);
+        Edge edge = m_edgeObjects[e];
+        if(edge == null)
+        {
+            edge = new Edge(getEdgeId(a_aID, a_bID), a_aID, a_bID, m_navGraph.getCost(a, b));
+            m_edgeObjects[e] = edge;
+        }
+        return edge;
     }
 
     /**
@@ -339,13 +177,7 @@ public class Graph
      */
     public Edge getEdge(long a_ID)
     {
-        if(!m_edges.containsKey(a_ID))
-        {
-            //No edge
-            return null;
-        }
-
-        return m_edges.get(a_ID);
+        return getEdge((int) (a_ID / 100000000L), (int) (a_ID % 100000000L));
     }
 
     /**
@@ -435,7 +267,9 @@ public class Graph
 
 
     /**
-     * Gets the closest node to a position, from a given position, checking ship radius if desired.
+     * Gets the closest node to a position, from a given position, checking ship radius if desired. Only the positions of
+     * the nodes (multiples of GRANULARITY) are visited, and the line of sight to them is read from the visibility cache
+     * of the map, snapping the position to its visibility cell.
      * @param a_x x position to checck.
      * @param a_y y position to check.
      * @param a_startX x position to start looking from.
@@ -453,11 +287,13 @@ public class Graph
         int yPos = (int)Math.round(a_y);
         double bestDistance = Double.MAX_VALUE;
 
-        for(int x = a_startX; x <= a_endX; ++x)
+        int firstX = Math.max(0, (a_startX + GRANULARITY - 1) / GRANULARITY * GRANULARITY);
+        int firstY = Math.max(0, (a_startY + GRANULARITY - 1) / GRANULARITY * GRANULARITY);
+        for(int x = firstX; x <= a_endX; x += GRANULARITY)
         {
-            for(int y = a_startY; y <= a_endY; ++y)
+            for(int y = firstY; y <= a_endY; y += GRANULARITY)
             {
-                if(x >= 0 && y >= 0 && x < m_map.getMapWidth() && y < m_map.getMapHeight())
+                if(x < m_map.getMapWidth() && y < m_map.getMapHeight())
                 {
                     int nodeID = existsNode(x, y);
                     if(nodeID != -1)
@@ -468,7 +304,7 @@ public class Graph
                         {
                             if(a_checkObsFree)
                             {
-                                if(m_map.checkObsFree(xPos, yPos, n.x(), n.y()))
+                                if(m_visibility.isPointVisible(xPos, yPos, n.x(), n.y()))
                                 {
                                     bestNode = n;
                                     bestDistance = distance;
@@ -504,10 +340,9 @@ public class Graph
      */
     public void draw(Graphics2D g)
     {
-        Collection<Node> nodes = m_nodes.values();
-        for(Node n: nodes)
+        for(int i = 0; i < m_nodeObjects.length; ++i)
         {
-            n.draw(this, g);
+            getNodeObject(i).draw(this, g);
         }
     }
 
@@ -515,31 +350,73 @@ public class Graph
      * Gets an array with all the nodes of the graph.
      * @return an array with all the nodes of the graph.
      */
-    public Object[] getNodesArray() { return m_nodes.values().toArray();}
+    public Object[] getNodesArray() { return getNodes().values().toArray();}
 
     /**
      * Returns the cache of nodes, indexed by their IDs.
      * @return the cache of nodes.
      */
-    public HashMap<Integer, Node> getNodes(){return m_nodes; }
+    public HashMap<Integer, Node> getNodes()
+    {
+        if(m_nodes == null)
+        {
+            m_nodes = new HashMap<Integer, Node>();
+            for(int i = 0; i < m_nodeObjects.length; ++i)
+                m_nodes.put(m_navGraph.getId(i), getNodeObject(i));
+        }
+        return m_nodes;
+    }
 
     /**
      * Gets the edges of the graph, indexed by their IDs.
      * @return the edges of the graph.
      */
-    public HashMap<Long, Edge> getEdges() { return m_edges; }
+    public HashMap<Long, Edge> getEdges()
+    {
+        if(m_edges == null)
+        {
+            m_edges = new HashMap<Long, Edge>();
+            for(int a = 0; a < m_nodeObjects.length; ++a)
+            {
+                for(int e = m_navGraph.getFirstEdge(a); e < m_navGraph.getEdgeEnd(a); ++e)
+                {
+                    Edge edge = getEdge(m_navGraph.getId(a), m_navGraph.getId(m_navGraph.getTarget(e)));
+                    m_edges.put(edge.id(), edge);
+                }
+            }
+        }
+        return m_edges;
+    }
 
     /**
      * Gets the node that corresponds to the given ID.
      * @param a_id ID of the node.
      * @return the node, null if not found by that ID.
      */
-    public Node getNode(int a_id) { return m_nodes.get(a_id); }
+    public Node getNode(int a_id)
+    {
+        int index = m_navGraph.getIndexOfId(a_id);
+        if(index == -1)
+            return null;
+        return getNodeObject(index);
+    }
 
     /**
      * Gets the number of nodes of the graph.
      * @return the number of nodes of the graph.
      */
-    public int getNumNodes() {return m_nodes.size();}
+    public int getNumNodes() {return m_nodeObjects.length;}
+
+    /**
+     * Gets the path finder of the graph, used by getPath().
+     * @return the path finder.
+     */
+    public PathFinder getPathFinder() {return m_pathFinder;}
+
+    /**
+     * Gets the navigable graph in compressed form, shared by all the graphs of the map.
+     * @return the compressed graph.
+     */
+    public NavGraph getNavGraph() {return m_navGraph;}
 
 }
@@ -0,0 +1,591 @@
+package framework.graph;
+
+import framework.core.Map;
+import framework.utils.Vector2d;
+
+import java.util.Arrays;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class is the navigable graph of a map, stored in compressed sparse row (CSR) form: nodes are numbered with dense
+ * indexes, the edges that leave node i are the ones from getFirstEdge(i) to getEdgeEnd(i)-1, and each edge only keeps
+ * its target node and its cost. Nodes are numbered column by column, and the edges of each node are in the order of
+ * the directions of NEIGHBOURS, so the graph only depends on the map.
+ * The graph is immutable and only depends on the map, so it is built once per map and shared (see get()). Graph wraps
+ * it with the Node, Edge and Path objects used by the controllers.
+ * PTSP-Competition
+ */
+public final class NavGraph
+{
+    /**
+     * Granularity of the graph (distance between two consecutive nodes, in pixels).
+     */
+    public static final int GRANULARITY = 8;
+
+    /**
+     * Cost of an edge that links two not diagonally adjacent nodes.
+     */
+    public static final double COST_STRAIGHT = GRANULARITY;
+
+    /**
+     * Cost of an edge that links two diagonally adjacent nodes.
+     */
+    public static final double COST_DIAG = Math.sqrt(GRANULARITY*GRANULARITY + GRANULARITY*GRANULARITY);
+
+    /**
+     * Minimum distance, in pixels, from a node to the closest obstacle in any of the eight directions.
+     */
+    private static final int OBSTACLE_DISTANCE = 5;
+
+    /**
+     * Largest number of edges that leave a node.
+     */
+    private static final int MAX_DEGREE = 8;
+
+    /**
+     * Offsets, in cells, of the neighbours of a node, in the order of its edges: up, up+left, up+right, down, down+left,
+     * down+right, left and right.
+     */
+    private static final int[][] NEIGHBOURS = {{0,-1}, {-1,-1}, {1,-1}, {0,1}, {-1,1}, {1,1}, {-1,0}, {1,0}};
+
+    /**
+     * Index in NEIGHBOURS of the opposite of each direction.
+     */
+    private static final int[] OPPOSITE = {3, 5, 4, 0, 2, 1, 7, 6};
+
+    /**
+     * Number of rows of cells that a task builds without splitting them in smaller bands.
+     */
+    private static final int BAND_ROWS = 4;
+
+    /**
+     * Graphs built or being built, by map. Maps are weak keys, so a graph is dropped with its map (a finished task
+     * does not keep its map). Accesses are synchronized on the table, but the graphs are built outside the lock.
+     */
+    private static final WeakHashMap<Map, FutureTask<NavGraph>> BUILT_GRAPHS =
+            new WeakHashMap<Map, FutureTask<NavGraph>>();
+
+    /**
+     * Number of cells of the grid of nodes (x coordinate), one every GRANULARITY pixels.
+     */
+    private final int m_cellsX;
+
+    /**
+     * Number of cells of the grid of nodes (y coordinate), one every GRANULARITY pixels.
+     */
+    private final int m_cellsY;
+
+    /**
+     * For each cell of the grid (row by row), the index of its node, or -1 if there is no node in it.
+     */
+    private final int[] m_indexOfCell;
+
+    /**
+     * Position of each node in the map (x coordinate).
+     */
+    private final int[] m_x;
+
+    /**
+     * Position of each node in the map (y coordinate).
+     */
+    private final int[] m_y;
+
+    /**
+     * Index of the first edge of each node in m_targets and m_costs. The edges of node i end at m_offsets[i+1].
+     */
+    private final int[] m_offsets;
+
+    /**
+     * Node each edge goes to.
+     */
+    private final int[] m_targets;
+
+    /**
+     * Cost of each edge.
+     */
+    private final float[] m_costs;
+
+    /**
+     * Time spent finding the nodes of the graph, in nanoseconds.
+     */
+    private final long m_nodesNanos;
+
+    /**
+     * Time spent checking the line of sight between neighbour nodes, in nanoseconds.
+     */
+    private final long m_linksNanos;
+
+    /**
+     * Time spent storing the edges, in nanoseconds.
+     */
+    private final long m_edgesNanos;
+
+    /**
+     * Gets the graph of a map, building it the first time it is requested (in the common fork-join pool). The
+     * following calls with the same map return the same instance. The graph is built by the first thread that requests
+     * it; other threads that request the same map wait for it, while the graphs of other maps are built at the same time.
+     * @param a_map map of the graph.
+     * @return the graph of the map.
+     */
+    public static NavGraph get(final Map a_map)
+    {
+        FutureTask<NavGraph> task;
+        boolean owner = false;
+        synchronized(BUILT_GRAPHS)
+        {
+            task = BUILT_GRAPHS.get(a_map);
+            if(task == null)
+            {
+                task = new FutureTask<NavGraph>(new Callable<NavGraph>()
+                {
+                    public NavGraph call()
+                    {
+                        return new NavGraph(a_map, ForkJoinPool.commonPool());
+                    }
+                });
+                BUILT_GRAPHS.put(a_map, task);
+                owner = true;
+            }
+        }
+
+        if(owner)
+            task.run();
+
+        boolean interrupted = false;
+        try
+        {
+            while(true)
+            {
+                try
+                {
+                    return task.get();
+                }
+                catch(InterruptedException e)
+                {
+                    interrupted = true;
+                }
+                catch(ExecutionException e)
+                {
+                    //Forget the failed build, so the graph can be requested again.
+                    synchronized(BUILT_GRAPHS)
+                    {
+                        if(BUILT_GRAPHS.get(a_map) == task)
+                            BUILT_GRAPHS.remove(a_map);
+                    }
+                    if(e.getCause() instanceof Error)
+                        throw (Error) e.getCause();
+                    throw (RuntimeException) e.getCause();
+                }
+            }
+        }
+        finally
+        {
+            if(interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Builds the graph of a map in a given pool, without sharing it. The graph is the same for any pool: a pool with
+     * parallelism 1 builds it sequentially.
+     * @param a_map map of the graph.
+     * @param a_pool pool that builds the bands of rows of the graph.
+     * @return the graph of the map.
+     */
+    public static NavGraph build(Map a_map, ForkJoinPool a_pool)
+    {
+        return new NavGraph(a_map, a_pool);
+    }
+
+    /**
+     * Builds the graph of a map. Use NavGraph.get() instead to share the graph among all the games played in the map.
+     * The two slow phases, finding the nodes and checking the line of sight between neighbours, are split in bands of
+     * rows that run in parallel. The results of each band only depend on the map, and they are put together
+     * sequentially, so the graph does not depend on how the bands are scheduled.
+     * @param a_map map of the graph.
+     * @param a_pool pool that builds the bands of rows of the graph.
+     */
+    private NavGraph(Map a_map, ForkJoinPool a_pool)
+    {
+        long start = System.nanoTime();
+        int width = a_map.getMapWidth();
+        int height = a_map.getMapHeight();
+        m_cellsX = (width + GRANULARITY - 1) / GRANULARITY;
+        m_cellsY = (height + GRANULARITY - 1) / GRANULARITY;
+        m_indexOfCell = new int[m_cellsX * m_cellsY];
+
+        //Find the cells where the ship fits with some room, and number their nodes column by column.
+        a_pool.invoke(new BandTask(a_map, m_indexOfCell, m_cellsX, m_cellsY, null, 0, m_cellsY));
+        int numNodes = 0;
+        for(int cx = 0; cx < m_cellsX; ++cx)
+            for(int cy = 0; cy < m_cellsY; ++cy)
+                if(m_indexOfCell[cy * m_cellsX + cx] != -1)
+                    m_indexOfCell[cy * m_cellsX + cx] = numNodes++;
+
+        m_x = new int[numNodes];
+        m_y = new int[numNodes];
+        for(int cx = 0; cx < m_cellsX; ++cx)
+        {
+            for(int cy = 0; cy < m_cellsY; ++cy)
+            {
+                int index = m_indexOfCell[cy * m_cellsX + cx];
+                if(index != -1)
+                {
+                    m_x[index] = cx * GRANULARITY;
+                    m_y[index] = cy * GRANULARITY;
+                }
+            }
+        }
+        long nodesEnd = System.nanoTime();
+
+        //Check the line of sight between each node and its forward neighbours.
+        boolean[] links = new boolean[numNodes * MAX_DEGREE];
+        a_pool.invoke(new BandTask(a_map, m_indexOfCell, m_cellsX, m_cellsY, links, 0, m_cellsY));
+        long linksEnd = System.nanoTime();
+
+        //Store the edges of each node, in the order of the directions of NEIGHBOURS.
+        int[] targets = new int[numNodes * MAX_DEGREE];
+        m_offsets = new int[numNodes + 1];
+        int edge = 0;
+        for(int a = 0; a < numNodes; ++a)
+        {
+            m_offsets[a] = edge;
+            for(int d = 0; d < NEIGHBOURS.length; ++d)
+            {
+                int b = getIndex(m_x[a] + NEIGHBOURS[d][0] * GRANULARITY, m_y[a] + NEIGHBOURS[d][1] * GRANULARITY);
+                if(b != -1 && (isForward(d) ? links[a * MAX_DEGREE + d] : links[b * MAX_DEGREE + OPPOSITE[d]]))
+                    targets[edge++] = b;
+            }
+        }
+        m_offsets[numNodes] = edge;
+        m_targets = Arrays.copyOf(targets, edge);
+        m_costs = new float[edge];
+        for(int a = 0; a < numNodes; ++a)
+            for(int e = m_offsets[a]; e < m_offsets[a + 1]; ++e)
+                m_costs[e] = (float) getCost(a, m_targets[e]);
+        long end = System.nanoTime();
+
+        m_nodesNanos = nodesEnd - start;
+        m_linksNanos = linksEnd - nodesEnd;
+        m_edgesNanos = end - linksEnd;
+    }
+
+    /**
+     * Checks if a cell of the grid can have a node: the ship fits in it with some room.
+     * @param a_map map of the graph.
+     * @param a_cx x coordinate of the cell.
+     * @param a_cy y coordinate of the cell.
+     * @return true if the cell has a node.
+     */
+    private static boolean isNodeCell(Map a_map, int a_cx, int a_cy)
+    {
+        int x = a_cx * GRANULARITY, y = a_cy * GRANULARITY;
+        return !a_map.isObstacle(x, y) && !isObstacleClose(a_map, x, y, OBSTACLE_DISTANCE) &&
+               !a_map.checkCollisionInPosition(new Vector2d(x, y));
+    }
+
+    /**
+     * Checks the line of sight between the nodes of a row of cells and their forward neighbours (see isForward()).
+     * Two nodes are linked if any of them has line of sight to the other.
+     * @param a_map map of the graph.
+     * @param a_indexOfCell index of the node of each cell, or -1 if there is no node in it.
+     * @param a_cellsX number of cells of the grid (x coordinate).
+     * @param a_cellsY number of cells of the grid (y coordinate).
+     * @param a_links if each node is linked to its neighbour in each forward direction, MAX_DEGREE entries per node.
+     * @param a_cy y coordinate of the row of cells.
+     */
+    private static void linkRow(Map a_map, int[] a_indexOfCell, int a_cellsX, int a_cellsY, boolean[] a_links, int a_cy)
+    {
+        for(int cx = 0; cx < a_cellsX; ++cx)
+        {
+            int a = a_indexOfCell[a_cy * a_cellsX + cx];
+            if(a == -1)
+                continue;
+
+            int ax = cx * GRANULARITY, ay = a_cy * GRANULARITY;
+            for(int d = 0; d < NEIGHBOURS.length; ++d)
+            {
+                int bcx = cx + NEIGHBOURS[d][0], bcy = a_cy + NEIGHBOURS[d][1];
+                if(!isForward(d) || bcx < 0 || bcx >= a_cellsX || bcy >= a_cellsY ||
+                   a_indexOfCell[bcy * a_cellsX + bcx] == -1)
+                    continue;
+
+                int bx = bcx * GRANULARITY, by = bcy * GRANULARITY;
+                a_links[a * MAX_DEGREE + d] = a_map.checkObsFree(ax, ay, bx, by) || a_map.checkObsFree(bx, by, ax, ay);
+            }
+        }
+    }
+
+    /**
+     * Indicates if a direction of NEIGHBOURS goes forward (down, or right in the same row). Each link between two
+     * nodes is checked from the node it goes forward from.
+     * @param a_direction index of the direction in NEIGHBOURS.
+     * @return true if the direction goes forward.
+     */
+    private static boolean isForward(int a_direction)
+    {
+        return NEIGHBOURS[a_direction][1] > 0 || (NEIGHBOURS[a_direction][1] == 0 && NEIGHBOURS[a_direction][0] > 0);
+    }
+
+    /**
+     * Returns true if there exists an obstacle close to the given position, where "close" is defined by a param.
+     * @param a_map map to check.
+     * @param x x position in the map.
+     * @param y y position in the map.
+     * @param maxDist maximum distance to check.
+     * @return true if an obstacle exists.
+     */
+    private static boolean isObstacleClose(Map a_map, int x, int y, int maxDist)
+    {
+        for(int dist = 1; dist <= maxDist; ++dist)
+        {
+            //up
+            if(y-dist >=0 && a_map.isObstacle(x,y-dist)) return true;
+            //down
+            if(y+dist < a_map.getMapHeight() && a_map.isObstacle(x,y+dist)) return true;
+            //left
+            if(x-dist >=0 && a_map.isObstacle(x-dist,y)) return true;
+            //right
+            if(x+dist < a_map.getMapWidth() && a_map.isObstacle(x+dist,y)) return true;
+            //up-left
+            if(y-dist >=0 && x-dist >=0 && a_map.isObstacle(x-dist,y-dist)) return true;
+            //up-right
+            if(y-dist >=0 && x+dist < a_map.getMapWidth() && a_map.isObstacle(x+dist,y-dist)) return true;
+            //down-left
+            if(y+dist < a_map.getMapHeight() && x-dist >=0 && a_map.isObstacle(x-dist,y+dist)) return true;
+            //down-right
+            if(y+dist < a_map.getMapHeight() && x+dist < a_map.getMapWidth() && a_map.isObstacle(x+dist,y+dist)) return true;
+        }
+        //else
+        return false;
+    }
+
+    /**
+     * Gets the cost of going from one node to an adjacent one, with the same precision as the edges of Graph.
+     * @param a_a index of one of the nodes.
+     * @param a_b index of the other node.
+     * @return COST_DIAG if the nodes are diagonally adjacent, COST_STRAIGHT otherwise.
+     */
+    public double getCost(int a_a, int a_b)
+    {
+        return (m_x[a_a] != m_x[a_b] && m_y[a_a] != m_y[a_b]) ? COST_DIAG : COST_STRAIGHT;
+    }
+
+    /**
+     * Gets the index of the node in a position of the map.
+     * @param a_x x position in the map.
+     * @param a_y y position in the map.
+     * @return the index of the node, or -1 if there is no node in that position.
+     */
+    public int getIndex(int a_x, int a_y)
+    {
+        if(a_x < 0 || a_y < 0 || a_x % GRANULARITY != 0 || a_y % GRANULARITY != 0)
+            return -1;
+        int cx = a_x / GRANULARITY, cy = a_y / GRANULARITY;
+        if(cx >= m_cellsX || cy >= m_cellsY)
+            return -1;
+        return m_indexOfCell[cy * m_cellsX + cx];
+    }
+
+    /**
+     * Gets the index of the node with an id (see Node.getId()).
+     * @param a_id id of the node.
+     * @return the index of the node, or -1 if there is no node with that id.
+     */
+    public int getIndexOfId(int a_id)
+    {
+        return getIndex(Node.getX(a_id), Node.getY(a_id));
+    }
+
+    /**
+     * Gets the id of a node (see Node.getId()).
+     * @param a_index index of the node.
+     * @return the id of the node.
+     */
+    public int getId(int a_index) {return Node.getId(m_x[a_index], m_y[a_index]);}
+
+    /**
+     * Gets the index of the edge that goes from one node to another.
+     * @param a_a index of the node the edge leaves.
+     * @param a_b index of the node the edge goes to.
+     * @return the index of the edge, or -1 if the nodes are not linked.
+     */
+    public int getEdge(int a_a, int a_b)
+    {
+        for(int e = m_offsets[a_a]; e < m_offsets[a_a + 1]; ++e)
+            if(m_targets[e] == a_b)
+                return e;
+        return -1;
+    }
+
+    /**
+     * Gets the number of nodes of the graph.
+     * @return the number of nodes.
+     */
+    public int getNumNodes() {return m_x.length;}
+
+    /**
+     * Gets the number of edges of the graph. Each link between two nodes is formed by two edges, one in each direction.
+     * @return the number of edges.
+     */
+    public int getNumEdges() {return m_targets.length;}
+
+    /**
+     * Gets the position of a node in the map (x coordinate).
+     * @param a_index index of the node.
+     * @return the x position of the node.
+     */
+    public int getX(int a_index) {return m_x[a_index];}
+
+    /**
+     * Gets the position of a node in the map (y coordinate).
+     * @param a_index index of the node.
+     * @return the y position of the node.
+     */
+    public int getY(int a_index) {return m_y[a_index];}
+
+    /**
+     * Gets the index of the first edge that leaves a node.
+     * @param a_index index of the node.
+     * @return the index of its first edge.
+     */
+    public int getFirstEdge(int a_index) {return m_offsets[a_index];}
+
+    /**
+     * Gets the index after the last edge that leaves a node.
+     * @param a_index index of the node.
+     * @return the index after its last edge.
+     */
+    public int getEdgeEnd(int a_index) {return m_offsets[a_index + 1];}
+
+    /**
+     * Gets the node an edge goes to.
+     * @param a_edge index of the edge.
+     * @return the index of the target node.
+     */
+    public int getTarget(int a_edge) {return m_targets[a_edge];}
+
+    /**
+     * Gets the cost of an edge.
+     * @param a_edge index of the edge.
+     * @return the cost of the edge.
+     */
+    public float getEdgeCost(int a_edge) {return m_costs[a_edge];}
+
+    /**
+     * Gets the time spent finding the nodes of the graph when it was built.
+     * @return the time, in nanoseconds.
+     */
+    public long getNodesNanos() {return m_nodesNanos;}
+
+    /**
+     * Gets the time spent checking the line of sight between neighbour nodes when the graph was built.
+     * @return the time, in nanoseconds.
+     */
+    public long getLinksNanos() {return m_linksNanos;}
+
+    /**
+     * Gets the time spent storing the edges when the graph was built.
+     * @return the time, in nanoseconds.
+     */
+    public long getEdgesNanos() {return m_edgesNanos;}
+
+    /**
+     * Task that finds the nodes of a band of rows of cells (marking the cells with a node with 0 in the index of each
+     * cell, and the others with -1) or, once the nodes are numbered, checks their links. Large bands are split in two.
+     */
+    private static final class BandTask extends RecursiveAction
+    {
+        /**
+         * Serial version of the class (tasks are never serialized).
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Map of the graph.
+         */
+        private final Map m_map;
+
+        /**
+         * Index of the node of each cell of the grid, row by row.
+         */
+        private final int[] m_indexOfCell;
+
+        /**
+         * Number of cells of the grid (x coordinate).
+         */
+        private final int m_cellsX;
+
+        /**
+         * Number of cells of the grid (y coordinate).
+         */
+        private final int m_cellsY;
+
+        /**
+         * If each node is linked to its neighbour in each forward direction, or null to find the nodes.
+         */
+        private final boolean[] m_links;
+
+        /**
+         * First row of cells of the band.
+         */
+        private final int m_fromRow;
+
+        /**
+         * Row of cells after the last one of the band.
+         */
+        private final int m_toRow;
+
+        /**
+         * Creates a task for a band of rows.
+         * @param a_map map of the graph.
+         * @param a_indexOfCell index of the node of each cell of the grid, row by row.
+         * @param a_cellsX number of cells of the grid (x coordinate).
+         * @param a_cellsY number of cells of the grid (y coordinate).
+         * @param a_links if each node is linked to its neighbour in each forward direction, or null to find the nodes.
+         * @param a_fromRow first row of cells of the band.
+         * @param a_toRow row of cells after the last one of the band.
+         */
+        private BandTask(Map a_map, int[] a_indexOfCell, int a_cellsX, int a_cellsY, boolean[] a_links,
+                         int a_fromRow, int a_toRow)
+        {
+            m_map = a_map;
+            m_indexOfCell = a_indexOfCell;
+            m_cellsX = a_cellsX;
+            m_cellsY = a_cellsY;
+            m_links = a_links;
+            m_fromRow = a_fromRow;
+            m_toRow = a_toRow;
+        }
+
+        /**
+         * Builds the band, or splits it in two if it is too large.
+         */
+        @Override
+        protected void compute()
+        {
+            if(m_toRow - m_fromRow > BAND_ROWS)
+            {
+                int middle = (m_fromRow + m_toRow) >>> 1;
+                invokeAll(new BandTask(m_map, m_indexOfCell, m_cellsX, m_cellsY, m_links, m_fromRow, middle),
+                          new BandTask(m_map, m_indexOfCell, m_cellsX, m_cellsY, m_links, middle, m_toRow));
+                return;
+            }
+
+            for(int cy = m_fromRow; cy < m_toRow; ++cy)
+            {
+                if(m_links == null)
+                {
+                    for(int cx = 0; cx < m_cellsX; ++cx)
+                        m_indexOfCell[cy * m_cellsX + cx] = isNodeCell(m_map, cx, cy) ? 0 : -1;
+                }
+                else linkRow(m_map, m_indexOfCell, m_cellsX, m_cellsY, m_links, cy);
+            }
+        }
+    }
+}
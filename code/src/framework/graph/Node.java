@@ -76,6 +76,37 @@ public class Node implements Comparable
         m_g = m_h = m_f = Double.MAX_VALUE;
     }
 
+    /**
+     * Gets the id of the node in a position of the map. Ids are unique for positions from (-10000,-100) to (89999,21374).
+     * @param a_x X-position of the node in the map.
+     * @param a_y Y-position of the node in the map.
+     * @return the id of the node.
+     */
+    public static int getId(int a_x, int a_y)
+    {
+        return 100000*(100+a_y) + (10000+a_x);
+    }
+
+    /**
+     * Gets the x-position in the map of the node with a given id.
+     * @param a_id id of the node.
+     * @return the x-position of the node.
+     */
+    public static int getX(int a_id)
+    {
+        return a_id % 100000 - 10000;
+    }
+
+    /**
+     * Gets the y-position in the map of the node with a given id.
+     * @param a_id id of the node.
+     * @return the y-position of the node.
+     */
+    public static int getY(int a_id)
+    {
+        return a_id / 100000 - 100;
+    }
+
     /**
      * Draws the node on the screen.
      * @param a_graph Graph that this node belongs to.
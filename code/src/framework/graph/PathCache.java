@@ -0,0 +1,357 @@
+package framework.graph;
+
+import java.util.Arrays;
+
+/**
+ * This class caches the paths found by a PathFinder, up to a budget of memory. Each path is stored once, as the array
+ * of the indexes of its nodes in the NavGraph (an empty array if there is no path), and it is found by its origin and
+ * destination in an open addressing hash table.
+ * When a new path does not fit in the budget, old paths are evicted with the CLOCK algorithm: a hand goes around the
+ * entries, giving a second chance to the ones that were added or used since it last passed them, and evicting the
+ * first one that was not. The memory used by each entry is estimated from the size of its array and of its slots in the tables.
+ * A cache can be shared by the path finders of graphs of the same map. This class is not thread-safe.
+ * PTSP-Competition
+ */
+public class PathCache
+{
+    /**
+     * Default budget of a cache, in bytes.
+     */
+    public static final long DEFAULT_BUDGET = 4L << 20;
+
+    /**
+     * Estimated bytes used by an entry, besides 4 bytes per node of its path: the header of its array and its slots in
+     * the tables of the cache.
+     */
+    private static final int ENTRY_BYTES = 48;
+
+    /**
+     * Initial number of entries of the tables.
+     */
+    private static final int INITIAL_ENTRIES = 64;
+
+    /**
+     * Maximum number of bytes used by the entries.
+     */
+    private final long m_budget;
+
+    /**
+     * Number of bytes used by the entries.
+     */
+    private long m_bytes;
+
+    /**
+     * Key (origin and destination) of each entry.
+     */
+    private long[] m_keys;
+
+    /**
+     * Nodes of the path of each entry, or null if the entry is free.
+     */
+    private int[][] m_paths;
+
+    /**
+     * Reference bit of each entry: set when it is used, cleared when the hand of the clock passes it.
+     */
+    private boolean[] m_referenced;
+
+    /**
+     * Number of entries used, free or not. Entries from m_numEntries on have never been used.
+     */
+    private int m_numEntries;
+
+    /**
+     * Free entries, below m_numEntries. Only the first m_numFree are used.
+     */
+    private int[] m_free;
+
+    /**
+     * Number of free entries in m_free.
+     */
+    private int m_numFree;
+
+    /**
+     * Position of the hand of the clock, in the entries.
+     */
+    private int m_hand;
+
+    /**
+     * Hash table with linear probing: 1 + the index of the entry of each key, or 0 if the slot is empty.
+     */
+    private int[] m_table;
+
+    /**
+     * Number of paths in the cache.
+     */
+    private int m_size;
+
+    /**
+     * Number of lookups that found their path.
+     */
+    private long m_hits;
+
+    /**
+     * Number of lookups that did not find their path.
+     */
+    private long m_misses;
+
+    /**
+     * Number of paths evicted to make room for others.
+     */
+    private long m_evictions;
+
+    /**
+     * Creates an empty cache.
+     * @param a_budget maximum number of bytes used by the paths cached.
+     */
+    public PathCache(long a_budget)
+    {
+        m_budget = a_budget;
+        m_keys = new long[INITIAL_ENTRIES];
+        m_paths = new int[INITIAL_ENTRIES][];
+        m_referenced = new boolean[INITIAL_ENTRIES];
+        m_free = new int[INITIAL_ENTRIES];
+        m_table = new int[2 * INITIAL_ENTRIES];
+    }
+
+    /**
+     * Gets a path from the cache.
+     * @param a_origin index of the origin node.
+     * @param a_destination index of the destination node.
+     * @return the indexes of the nodes of the path, from the origin to the destination (empty if there is no path),
+     *         or null if the path is not in the cache. The array must not be modified.
+     */
+    public int[] get(int a_origin, int a_destination)
+    {
+        int slot = findSlot(getKey(a_origin, a_destination));
+        if(m_table[slot] == 0)
+        {
+            m_misses++;
+            return null;
+        }
+
+        int entry = m_table[slot] - 1;
+        m_referenced[entry] = true;
+        m_hits++;
+        return m_paths[entry];
+    }
+
+    /**
+     * Adds a path to the cache, evicting other paths if needed. Paths larger than the budget are not cached.
+     * @param a_origin index of the origin node.
+     * @param a_destination index of the destination node.
+     * @param a_path indexes of the nodes of the path, from the origin to the destination (empty if there is no path).
+     *               The array is kept by the cache, so it must not be modified.
+     */
+    public void put(int a_origin, int a_destination, int[] a_path)
+    {
+        long bytes = getBytes(a_path);
+        if(bytes > m_budget)
+            return;
+
+        long key = getKey(a_origin, a_destination);
+        int slot = findSlot(key);
+        if(m_table[slot] != 0)
+        {
+            //Replace the path already cached.
+            int entry = m_table[slot] - 1;
+            m_bytes += bytes - getBytes(m_paths[entry]);
+            m_paths[entry] = a_path;
+            m_referenced[entry] = true;
+        }
+        else
+        {
+            int entry = newEntry();
+            m_keys[entry] = key;
+            m_paths[entry] = a_path;
+            m_referenced[entry] = true;
+            m_bytes += bytes;
+            m_size++;
+
+            if(2 * m_size > m_table.length)
+                resizeTable(2 * m_table.length);
+            else
+                m_table[slot] = entry + 1;
+        }
+
+        while(m_bytes > m_budget)
+            evictOne();
+    }
+
+    /**
+     * Removes all the paths of the cache. The counters are not reset.
+     */
+    public void clear()
+    {
+        Arrays.fill(m_paths, 0, m_numEntries, null);
+        Arrays.fill(m_table, 0);
+        m_numEntries = m_numFree = m_hand = m_size = 0;
+        m_bytes = 0;
+    }
+
+    /**
+     * Evicts the first entry the hand of the clock finds that was not used since the last time the hand passed it.
+     */
+    private void evictOne()
+    {
+        while(true)
+        {
+            if(m_hand >= m_numEntries)
+                m_hand = 0;
+
+            int entry = m_hand++;
+            if(m_paths[entry] == null)
+                continue;
+
+            if(m_referenced[entry])
+                m_referenced[entry] = false;
+            else
+            {
+                removeEntry(entry);
+                m_evictions++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes an entry from the hash table and frees it.
+     * @param a_entry index of the entry.
+     */
+    private void removeEntry(int a_entry)
+    {
+        //Backward shift deletion: move up the keys of the same run that are past their home slot.
+        int mask = m_table.length - 1;
+        int slot = findSlot(m_keys[a_entry]);
+        int next = (slot + 1) & mask;
+        while(m_table[next] != 0)
+        {
+            int home = getHome(m_keys[m_table[next] - 1]);
+            if(((next - home) & mask) >= ((next - slot) & mask))
+            {
+                m_table[slot] = m_table[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        m_table[slot] = 0;
+
+        m_bytes -= getBytes(m_paths[a_entry]);
+        m_paths[a_entry] = null;
+        m_free[m_numFree++] = a_entry;
+        m_size--;
+    }
+
+    /**
+     * Gets a free entry, growing the arrays of entries if they are full.
+     * @return the index of the entry.
+     */
+    private int newEntry()
+    {
+        if(m_numFree > 0)
+            return m_free[--m_numFree];
+
+        if(m_numEntries == m_paths.length)
+        {
+            int capacity = 2 * m_paths.length;
+            m_keys = Arrays.copyOf(m_keys, capacity);
+            m_paths = Arrays.copyOf(m_paths, capacity);
+            m_referenced = Arrays.copyOf(m_referenced, capacity);
+            m_free = Arrays.copyOf(m_free, capacity);
+        }
+        return m_numEntries++;
+    }
+
+    /**
+     * Rebuilds the hash table with a new size, with all the entries in use.
+     * @param a_size new size of the table, a power of two.
+     */
+    private void resizeTable(int a_size)
+    {
+        m_table = new int[a_size];
+        for(int entry = 0; entry < m_numEntries; ++entry)
+            if(m_paths[entry] != null)
+                m_table[findSlot(m_keys[entry])] = entry + 1;
+    }
+
+    /**
+     * Finds the slot of the hash table of a key: the one that holds it, or the empty one where it would go.
+     * @param a_key key to find.
+     * @return the slot of the key.
+     */
+    private int findSlot(long a_key)
+    {
+        int mask = m_table.length - 1;
+        int slot = getHome(a_key);
+        while(m_table[slot] != 0 && m_keys[m_table[slot] - 1] != a_key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Gets the first slot of the hash table where a key is looked for.
+     * @param a_key the key.
+     * @return the home slot of the key.
+     */
+    private int getHome(long a_key)
+    {
+        return (int) ((a_key * 0x9E3779B97F4A7C15L) >>> 32) & (m_table.length - 1);
+    }
+
+    /**
+     * Gets the key of a path.
+     * @param a_origin index of the origin node.
+     * @param a_destination index of the destination node.
+     * @return the key of the path.
+     */
+    private static long getKey(int a_origin, int a_destination)
+    {
+        return ((long) a_origin << 32) | (a_destination & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the estimated memory used by an entry.
+     * @param a_path path of the entry.
+     * @return the bytes used by the entry.
+     */
+    private static long getBytes(int[] a_path)
+    {
+        return ENTRY_BYTES + 4L * a_path.length;
+    }
+
+    /**
+     * Gets the maximum number of bytes used by the paths cached.
+     * @return the budget of the cache, in bytes.
+     */
+    public long getBudget() {return m_budget;}
+
+    /**
+     * Gets the estimated number of bytes used by the paths cached.
+     * @return the bytes used.
+     */
+    public long getBytes() {return m_bytes;}
+
+    /**
+     * Gets the number of paths in the cache.
+     * @return the number of paths cached.
+     */
+    public int size() {return m_size;}
+
+    /**
+     * Gets the number of lookups that found their path.
+     * @return the number of hits.
+     */
+    public long getHits() {return m_hits;}
+
+    /**
+     * Gets the number of lookups that did not find their path.
+     * @return the number of misses.
+     */
+    public long getMisses() {return m_misses;}
+
+    /**
+     * Gets the number of paths evicted to make room for others.
+     * @return the number of evictions.
+     */
+    public long getEvictions() {return m_evictions;}
+}
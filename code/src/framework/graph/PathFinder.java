@@ -1,10 +1,16 @@
 package framework.graph;
 
-import java.util.*;
+import java.util.Arrays;
 
 /**
  * Class for pathfinding. This class may be used by the controllers in order to navigate through the map. This class uses
  * a grid-based graph created over the navigable parts of the map.
+ * The A* search works on the compressed graph (see NavGraph): the costs, parents and state of the nodes are kept in
+ * arrays indexed by node, that are reused by all the searches. Instead of clearing them, each search has a generation
+ * number, and a node is only considered visited if its stamp is the current generation. The open set is a binary heap
+ * of node indexes that keeps the position of each node, so the cost of a node in the heap can be decreased in place.
+ * A search does not allocate anything but the path it returns. The paths found are kept in a PathCache, that can be
+ * replaced or disabled with setPathCache(). This class is not thread-safe.
  * PTSP-Competition
  * Created by Diego Perez, University of Essex.
  * Date: 20/12/11
@@ -12,237 +18,189 @@ import java.util.*;
 public class PathFinder
 {
     /**
-     * Graph to be used for the path finding.
+     * Position in the heap of a node that is closed (its shortest path is known).
      */
-    private Graph m_graph;
+    private static final int CLOSED = -1;
 
     /**
-     * Cache of shortest path from node i (index of map) to the others
+     * Nodes of a path that does not exist, as stored in the cache.
      */
-    private TreeMap<Integer, TreeMap<Integer, Path>> m_shortestPaths;
+    private static final int[] NO_PATH = new int[0];
 
     /**
-     * Constructor of the pathfinder.
-     * @param a_graph Graph of the game.
+     * Graph to be used for the path finding.
      */
-    public PathFinder(Graph a_graph)
-    {
-        m_graph = a_graph;
-        m_shortestPaths = new TreeMap<Integer, TreeMap<Integer, Path>>();
-
-        Object []nodes = m_graph.getNodesArray();
-        int numNodes = nodes.length;
-
-        //Init paths
-        for(int i = 0; i < numNodes; ++i)
-        {
-            Node n = (Node)nodes[i];
-            initShortestPaths(n);
-        }
-    }
+    private Graph m_graph;
 
     /**
-     * Initializes the cache of shortest paths from a given node.
-     * @param a_origin node the paths start in.
+     * Compressed graph of m_graph, where the searches are done.
      */
-    private void initShortestPaths(Node a_origin)
-    {
-        for(long edgeId:a_origin.getEdgesFromNode())
-        {
-            Edge edg = m_graph.getEdge(edgeId);
-            int connectedID = edg.aId() != a_origin.id() ? edg.aId() : edg.bId();
-            assignCost(a_origin.id(), connectedID, edg.cost());
-        }
-
-        //Default one, to itself
-        assignCost(a_origin.id(), a_origin.id(), 0);
-    }
+    private NavGraph m_navGraph;
 
     /**
-     * Assigns a cost to a path between origin and destination.
-     * @param a_originID Origin node id.
-     * @param a_destID Destination node id.
-     * @param a_cost Cost from a_originID to a_destID
+     * Cache of the paths found, or null if paths are not cached.
      */
-    private void assignCost(int a_originID, int a_destID, double a_cost)
-    {
-        //1st, get the origin:
-        TreeMap<Integer, Path> originPaths = m_shortestPaths.get(a_originID);
-        if(originPaths == null)
-        {
-             originPaths = new TreeMap<Integer, Path>();
+    private PathCache m_cache;
 
-             //There will be no destination, for sure, so lets assign it.
-             Path newPath = new Path(a_originID, a_destID, a_cost);
-             originPaths.put(a_destID, newPath);
+    /**
+     * Generation of the current search.
+     */
+    private int m_generation;
 
-             //To the array!
-             m_shortestPaths.put(a_originID, originPaths);
+    /**
+     * Generation of the last search that visited each node. The other arrays are only valid for a node if its stamp
+     * is the current generation.
+     */
+    private int[] m_stamp;
 
-             //And that's all
-             return;
-        }
+    /**
+     * Cost of the best path found from the origin to each node.
+     */
+    private float[] m_g;
 
-        //2nd, destination
-        Path pathToDest = originPaths.get(a_destID);
-        if(pathToDest == null)
-        {
-            //no path, create it and insert.
-            Path newPath = new Path(a_originID, a_destID, a_cost);
-            originPaths.put(a_destID, newPath);
+    /**
+     * Cost of the best path found from the origin to each node, plus the heuristic to the destination.
+     */
+    private float[] m_f;
 
-            //And that's all
-            return;
-        }
+    /**
+     * Previous node of each node in the best path found from the origin, or -1 for the origin.
+     */
+    private int[] m_parent;
 
-        //3rd, there is a path, no cost; assign.
-        pathToDest.m_cost = a_cost;
-    }
+    /**
+     * Position of each node in m_heap, or CLOSED if the node has been expanded.
+     */
+    private int[] m_heapPos;
 
+    /**
+     * Binary heap of open nodes, by m_f. Only the first m_heapSize entries are used.
+     */
+    private int[] m_heap;
 
     /**
-     * Gets the shortest path from origin to destination, stored in the shortestPath cache. Returns null if no path can be found.
-     * @param a_origin origin node id.
-     * @param a_destination destination node id.
-     * @return Path from origin to destination, null if not found.
+     * Number of nodes in m_heap.
      */
-    private Path getShortestPath(int a_origin, int a_destination)
-    {
-        Path p = m_shortestPaths.get(a_origin).get(a_destination);
-        if(p == null)
-            return new Path(a_origin, a_destination, Double.MAX_VALUE);
-        return p;
-    }
+    private int m_heapSize;
 
     /**
-     * Includes the given path in the shortest paths cache.
-     * @param a_p Path to include.
+     * Constructor of the pathfinder.
+     * @param a_graph Graph of the game.
      */
-    private void setShortestPath(Path a_p)
+    public PathFinder(Graph a_graph)
     {
-        TreeMap<Integer, Path> shortest = getShortestPaths(a_p.m_originID);
-        shortest.put(a_p.m_destinationID, a_p);
+        m_graph = a_graph;
+        m_navGraph = a_graph.getNavGraph();
+
+        int numNodes = m_navGraph.getNumNodes();
+        m_stamp = new int[numNodes];
+        m_g = new float[numNodes];
+        m_f = new float[numNodes];
+        m_parent = new int[numNodes];
+        m_heapPos = new int[numNodes];
+        m_heap = new int[numNodes];
+        m_cache = new PathCache(PathCache.DEFAULT_BUDGET);
     }
 
     /**
-     * Gets a path between two nodes in the graph.  It checks the cache of shortest paths to see if it was calculated before.
+     * Gets a path between two nodes in the graph.
      * @param a_origin origin node id.
      * @param a_destination destination node id.
-     * @return the path from a_origin to a_destination.
+     * @return the path from a_origin to a_destination. If there is no path, it only has the origin and its cost is
+     *         Integer.MAX_VALUE.
      */
     public Path getPath(int a_origin, int a_destination)
     {
-        Path shortestP = getShortestPath(a_origin, a_destination);
-        if(shortestP != null && shortestP.m_cost != Double.MAX_VALUE)
+        int origin = m_navGraph.getIndexOfId(a_origin);
+        int destination = m_navGraph.getIndexOfId(a_destination);
+        if(origin == -1 || destination == -1)
+            return new Path(a_origin, a_origin);
+
+        int[] nodes = (m_cache != null) ? m_cache.get(origin, destination) : null;
+        if(nodes == null)
         {
-            //The path was there.
-            return shortestP;
+            //No path cached, need to calculate with A*
+            nodes = _a_star(origin, destination) ? extractPath(destination) : NO_PATH;
+            if(m_cache != null)
+                m_cache.put(origin, destination, nodes);
         }
 
-        //No path, need to calculate with A*
-        Path p = new Path(a_origin, a_destination);
-        Path empty = new Path(a_origin, a_origin);
+        if(nodes.length == 0)
+            return new Path(a_origin, a_origin);
+        return createPath(nodes);
+    }
 
-        boolean pathFound = _a_star(p);
+    /**
+     * Gets the cost of the shortest paths from a node to all the nodes of the graph, with a search that does not stop
+     * at any destination (Dijkstra). As edges have the same cost in both directions, these are also the costs of the
+     * paths from all the nodes to the given one.
+     * @param a_origin origin node id.
+     * @return the cost of the path to each node, by index in the NavGraph, or Float.POSITIVE_INFINITY if there is no
+     *         path to it.
+     */
+    public float[] getDistances(int a_origin)
+    {
+        float[] distances = new float[m_navGraph.getNumNodes()];
+        Arrays.fill(distances, Float.POSITIVE_INFINITY);
+        int origin = m_navGraph.getIndexOfId(a_origin);
+        if(origin == -1)
+            return distances;
+
+        _a_star(origin, -1);
+        for(int i = 0; i < distances.length; ++i)
+            if(m_stamp[i] == m_generation)
+                distances[i] = m_g[i];
+        return distances;
+    }
 
-        if(!pathFound)
-        {
-            //If path could not be found, clear it
-            p.m_points.clear();
-        }
-        else
-        {
-            //Else, extract the path
-            p = getShortestPath(a_origin,a_destination);
-        }
+    /**
+     * Sets the cache of the paths found. It can be shared with the path finders of other graphs of the same map.
+     * @param a_cache the cache, or null to not cache paths.
+     */
+    public void setPathCache(PathCache a_cache) {m_cache = a_cache;}
 
-        //Return the path if it is meaningful.
-        if (p.m_points.size() > 0 && p.m_cost < Integer.MAX_VALUE)
-            return p;
-        else return empty;
-    }
+    /**
+     * Gets the cache of the paths found.
+     * @return the cache, or null if paths are not cached.
+     */
+    public PathCache getPathCache() {return m_cache;}
 
     /**
-     * A star method to calculate the shortest path between the nodes a_path.m_originID and a_path.m_destinationID
-     * @param a_path Path to fill with intermediate nodes.
+     * A star method to calculate the shortest path between two nodes. The parents of the nodes are left in m_parent.
+     * @param a_origin index of the origin node.
+     * @param a_destination index of the destination node, or -1 to find the paths to all the nodes.
      * @return true if the path could be found.
      */
-    private boolean _a_star(Path a_path)
+    private boolean _a_star(int a_origin, int a_destination)
     {
-        //Sets of evaluated and not evaluated nodes.
-        TreeSet<Integer> evaluatedSet = new TreeSet<Integer>();
-        TreeSet<Integer> toEvaluateSetMarker = new TreeSet<Integer>();
-        PriorityQueue<Node> toEvaluateSet = new PriorityQueue<Node>(1000,new NodeComparatorH());
-
-        //Initialize current node (origin).
-        Node currentNode = m_graph.getNode(a_path.m_originID);
-        toEvaluateSet.add(currentNode);
-        toEvaluateSetMarker.add(currentNode.id());
-        currentNode.m_g = 0;
-        currentNode.m_h = heuristic(a_path.m_originID, a_path.m_destinationID);
-        currentNode.m_f = currentNode.m_g + currentNode.m_h;
-
-        //Check while there are still nodes in the array of nods to evaluate.
-        while(!toEvaluateSet.isEmpty())
+        startSearch();
+        visit(a_origin, -1, 0, a_destination);
+
+        //Check while there are still nodes in the open set.
+        while(m_heapSize > 0)
         {
             //Take next node to evaluate.
-            currentNode = toEvaluateSet.poll();
-            int currentNodeId = currentNode.id();
-            evaluatedSet.add(currentNode.id());
+            int current = pop();
 
             //If destination found, that's it.
-            if(currentNode.id() == a_path.m_destinationID)
-            {
+            if(current == a_destination)
                 return true;
-            }
 
             //For all edges from the current node...
-            for(Long edgeId:currentNode.getEdgesFromNode())
+            float g = m_g[current];
+            for(int e = m_navGraph.getFirstEdge(current); e < m_navGraph.getEdgeEnd(current); ++e)
             {
-                //Take the edge.
-                Edge edg = m_graph.getEdge(edgeId);
-                int connectedID = edg.aId() != currentNodeId ? edg.aId() : edg.bId();
-                Node connected = m_graph.getNode(connectedID);
-
-                //If it has not been evaluated yet.
-                if(!evaluatedSet.contains(connected.id()))
+                int connected = m_navGraph.getTarget(e);
+                float newCost = g + m_navGraph.getEdgeCost(e);
+                if(m_stamp[connected] != m_generation)
+                    visit(connected, current, newCost, a_destination);
+                else if(m_heapPos[connected] != CLOSED && newCost < m_g[connected])
                 {
-                    // Cost from origin to 'connected' stored
-                    Path D1 = getShortestPath(a_path.m_originID,connectedID);
-                    // Cost from origin to current node stored
-                    Path DA = getShortestPath(a_path.m_originID,currentNodeId);
-                    // Cost from current to connected (edge cost)
-                    double dA1 = edg.cost();
-
-                    //Path to this node
-                    PathCH pc = new PathCH();
-                    pc.p = D1;
-                    pc.destID = connectedID;
-
-                    //If the new cost is smaller.
-                    double newCost = DA.m_cost + dA1;
-                    if(D1.m_cost > newCost)
-                    {
-                        //update cost
-                        Path newD1 = new Path(DA);
-                        newD1.m_destinationID = connectedID;
-                        newD1.m_cost += dA1;
-                        //update path
-                        pc.p = newD1;
-                        newD1.m_points.add(connectedID);
-                        setShortestPath(newD1);
-                    }
-
-                    //Set cost, used by priority queue to navigate more efficiently
-                    connected.m_g = pc.p.m_cost;
-                    connected.m_f = pc.heuristicCost = pc.p.m_cost + heuristic(connectedID, a_path.m_destinationID);
-                    if(!toEvaluateSetMarker.contains(connected.id()))
-                    {
-                        //Mark this node as evaluated.
-                        toEvaluateSet.add(connected);
-                        toEvaluateSetMarker.add(connected.id());
-                    }
-
+                    //Better path to a node in the open set: update it.
+                    m_g[connected] = newCost;
+                    m_f[connected] = newCost + heuristic(connected, a_destination);
+                    m_parent[connected] = current;
+                    siftUp(m_heapPos[connected]);
                 }
             }
         }
@@ -252,131 +210,156 @@ public class PathFinder
     }
 
     /**
-     * Heuristic for A*: euclidean distance.
-     * @param a_or origin node id.
-     * @param a_dest destination node id.
-     * @return the euclidean distance between origin and destination.
+     * Starts a new search, invalidating the state of all the nodes.
      */
-    private double heuristic(int a_or, int a_dest)
+    private void startSearch()
     {
-        return m_graph.getNodes().get(a_or).euclideanDistanceTo(m_graph.getNodes().get(a_dest));
+        if(m_generation == Integer.MAX_VALUE)
+        {
+            Arrays.fill(m_stamp, 0);
+            m_generation = 0;
+        }
+        m_generation++;
+        m_heapSize = 0;
     }
 
     /**
-     * Returns all the shortest paths in cache from a given node.
-     * @param a_origin origin node id.
-     * @return a TreeMap with all the paths from the origin node.
+     * Visits a node for the first time in this search, and adds it to the open set.
+     * @param a_node index of the node.
+     * @param a_parent index of the node it is reached from, or -1 for the origin.
+     * @param a_cost cost of the path to the node.
+     * @param a_destination index of the destination node, for the heuristic.
      */
-    private TreeMap<Integer, Path> getShortestPaths(int a_origin){return m_shortestPaths.get(a_origin);}
-
-}
+    private void visit(int a_node, int a_parent, float a_cost, int a_destination)
+    {
+        m_stamp[a_node] = m_generation;
+        m_g[a_node] = a_cost;
+        m_f[a_node] = a_cost + heuristic(a_node, a_destination);
+        m_parent[a_node] = a_parent;
+
+        m_heap[m_heapSize] = a_node;
+        m_heapPos[a_node] = m_heapSize;
+        m_heapSize++;
+        siftUp(m_heapSize - 1);
+    }
 
-/**
- * CLASS to compare two nodes by the graph cost.
- */
-class NodeComparatorG implements Comparator<Node>
-{
     /**
-     * Compares two nodes.
-     * @param x one node.
-     * @param y another node.
-     * @return returns -1, 0, or 1 depending on the nodes: -1 if x has a smaller graph cost than y, 1 if opposite, 0 if it is the same cost.
+     * Removes the node with the smallest cost from the open set, and closes it.
+     * @return the index of the node.
      */
-    public int compare(Node x, Node y)
+    private int pop()
     {
-        // Assume neither PathCH is null. Real code should
-        // probably be more robust
-        if (x.m_g < y.m_g)
+        int node = m_heap[0];
+        m_heapPos[node] = CLOSED;
+        m_heapSize--;
+        if(m_heapSize > 0)
         {
-            return -1;
+            m_heap[0] = m_heap[m_heapSize];
+            m_heapPos[m_heap[0]] = 0;
+            siftDown(0);
         }
-        if (x.m_g > y.m_g)
-        {
-            return 1;
-        }
-        return 0;
+        return node;
     }
-}
 
-
-/**
- * CLASS to compare two nodes by the heuristic cost.
- */
-class NodeComparatorH implements Comparator<Node>
-{
     /**
-     * Compares two nodes.
-     * @param x one node.
-     * @param y another node.
-     * @return returns -1, 0, or 1 depending on the nodes: -1 if x has a smaller heuristic cost than y, 1 if opposite, 0 if it is the same cost.
+     * Moves a node of the heap up until its parent has a smaller or equal cost.
+     * @param a_pos position of the node in the heap.
      */
-    public int compare(Node x, Node y)
+    private void siftUp(int a_pos)
     {
-        // Assume neither PathCH is null. Real code should
-        // probably be more robust
-        if (x.m_f < y.m_f)
+        int node = m_heap[a_pos];
+        float f = m_f[node];
+        while(a_pos > 0)
         {
-            return -1;
+            int parentPos = (a_pos - 1) >> 1;
+            int parent = m_heap[parentPos];
+            if(m_f[parent] <= f)
+                break;
+            m_heap[a_pos] = parent;
+            m_heapPos[parent] = a_pos;
+            a_pos = parentPos;
         }
-        if (x.m_f > y.m_f)
-        {
-            return 1;
-        }
-        return 0;
+        m_heap[a_pos] = node;
+        m_heapPos[node] = a_pos;
     }
-}
 
-/**
- * CLASS to compare two paths by the heuristic cost.
- */
-class PathCHComparator implements Comparator<PathCH>
-{
     /**
-     * Compares two paths.
-     * @param x one path.
-     * @param y another path.
-     * @return returns -1, 0, or 1 depending on the pat:hs -1 if x has a smaller heuristic cost than y, 1 if opposite, 0 if it is the same cost.
+     * Moves a node of the heap down until its children have larger or equal costs.
+     * @param a_pos position of the node in the heap.
      */
-    public int compare(PathCH x, PathCH y)
+    private void siftDown(int a_pos)
     {
-        // Assume neither PathCH is null. Real code should
-        // probably be more robust
-        if (x.heuristicCost < y.heuristicCost)
+        int node = m_heap[a_pos];
+        float f = m_f[node];
+        while(true)
         {
-            return -1;
+            int childPos = 2 * a_pos + 1;
+            if(childPos >= m_heapSize)
+                break;
+            if(childPos + 1 < m_heapSize && m_f[m_heap[childPos + 1]] < m_f[m_heap[childPos]])
+                childPos++;
+            int child = m_heap[childPos];
+            if(f <= m_f[child])
+                break;
+            m_heap[a_pos] = child;
+            m_heapPos[child] = a_pos;
+            a_pos = childPos;
         }
-        if (x.heuristicCost > y.heuristicCost)
-        {
-            return 1;
-        }
-        return 0;
+        m_heap[a_pos] = node;
+        m_heapPos[node] = a_pos;
     }
-}
 
-/**
- * Helper CLASS used y A* to compare paths.
- */
-class PathCH
-{
     /**
-     * Path
+     * Gets the nodes of the path found by the last search, following the parents from the destination.
+     * @param a_destination index of the destination node.
+     * @return the indexes of the nodes of the path, from the origin to the destination.
      */
-    public Path p;
+    private int[] extractPath(int a_destination)
+    {
+        int numPoints = 0;
+        for(int node = a_destination; node != -1; node = m_parent[node])
+            numPoints++;
+
+        int[] nodes = new int[numPoints];
+        for(int node = a_destination; node != -1; node = m_parent[node])
+            nodes[--numPoints] = node;
+        return nodes;
+    }
 
     /**
-     * Destination node.
+     * Creates a path from its nodes. Its cost is added up with the double costs of the edges, from the origin, as
+     * Graph always did.
+     * @param a_nodes indexes of the nodes of the path, from the origin to the destination.
+     * @return the path.
      */
-    public int destID;
+    private Path createPath(int[] a_nodes)
+    {
+        int origin = a_nodes[0], destination = a_nodes[a_nodes.length - 1];
+        Path path = new Path(m_navGraph.getId(origin), m_navGraph.getId(destination), 0);
+        path.m_points.clear();
+        path.m_points.ensureCapacity(a_nodes.length);
+        path.m_points.add(m_navGraph.getId(origin));
+        for(int k = 1; k < a_nodes.length; ++k)
+        {
+            path.m_cost += m_navGraph.getCost(a_nodes[k - 1], a_nodes[k]);
+            path.m_points.add(m_navGraph.getId(a_nodes[k]));
+        }
+        return path;
+    }
 
     /**
-     * Heuristic cost
+     * Heuristic for A*: euclidean distance.
+     * @param a_or origin node index.
+     * @param a_dest destination node index, or -1 if there is no destination.
+     * @return the euclidean distance between origin and destination, 0 if there is no destination.
      */
-    public double heuristicCost;
+    private float heuristic(int a_or, int a_dest)
+    {
+        if(a_dest == -1)
+            return 0;
+        float xDiff = m_navGraph.getX(a_or) - m_navGraph.getX(a_dest);
+        float yDiff = m_navGraph.getY(a_or) - m_navGraph.getY(a_dest);
+        return (float) Math.sqrt(xDiff*xDiff + yDiff*yDiff);
+    }
 
-    /**
-     * Overrides toString() [debug purposes].
-     * @return A string representation of the path
-     */
-    @Override
-    public String toString() {return "[" + p.toString() + "] hC: " + heuristicCost; }
 }
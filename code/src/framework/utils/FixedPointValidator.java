@@ -0,0 +1,219 @@
+package framework.utils;
+
+import framework.core.Controller;
+import framework.core.Exec;
+import framework.core.FixedPointSimulator;
+import framework.core.Game;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class reports how far the fixed point simulation (see FixedPointSimulator) diverges from the simulation of Game,
+ * and how fast both are. Each map is played with random sequences of actions, repeated a few steps each, and with the
+ * actions of a route file, if given. The reference is the default ship of the game, as used by the replays. Each test
+ * is also reported against a ship that uses the heading table (see Ship.setHeadingTable()), so both simulations only
+ * differ in the arithmetic.
+ * It also checks that the fixed point simulation is deterministic: running the same actions twice, or from a copy,
+ * gives the same state hash.
+ * Usage: FixedPointValidator [-route route file] [map files...]. Without map files, all the maps in the maps folder
+ * are played.
+ * PTSP-Competition
+ */
+public class FixedPointValidator
+{
+    /**
+     * Number of random sequences played in each map.
+     */
+    private static final int NUM_SEQUENCES = 20;
+
+    /**
+     * Number of steps of the random sequences.
+     */
+    private static final int SEQUENCE_STEPS = 3000;
+
+    /**
+     * Steps at which the distance between both simulations is reported.
+     */
+    private static final int[] CHECKPOINTS = {100, 500, 1000, 3000};
+
+    /**
+     * Number of times each sequence is played to measure the speed.
+     */
+    private static final int TIMING_RUNS = 5;
+
+    /**
+     * Main method.
+     * @param args optional route file (after -route) and map files.
+     * @throws Exception if the route file can not be read.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        String route = null;
+        ArrayList<String> maps = new ArrayList<String>();
+        for(int i = 0; i < args.length; ++i)
+        {
+            if(args[i].equals("-route") && i + 1 < args.length)
+                route = args[++i];
+            else
+                maps.add(args[i]);
+        }
+
+        if(maps.isEmpty())
+        {
+            File[] files = new File("maps").listFiles();
+            if(files != null)
+            {
+                Arrays.sort(files);
+                for(File file : files)
+                    if(file.getName().endsWith(".map"))
+                        maps.add(file.getPath());
+            }
+        }
+
+        for(String map : maps)
+        {
+            Game game = new Game(map);
+            ArrayList<int[]> sequences = new ArrayList<int[]>();
+            Random rnd = new Random(0);
+            for(int i = 0; i < NUM_SEQUENCES; ++i)
+                sequences.add(randomSequence(rnd));
+            report(map + " (random)", game, sequences, false);
+            report(map + " (random, heading table)", game, sequences, true);
+
+            if(route != null)
+            {
+                ArrayList<int[]> routeSequence = new ArrayList<int[]>();
+                routeSequence.add(Exec.readForces(route));
+                report(map + " (" + route + ")", game, routeSequence, false);
+                report(map + " (" + route + ", heading table)", game, routeSequence, true);
+            }
+        }
+    }
+
+    /**
+     * Plays a set of sequences with both simulations and prints how far they are and how fast they run.
+     * @param a_name name of the test.
+     * @param a_game game to start from.
+     * @param a_sequences sequences of actions to play.
+     * @param a_headingTable true if the ship of the game uses the heading table, false to use the default ship.
+     */
+    private static void report(String a_name, Game a_game, ArrayList<int[]> a_sequences, boolean a_headingTable)
+    {
+        double[] checkpointError = new double[CHECKPOINTS.length];
+        int[] checkpointReached = new int[CHECKPOINTS.length];
+        double maxError = 0;
+        int diverged = 0, sameOutcome = 0, deterministic = 0;
+        int firstDivergence = Integer.MAX_VALUE;
+        long totalTicks = 0, gameNanos = 0, fixedNanos = 0;
+
+        FixedPointSimulator copy = new FixedPointSimulator(a_game);
+        for(int[] actions : a_sequences)
+        {
+            Game game = a_game.getCopy();
+            game.getShip().setHeadingTable(a_headingTable);
+            FixedPointSimulator sim = new FixedPointSimulator(game);
+
+            int divergence = -1;
+            for(int t = 0; t < actions.length && !game.isEnded() && !sim.isEnded(); ++t)
+            {
+                game.tick(actions[t]);
+                sim.tick(actions[t]);
+
+                double dx = game.getShip().s.x - sim.getX();
+                double dy = game.getShip().s.y - sim.getY();
+                double error = Math.sqrt(dx * dx + dy * dy);
+                maxError = Math.max(maxError, error);
+                for(int c = 0; c < CHECKPOINTS.length; ++c)
+                    if(t + 1 == CHECKPOINTS[c])
+                    {
+                        checkpointError[c] = Math.max(checkpointError[c], error);
+                        checkpointReached[c]++;
+                    }
+
+                if(divergence == -1 && (game.getLastTickEvents() != sim.getLastTickEvents() ||
+                        game.getShip().getDamage() != sim.getDamage() ||
+                        game.getShip().getRemainingFuel() != sim.getRemainingFuel()))
+                    divergence = t;
+            }
+
+            if(divergence != -1)
+            {
+                diverged++;
+                firstDivergence = Math.min(firstDivergence, divergence);
+            }
+            if(game.isEnded() == sim.isEnded() && game.getWaypointsLeft() == sim.getWaypointsLeft() &&
+               game.getTotalTime() == sim.getTotalTime() && game.getShip().getDamage() == sim.getDamage())
+                sameOutcome++;
+
+            //The same actions give the same state, also from a copy taken half way.
+            FixedPointSimulator again = new FixedPointSimulator(a_game);
+            again.tick(actions, 0, actions.length / 2);
+            again.copyInto(copy);
+            again.tick(actions, actions.length / 2, actions.length - actions.length / 2);
+            copy.tick(actions, actions.length / 2, actions.length - actions.length / 2);
+            if(again.stateHash() == sim.stateHash() && copy.stateHash() == sim.stateHash())
+                deterministic++;
+
+            for(int run = 0; run < TIMING_RUNS; ++run)
+            {
+                Game timedGame = a_game.getCopy();
+                timedGame.getShip().setHeadingTable(a_headingTable);
+                long start = System.nanoTime();
+                totalTicks += timedGame.tick(actions, 0, actions.length);
+                gameNanos += System.nanoTime() - start;
+
+                FixedPointSimulator timedSim = new FixedPointSimulator(a_game);
+                start = System.nanoTime();
+                timedSim.tick(actions, 0, actions.length);
+                fixedNanos += System.nanoTime() - start;
+            }
+        }
+
+        int numSequences = a_sequences.size();
+        System.out.println(a_name + ": " + numSequences + " sequences");
+        System.out.print("  max position error: " + maxError + " px; at steps");
+        for(int c = 0; c < CHECKPOINTS.length; ++c)
+            System.out.print(" " + CHECKPOINTS[c] + ": " + (checkpointReached[c] == 0 ? "n/a" :
+                    checkpointError[c] + " (" + checkpointReached[c] + "/" + numSequences + " reached)"));
+        System.out.println();
+        System.out.println("  events diverged in " + diverged + "/" + numSequences + " sequences" +
+                (diverged > 0 ? ", first at step " + firstDivergence : ""));
+        System.out.println("  same outcome in " + sameOutcome + "/" + numSequences + " sequences");
+        System.out.println("  deterministic in " + deterministic + "/" + numSequences + " sequences");
+        System.out.println("  ticks/ms: game " + ticksPerMs(totalTicks, gameNanos) + ", fixed point " +
+                ticksPerMs(totalTicks, fixedNanos));
+    }
+
+    /**
+     * Computes a speed in ticks per millisecond.
+     * @param a_ticks ticks executed.
+     * @param a_nanos time spent, in nanoseconds.
+     * @return the ticks per millisecond.
+     */
+    private static long ticksPerMs(long a_ticks, long a_nanos)
+    {
+        return (a_nanos == 0) ? 0 : a_ticks * 1000000L / a_nanos;
+    }
+
+    /**
+     * Creates a random sequence of actions, each repeated a few steps, as the controllers do.
+     * @param a_rnd random number generator.
+     * @return the sequence of actions.
+     */
+    private static int[] randomSequence(Random a_rnd)
+    {
+        int[] actions = new int[SEQUENCE_STEPS];
+        int i = 0;
+        while(i < SEQUENCE_STEPS)
+        {
+            int action = a_rnd.nextInt(Controller.NUM_ACTIONS);
+            int repeat = 1 + a_rnd.nextInt(15);
+            for(int r = 0; r < repeat && i < SEQUENCE_STEPS; ++r)
+                actions[i++] = action;
+        }
+        return actions;
+    }
+}
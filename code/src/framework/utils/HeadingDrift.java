@@ -0,0 +1,83 @@
+package framework.utils;
+
+import framework.core.Controller;
+import framework.core.Exec;
+import framework.core.Ship;
+
+import java.util.Random;
+
+/**
+ * This class reports how far the direction of a ship drifts, when it is rotated every step as in Ship.update(), from
+ * the exact direction of its heading in the heading table (see Ship.setHeadingTable()).
+ * It turns the ship with three sequences of actions: always left, random turns, and the actions of a route file, if
+ * given. Usage: HeadingDrift [route file] [number of steps]
+ * PTSP-Competition
+ */
+public class HeadingDrift
+{
+    /**
+     * Default number of steps of the generated sequences.
+     */
+    private static final int DEFAULT_STEPS = 100000;
+
+    /**
+     * Main method.
+     * @param args optional route file (as saved by Game.saveRoute()) and number of steps of the generated sequences.
+     * @throws Exception if the route file can not be read.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int numSteps = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_STEPS;
+
+        int[] left = new int[numSteps];
+        for(int i = 0; i < numSteps; ++i)
+            left[i] = Controller.ACTION_NO_LEFT;
+        report("always left", left);
+
+        Random rnd = new Random(0);
+        int[] random = new int[numSteps];
+        for(int i = 0; i < numSteps; ++i)
+            random[i] = rnd.nextInt(Controller.NUM_ACTIONS);
+        report("random", random);
+
+        if(args.length > 0)
+            report(args[0], Exec.readForces(args[0]));
+    }
+
+    /**
+     * Turns a ship with a sequence of actions, rotating its direction and following its heading index, and prints
+     * how far both directions are.
+     * @param a_name name of the sequence.
+     * @param a_actions actions to execute.
+     */
+    private static void report(String a_name, int[] a_actions)
+    {
+        //Initial direction of the ship.
+        Vector2d rotated = new Vector2d(0, -1);
+        int heading = 3 * Ship.NUM_HEADINGS / 4;
+
+        double maxAngle = 0, maxNorm = 0;
+        int firstIndexChange = -1;
+        for(int i = 0; i < a_actions.length; ++i)
+        {
+            int turning = Controller.getTurning(a_actions[i]);
+            rotated.rotate(turning * Ship.steerStep);
+            heading = (heading + turning + Ship.NUM_HEADINGS) % Ship.NUM_HEADINGS;
+
+            Vector2d exact = Ship.getHeadingDirection(heading);
+            double angle = Math.abs(Math.atan2(rotated.x * exact.y - rotated.y * exact.x, rotated.dot(exact)));
+            maxAngle = Math.max(maxAngle, angle);
+            maxNorm = Math.max(maxNorm, Math.abs(rotated.mag() - 1));
+
+            int rotatedHeading = (int) Math.round(Math.atan2(rotated.y, rotated.x) / Ship.steerStep) % Ship.NUM_HEADINGS;
+            if(rotatedHeading < 0) rotatedHeading += Ship.NUM_HEADINGS;
+            if(firstIndexChange == -1 && rotatedHeading != heading)
+                firstIndexChange = i;
+        }
+
+        System.out.println(a_name + ": " + a_actions.length + " steps");
+        System.out.println("  max angle drift: " + maxAngle + " rad (" + Math.toDegrees(maxAngle) + " degrees)");
+        System.out.println("  max norm drift: " + maxNorm + ", final norm: " + rotated.mag());
+        System.out.println("  heading index changed: " + (firstIndexChange == -1 ? "never" : "at step " + firstIndexChange));
+    }
+}
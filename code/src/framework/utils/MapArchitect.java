@@ -753,7 +753,7 @@ public class MapArchitect extends JComponent implements MouseListener, MouseMoti
         if(args.length > 1)
         {
             try{
-                Map map = new Map(null, args[0]);
+                Map map = new Map(args[0]);
                 if(args.length > 2)
                 {
                     if(Integer.parseInt(args[2]) == 0)
@@ -0,0 +1,136 @@
+package framework.utils;
+
+/**
+ * This class is a fixed-size transposition table, that maps state hashes (see Game.stateHash()) to a 64-bit value chosen
+ * by the controller (a score, a visit count, a packed action and depth...). It can be reused between searches with clear().
+ * The table can be read and written from several threads without locks. Each entry keeps two longs: the value, and the
+ * hash XOR the value. An entry is only accepted if both match the hash looked for, so entries half-written by another
+ * thread, or written for a different hash in the same slot, are seen as misses.
+ * When two hashes fall in the same slot, the last one stored replaces the previous one.
+ * PTSP-Competition
+ */
+public class TranspositionTable
+{
+    /**
+     * Hash used internally in place of 0, as empty slots would otherwise match the hash 0.
+     */
+    private static final long ZERO_HASH = 0x7FB5D329728EA185L;
+
+    /**
+     * Entries of the table: m_entries[2*i] is hash XOR value, and m_entries[2*i+1] is the value of slot i.
+     */
+    private final long[] m_entries;
+
+    /**
+     * Mask to get the slot of a hash (number of slots - 1).
+     */
+    private final int m_mask;
+
+    /**
+     * Creates a transposition table.
+     * @param a_numSlots number of slots of the table. It is rounded up to a power of two.
+     */
+    public TranspositionTable(int a_numSlots)
+    {
+        int numSlots = 1;
+        while(numSlots < a_numSlots)
+            numSlots <<= 1;
+
+        m_entries = new long[2 * numSlots];
+        m_mask = numSlots - 1;
+    }
+
+    /**
+     * Stores a value for a hash, replacing whatever was stored in its slot.
+     * @param a_hash hash of the state.
+     * @param a_value value to store.
+     */
+    public void put(long a_hash, long a_value)
+    {
+        long hash = (a_hash == 0) ? ZERO_HASH : a_hash;
+        int idx = slot(hash);
+        m_entries[idx] = hash ^ a_value;
+        m_entries[idx + 1] = a_value;
+    }
+
+    /**
+     * Gets the value stored for a hash.
+     * @param a_hash hash of the state.
+     * @param a_default value to return if the hash is not in the table.
+     * @return the value stored for the hash, or a_default if it is not in the table.
+     */
+    public long get(long a_hash, long a_default)
+    {
+        long hash = (a_hash == 0) ? ZERO_HASH : a_hash;
+        int idx = slot(hash);
+        long check = m_entries[idx];
+        long value = m_entries[idx + 1];
+        if((check ^ value) == hash)
+            return value;
+        return a_default;
+    }
+
+    /**
+     * Indicates if there is a value stored for a hash.
+     * @param a_hash hash of the state.
+     * @return true if the hash is in the table.
+     */
+    public boolean contains(long a_hash)
+    {
+        long hash = (a_hash == 0) ? ZERO_HASH : a_hash;
+        int idx = slot(hash);
+        return (m_entries[idx] ^ m_entries[idx + 1]) == hash;
+    }
+
+    /**
+     * Stores a double value (a score, for instance) for a hash.
+     * @param a_hash hash of the state.
+     * @param a_value value to store.
+     */
+    public void putDouble(long a_hash, double a_value)
+    {
+        put(a_hash, Double.doubleToRawLongBits(a_value));
+    }
+
+    /**
+     * Gets the double value stored for a hash.
+     * @param a_hash hash of the state.
+     * @param a_default value to return if the hash is not in the table.
+     * @return the value stored for the hash, or a_default if it is not in the table.
+     */
+    public double getDouble(long a_hash, double a_default)
+    {
+        long hash = (a_hash == 0) ? ZERO_HASH : a_hash;
+        int idx = slot(hash);
+        long check = m_entries[idx];
+        long value = m_entries[idx + 1];
+        if((check ^ value) == hash)
+            return Double.longBitsToDouble(value);
+        return a_default;
+    }
+
+    /**
+     * Removes all the entries of the table.
+     */
+    public void clear()
+    {
+        java.util.Arrays.fill(m_entries, 0L);
+    }
+
+    /**
+     * Gets the number of slots of the table.
+     * @return the number of slots of the table.
+     */
+    public int getNumSlots() {return m_mask + 1;}
+
+    /**
+     * Gets the index in m_entries of the slot of a hash. The high bits of the hash are used, as the low bits of hashes
+     * of close states tend to be less mixed.
+     * @param a_hash hash of the state.
+     * @return the index of the slot in m_entries.
+     */
+    private int slot(long a_hash)
+    {
+        return ((int) (a_hash >>> 32) & m_mask) << 1;
+    }
+}